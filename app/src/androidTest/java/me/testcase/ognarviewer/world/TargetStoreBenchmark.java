@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.location.Location;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * Measures the memory and the projection pass of the target store on a real device.
+ *
+ * <p>Not a unit test: run it with {@code ./gradlew connectedAndroidTest} and look for the
+ * "TargetStoreBenchmark" tag in logcat.</p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class TargetStoreBenchmark {
+    private static final String TAG = "TargetStoreBenchmark";
+
+    private static final long TIME = 1721460905000L;
+
+    private static final int[] COUNTS = {100, 1000, 10000};
+
+    @Test
+    public void measureMemory() {
+        for (int count : COUNTS) {
+            final long before = usedMemory();
+            final World world = createWorld(count, new Random(42));
+            final long after = usedMemory();
+            Assert.assertEquals(count, world.computeCoordinates(TIME, new float[count * 3],
+                    new int[count]));
+            Log.i(TAG, String.format("%d targets: %.0f bytes/target", count,
+                    (double) (after - before) / count));
+        }
+    }
+
+    @Test
+    public void measureComputeCoordinates() {
+        for (int count : COUNTS) {
+            final World world = createWorld(count, new Random(42));
+            final float[] packed = new float[count * 3];
+            final int[] ids = new int[count];
+            final float[] coordinates = new float[4];
+            final int iterations = 200000 / count;
+
+            Target[] list = new Target[count];
+            long objectTime = 0;
+            long storeTime = 0;
+            float checksum = 0;
+            for (int round = 0; round < 5; ++round) {
+                // The first rounds are the JIT warm-up, only the last one counts.
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; ++i) {
+                    list = world.getTargets(list);
+                    for (Target target : list) {
+                        if (target == null) {
+                            break;
+                        }
+                        world.getTargetCoordinates(target, TIME + i, coordinates);
+                        checksum += coordinates[0];
+                    }
+                }
+                objectTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; ++i) {
+                    world.computeCoordinates(TIME + i, packed, ids);
+                    checksum += packed[0];
+                }
+                storeTime = System.nanoTime() - start;
+            }
+            Log.i(TAG, String.format("%d targets: objects %.1f ns/target, columns %.1f ns/target"
+                            + " (%f)", count, (double) objectTime / iterations / count,
+                    (double) storeTime / iterations / count, checksum));
+        }
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            runtime.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static World createWorld(int count, Random random) {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setPosition(location);
+        world.setGeoidHeight(48.6);
+        world.setLocationPredictionEnabled(true);
+        for (int i = 0; i < count; ++i) {
+            if (i % 10 == 0) {
+                world.addReceiver("TEST" + i, 48.5 + random.nextDouble(),
+                        6.5 + random.nextDouble(), random.nextInt(1000), TIME);
+                continue;
+            }
+            final Aircraft aircraft = world.addAircraft(String.format("FLR%06X", i), i,
+                    48.5 + random.nextDouble(), 6.5 + random.nextDouble(),
+                    random.nextInt(3000), TIME);
+            aircraft.setHeading(random.nextInt(361));
+            aircraft.setGroundSpeed(random.nextInt(200));
+            aircraft.setClimbRate(random.nextFloat() * 10 - 5);
+            aircraft.setTurnRate(random.nextInt(3) == 0 ? 0 : random.nextDouble() * 20 - 10);
+        }
+        return world;
+    }
+}
@@ -33,6 +33,12 @@ public class DirectoryRepository {
     private final PublicDirectory mPublicDirectory;
     private final PrivateDirectory mPrivateDirectory;
 
+    /**
+     * Incremented on every change of the private directory, so that the caches of the entries
+     * know when to look them up again.
+     */
+    private volatile int mModificationCount;
+
     public DirectoryRepository(PublicDirectory publicDirectory, PrivateDirectory privateDirectory) {
         mPublicDirectory = publicDirectory;
         mPrivateDirectory = privateDirectory;
@@ -65,6 +71,7 @@ public class DirectoryRepository {
     public void update(DirectoryEntry entry) {
         mPrivateDirectory.update(entry);
         mPrivateDirectory.save();
+        ++mModificationCount;
     }
 
     public void update(Collection<DirectoryEntry> entries) {
@@ -72,6 +79,7 @@ public class DirectoryRepository {
             mPrivateDirectory.update(entry);
         }
         mPrivateDirectory.save();
+        ++mModificationCount;
     }
 
     public void delete(Collection<Long> ids) {
@@ -79,10 +87,12 @@ public class DirectoryRepository {
             mPrivateDirectory.delete(id);
         }
         mPrivateDirectory.save();
+        ++mModificationCount;
     }
 
     public void deleteAll() {
         mPrivateDirectory.nuke();
+        ++mModificationCount;
     }
 
     public List<DirectoryEntry> filter(String query) {
@@ -102,12 +112,17 @@ public class DirectoryRepository {
 
     public void importJson(@NonNull Uri uri) throws IOException, JSONException {
         mPrivateDirectory.importJson(uri);
+        ++mModificationCount;
     }
 
     public void exportJson(@NonNull Uri uri) throws IOException, JSONException {
         mPrivateDirectory.exportJson(uri);
     }
 
+    public int getModificationCount() {
+        return mModificationCount;
+    }
+
     public long getOgnDdbAccessTime() {
         return mPublicDirectory.getAccessTime();
     }
@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.opengl;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A cache of the OpenGL state which skips the calls that wouldn't change anything.
+ *
+ * <p>All state changes of the frame loop go through it, so it must know the whole state: create
+ * a new one for each GL context and don't change the cached state directly with GLES20. The
+ * number of issued and skipped calls is counted to make the savings visible.</p>
+ *
+ * <p>Must be used on the GL thread.</p>
+ */
+public final class GlState {
+    private int mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private int mActiveTexture = GLES20.GL_TEXTURE0;
+
+    /**
+     * A bit for each enabled vertex attribute array.
+     */
+    private int mVertexAttribArrays;
+
+    private int mCalls;
+    private int mSkippedCalls;
+
+    public void useProgram(@NonNull Shader shader) {
+        if (mProgram == shader.getHandle()) {
+            ++mSkippedCalls;
+            return;
+        }
+        mProgram = shader.getHandle();
+        GLES20.glUseProgram(mProgram);
+        ++mCalls;
+    }
+
+    public void bindArrayBuffer(int buffer) {
+        if (mArrayBuffer == buffer) {
+            ++mSkippedCalls;
+            return;
+        }
+        mArrayBuffer = buffer;
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        ++mCalls;
+    }
+
+    public void bindElementArrayBuffer(int buffer) {
+        if (mElementArrayBuffer == buffer) {
+            ++mSkippedCalls;
+            return;
+        }
+        mElementArrayBuffer = buffer;
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+        ++mCalls;
+    }
+
+    /**
+     * Selects the active texture unit.
+     *
+     * @param unit the number of the unit, not GL_TEXTUREi.
+     */
+    public void activeTexture(int unit) {
+        if (mActiveTexture == GLES20.GL_TEXTURE0 + unit) {
+            ++mSkippedCalls;
+            return;
+        }
+        mActiveTexture = GLES20.GL_TEXTURE0 + unit;
+        GLES20.glActiveTexture(mActiveTexture);
+        ++mCalls;
+    }
+
+    /**
+     * Enables exactly the given vertex attribute arrays and disables all other.
+     *
+     * <p>The enabled arrays are not a part of the program state, so each draw call should state
+     * all arrays it needs.</p>
+     *
+     * @param mask a bit for each attribute location, see {@link #mask(int...)}.
+     */
+    public void setVertexAttribArrays(int mask) {
+        final int changed = mask ^ mVertexAttribArrays;
+        mSkippedCalls += Integer.bitCount(mask & mVertexAttribArrays);
+        for (int location = 0; location < Integer.SIZE; ++location) {
+            if ((changed & (1 << location)) == 0) {
+                continue;
+            }
+            if ((mask & (1 << location)) != 0) {
+                GLES20.glEnableVertexAttribArray(location);
+            } else {
+                GLES20.glDisableVertexAttribArray(location);
+            }
+            ++mCalls;
+        }
+        mVertexAttribArrays = mask;
+    }
+
+    /**
+     * Uploads the matrix if it differs from the last uploaded one.
+     *
+     * @param uploaded the last value uploaded to this location, updated by this method. Fill it
+     *     with NaN before the first upload.
+     */
+    public void uniformMatrix4fv(int location, @NonNull float[] matrix,
+                                 @NonNull float[] uploaded) {
+        if (Arrays.equals(matrix, uploaded)) {
+            ++mSkippedCalls;
+            return;
+        }
+        System.arraycopy(matrix, 0, uploaded, 0, 16);
+        GLES20.glUniformMatrix4fv(location, 1, false, matrix, 0);
+        ++mCalls;
+    }
+
+    /**
+     * Returns the mask of the attribute locations for {@link #setVertexAttribArrays(int)}.
+     */
+    public static int mask(int... locations) {
+        int mask = 0;
+        for (int location : locations) {
+            mask |= 1 << location;
+        }
+        return mask;
+    }
+
+    /**
+     * Counts calls which are always issued, e.g. draw calls.
+     */
+    public void countCalls(int count) {
+        mCalls += count;
+    }
+
+    /**
+     * Returns the number of calls issued since the last {@link #resetCounters()}.
+     */
+    public int getCalls() {
+        return mCalls;
+    }
+
+    /**
+     * Returns the number of calls skipped since the last {@link #resetCounters()}.
+     */
+    public int getSkippedCalls() {
+        return mSkippedCalls;
+    }
+
+    public void resetCounters() {
+        mCalls = 0;
+        mSkippedCalls = 0;
+    }
+}
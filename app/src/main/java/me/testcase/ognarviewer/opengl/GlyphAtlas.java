@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.opengl;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * All glyphs of a font rasterised once into a single texture.
+ *
+ * <p>The glyphs are white with a black outline, so that the text can be tinted by the shader and
+ * is readable on any background. Every glyph has a cell
+ * of the same height, its width is the advance plus the outline on both sides.</p>
+ *
+ * <p>The labels are drawn at a single size, so a plain bitmap atlas is good enough and there is
+ * no need for signed distance fields.</p>
+ *
+ * <p>The glyphs are rasterised by the constructor, which may run on any thread. Then upload() must
+ * be called on the GL thread before the atlas is used for drawing.</p>
+ */
+public final class GlyphAtlas {
+    private static final int TARGET = GLES20.GL_TEXTURE_2D;
+
+    /**
+     * The text size in dp.
+     */
+    private static final float TEXT_SIZE = 18;
+
+    /**
+     * The texture width in pixels, the height depends on the number of glyphs.
+     */
+    private static final int WIDTH = 1024;
+
+    /**
+     * Drawn instead of the characters which are not in the atlas.
+     */
+    private static final char REPLACEMENT = '?';
+
+    // The rasterised glyphs until they are uploaded, then the texture.
+    private Bitmap mBitmap;
+    private int mHandle;
+    private final float mLineHeight;
+
+    // Sorted, so that a glyph can be found by a binary search.
+    private final char[] mCharacters;
+
+    // Per glyph in dp, the quad starts mPadding before the pen position.
+    private final float[] mAdvances;
+    private final float[] mWidths;
+    private final float mPadding;
+
+    // Per glyph, the texture coordinates of the cell.
+    private final float[] mLeft;
+    private final float[] mTop;
+    private final float[] mRight;
+    private final float[] mBottom;
+
+    /**
+     * Rasterises the printable ASCII characters and the given ones.
+     *
+     * @param extraCharacters the characters of the translated strings, may contain duplicates.
+     */
+    public GlyphAtlas(@NonNull String extraCharacters, float density) {
+        mCharacters = collectCharacters(extraCharacters);
+        final int count = mCharacters.length;
+
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(TEXT_SIZE * density);
+        paint.setStrokeWidth(density * 2);
+        final Paint.FontMetrics metrics = paint.getFontMetrics();
+        final int padding = (int) Math.ceil(density * 2);
+        final int cellHeight = (int) Math.ceil(metrics.descent - metrics.ascent) + padding * 2;
+        final float baseline = padding - metrics.ascent;
+
+        final float[] advances = new float[count];
+        paint.getTextWidths(mCharacters, 0, count, advances);
+
+        // Place the cells row by row.
+        final int[] cellX = new int[count];
+        final int[] cellY = new int[count];
+        final int[] cellWidths = new int[count];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; ++i) {
+            cellWidths[i] = (int) Math.ceil(advances[i]) + padding * 2;
+            if (x + cellWidths[i] > WIDTH) {
+                x = 0;
+                y += cellHeight;
+            }
+            cellX[i] = x;
+            cellY[i] = y;
+            x += cellWidths[i];
+        }
+        final int height = y + cellHeight;
+
+        final Bitmap bitmap = Bitmap.createBitmap(WIDTH, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        // The outlines first, the fill goes on top of them.
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setColor(Color.BLACK);
+        for (int i = 0; i < count; ++i) {
+            canvas.drawText(mCharacters, i, 1, cellX[i] + padding, cellY[i] + baseline, paint);
+        }
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(Color.WHITE);
+        for (int i = 0; i < count; ++i) {
+            canvas.drawText(mCharacters, i, 1, cellX[i] + padding, cellY[i] + baseline, paint);
+        }
+
+        mBitmap = bitmap;
+        mLineHeight = cellHeight / density;
+        mPadding = padding / density;
+        mAdvances = new float[count];
+        mWidths = new float[count];
+        mLeft = new float[count];
+        mTop = new float[count];
+        mRight = new float[count];
+        mBottom = new float[count];
+        for (int i = 0; i < count; ++i) {
+            mAdvances[i] = advances[i] / density;
+            mWidths[i] = cellWidths[i] / density;
+            mLeft[i] = cellX[i] / (float) WIDTH;
+            mTop[i] = cellY[i] / (float) height;
+            mRight[i] = (cellX[i] + cellWidths[i]) / (float) WIDTH;
+            mBottom[i] = (cellY[i] + cellHeight) / (float) height;
+        }
+    }
+
+    /**
+     * Creates the texture and binds it to the active texture unit. Must be called on the GL thread
+     * exactly once.
+     */
+    public void upload() {
+        final int[] handles = new int[1];
+        GLES20.glGenTextures(1, handles, 0);
+        mHandle = handles[0];
+        GLES20.glBindTexture(TARGET, mHandle);
+        // The first bitmap row is uploaded as t = 0, so the top of a cell has the smaller t.
+        GLUtils.texImage2D(TARGET, 0, mBitmap, 0);
+        mBitmap.recycle();
+        mBitmap = null;
+        GLES20.glTexParameteri(TARGET, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(TARGET, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(TARGET, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(TARGET, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    /**
+     * Frees the texture, or the bitmap if the atlas was never uploaded.
+     */
+    public void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        } else if (mHandle != 0) {
+            GLES20.glDeleteTextures(1, new int[]{mHandle}, 0);
+            mHandle = 0;
+        }
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * Returns the height of a line in dp, including the outline.
+     */
+    public float getLineHeight() {
+        return mLineHeight;
+    }
+
+    /**
+     * Returns the width of the text in dp, without the outline.
+     */
+    public float getWidth(@NonNull CharSequence text) {
+        float width = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            width += mAdvances[indexOf(text.charAt(i))];
+        }
+        return width;
+    }
+
+    /**
+     * Returns true if the character has its own glyph.
+     */
+    public boolean contains(char character) {
+        return Arrays.binarySearch(mCharacters, character) >= 0;
+    }
+
+    /**
+     * Returns the index of the glyph for the character, the replacement glyph if there is none.
+     */
+    int indexOf(char character) {
+        final int index = Arrays.binarySearch(mCharacters, character);
+        if (index >= 0) {
+            return index;
+        }
+        return Arrays.binarySearch(mCharacters, REPLACEMENT);
+    }
+
+    float getPadding() {
+        return mPadding;
+    }
+
+    float getAdvance(int index) {
+        return mAdvances[index];
+    }
+
+    float getGlyphWidth(int index) {
+        return mWidths[index];
+    }
+
+    float getLeft(int index) {
+        return mLeft[index];
+    }
+
+    float getTop(int index) {
+        return mTop[index];
+    }
+
+    float getRight(int index) {
+        return mRight[index];
+    }
+
+    float getBottom(int index) {
+        return mBottom[index];
+    }
+
+    @NonNull
+    private static char[] collectCharacters(@NonNull String extraCharacters) {
+        final StringBuilder builder = new StringBuilder(95 + extraCharacters.length());
+        for (char c = ' '; c <= '~'; ++c) {
+            builder.append(c);
+        }
+        for (int i = 0; i < extraCharacters.length(); ++i) {
+            final char c = extraCharacters.charAt(i);
+            if (c > '~' && !Character.isISOControl(c)) {
+                builder.append(c);
+            }
+        }
+        final char[] characters = builder.toString().toCharArray();
+        Arrays.sort(characters);
+        // Remove the duplicates.
+        int count = 0;
+        for (int i = 0; i < characters.length; ++i) {
+            if (i == 0 || characters[i] != characters[i - 1]) {
+                characters[count++] = characters[i];
+            }
+        }
+        return Arrays.copyOf(characters, count);
+    }
+}
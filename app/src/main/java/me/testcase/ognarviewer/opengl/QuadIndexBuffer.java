@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.opengl;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A GPU index buffer with two triangles for each quad of four vertices.
+ *
+ * <p>The indices never change, so they are uploaded once and only again when more quads are
+ * needed.</p>
+ */
+final class QuadIndexBuffer {
+    /**
+     * The maximum number of quads, the indices are unsigned shorts.
+     */
+    static final int MAX_QUADS = 65536 / 4;
+
+    private final int mHandle;
+    private int mCapacity;
+
+    QuadIndexBuffer() {
+        final int[] handles = new int[1];
+        GLES20.glGenBuffers(1, handles, 0);
+        mHandle = handles[0];
+    }
+
+    /**
+     * Binds the buffer, uploading more indices first if there are less than for the given number
+     * of quads.
+     */
+    void bind(@NonNull GlState state, int quads) {
+        state.bindElementArrayBuffer(mHandle);
+        if (quads <= mCapacity) {
+            return;
+        }
+        int capacity = Math.max(mCapacity, 64);
+        while (capacity < quads) {
+            capacity *= 2;
+        }
+        capacity = Math.min(capacity, MAX_QUADS);
+        final ShortBuffer indices = ByteBuffer
+                .allocateDirect(capacity * 6 * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        // Two triangles per quad.
+        for (int i = 0; i < capacity; ++i) {
+            final short first = (short) (i * 4);
+            indices.put(first);
+            indices.put((short) (first + 1));
+            indices.put((short) (first + 2));
+            indices.put((short) (first + 3));
+            indices.put((short) (first + 2));
+            indices.put((short) (first + 1));
+        }
+        indices.position(0);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, capacity * 6 * 2, indices,
+                GLES20.GL_STATIC_DRAW);
+        state.countCalls(1);
+        mCapacity = capacity;
+    }
+
+    /**
+     * Draws the given number of quads, the buffer must be bound.
+     */
+    void draw(@NonNull GlState state, int quads) {
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, quads * 6, GLES20.GL_UNSIGNED_SHORT, 0);
+        state.countCalls(1);
+    }
+}
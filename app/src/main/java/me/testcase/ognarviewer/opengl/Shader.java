@@ -36,8 +36,8 @@ public class Shader {
         GLES20.glDeleteShader(fragmentShaderHandle);
     }
 
-    public void use() {
-        GLES20.glUseProgram(mHandle);
+    public int getHandle() {
+        return mHandle;
     }
 
     public int getAttributeLocation(String name) {
@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.opengl;
+
+import android.graphics.Color;
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Textured and tinted quads drawn with a single draw call.
+ *
+ * <p>Each sprite has its own position, size, rotation, colour and one of {@link #MAX_TEXTURES}
+ * textures. OpenGL ES 2.0 has no instanced arrays, so the sprite attributes are repeated for the
+ * four corners of its quad and the quads share a static index buffer. The rotation is done by the
+ * vertex shader, so the CPU only copies the attributes into a streaming vertex buffer.</p>
+ *
+ * <p>Must be used on the GL thread.</p>
+ */
+public final class SpriteBatch {
+    public static final int MAX_TEXTURES = 3;
+
+    private static final int MAX_SPRITES = QuadIndexBuffer.MAX_QUADS;
+
+    // Center (3), corner (2), size (2), angle (1), colour (3), texture (1).
+    private static final int VERTEX_SIZE = 12;
+    private static final int SPRITE_SIZE = VERTEX_SIZE * 4;
+
+    private static final float[] CORNERS = {
+            -0.5f, 0.5f,
+            -0.5f, -0.5f,
+            0.5f, 0.5f,
+            0.5f, -0.5f,
+    };
+
+    private static final String VERTEX_SHADER_CODE = "uniform mat4 uProjectionMatrix;\n"
+            + "attribute vec3 aCenter;\n"
+            + "attribute vec2 aCorner;\n"
+            + "attribute vec2 aSize;\n"
+            + "attribute float aAngle;\n"
+            + "attribute vec3 aColor;\n"
+            + "attribute float aTexture;\n"
+            + "varying vec2 vTexCoordinate;\n"
+            + "varying vec3 vColor;\n"
+            + "varying float vTexture;\n"
+            + "void main() {\n"
+            + "  float c = cos(aAngle);\n"
+            + "  float s = sin(aAngle);\n"
+            + "  vec2 offset = aSize * vec2(c * aCorner.x - s * aCorner.y,\n"
+            + "                             s * aCorner.x + c * aCorner.y);\n"
+            + "  gl_Position = uProjectionMatrix * vec4(aCenter.xy + offset, aCenter.z, 1.0);\n"
+            + "  vTexCoordinate = aCorner + 0.5;\n"
+            + "  vColor = aColor;\n"
+            + "  vTexture = aTexture;\n"
+            + "}";
+
+    // Samplers cannot be indexed dynamically in ES 2.0, hence the branches.
+    private static final String FRAGMENT_SHADER_CODE = "precision mediump float;\n"
+            + "uniform sampler2D uTexture0;\n"
+            + "uniform sampler2D uTexture1;\n"
+            + "uniform sampler2D uTexture2;\n"
+            + "varying vec2 vTexCoordinate;\n"
+            + "varying vec3 vColor;\n"
+            + "varying float vTexture;\n"
+            + "void main() {\n"
+            + "  vec4 texel;\n"
+            + "  if (vTexture < 0.5) {\n"
+            + "    texel = texture2D(uTexture0, vTexCoordinate);\n"
+            + "  } else if (vTexture < 1.5) {\n"
+            + "    texel = texture2D(uTexture1, vTexCoordinate);\n"
+            + "  } else {\n"
+            + "    texel = texture2D(uTexture2, vTexCoordinate);\n"
+            + "  }\n"
+            + "  if (texel.a < 0.1) {\n"
+            + "    discard;\n"
+            + "  }\n"
+            + "  gl_FragColor = texel * vec4(vColor, 1.0);\n"
+            + "}\n";
+
+    private final GlState mState;
+    private final Shader mShaderProgram;
+    private final int mCenterAttributeHandle;
+    private final int mCornerAttributeHandle;
+    private final int mSizeAttributeHandle;
+    private final int mAngleAttributeHandle;
+    private final int mColorAttributeHandle;
+    private final int mTextureAttributeHandle;
+    private final int mProjectionMatrixUniformHandle;
+    private final int[] mTextureUniformHandles = new int[MAX_TEXTURES];
+    private final int mAttributeMask;
+
+    // The last uploaded uniform values.
+    private final float[] mProjectionMatrix = new float[16];
+    private final int[] mTextureUnits = new int[MAX_TEXTURES];
+
+    private float[] mVertices = new float[64 * SPRITE_SIZE];
+    private FloatBuffer mVertexBuffer;
+    private final int mVertexBufferHandle;
+    private final QuadIndexBuffer mIndexBuffer;
+    private int mCount;
+
+    public SpriteBatch(@NonNull GlState state) {
+        mState = state;
+        mShaderProgram = new Shader(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
+        mCenterAttributeHandle = mShaderProgram.getAttributeLocation("aCenter");
+        mCornerAttributeHandle = mShaderProgram.getAttributeLocation("aCorner");
+        mSizeAttributeHandle = mShaderProgram.getAttributeLocation("aSize");
+        mAngleAttributeHandle = mShaderProgram.getAttributeLocation("aAngle");
+        mColorAttributeHandle = mShaderProgram.getAttributeLocation("aColor");
+        mTextureAttributeHandle = mShaderProgram.getAttributeLocation("aTexture");
+        mProjectionMatrixUniformHandle = mShaderProgram.getUniformLocation("uProjectionMatrix");
+        for (int i = 0; i < MAX_TEXTURES; ++i) {
+            mTextureUniformHandles[i] = mShaderProgram.getUniformLocation("uTexture" + i);
+        }
+        mAttributeMask = GlState.mask(mCenterAttributeHandle, mCornerAttributeHandle,
+                mSizeAttributeHandle, mAngleAttributeHandle, mColorAttributeHandle,
+                mTextureAttributeHandle);
+        Arrays.fill(mProjectionMatrix, Float.NaN);
+        Arrays.fill(mTextureUnits, -1);
+
+        final int[] handles = new int[1];
+        GLES20.glGenBuffers(1, handles, 0);
+        mVertexBufferHandle = handles[0];
+        mIndexBuffer = new QuadIndexBuffer();
+        allocateVertexBuffer();
+    }
+
+    /**
+     * Removes all sprites, call it at the start of each frame.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Adds a sprite. Does nothing if there are too many already.
+     *
+     * @param x the x coordinate of the center.
+     * @param y the y coordinate of the center.
+     * @param z the z coordinate of the center.
+     * @param angle the counterclockwise rotation in degrees.
+     * @param color the tint colour, the alpha is ignored.
+     * @param texture the index of the texture, see {@link #draw(float[], int[])}.
+     */
+    public void add(float x, float y, float z, float width, float height, float angle, int color,
+                    int texture) {
+        if (mCount == MAX_SPRITES) {
+            return;
+        }
+        if ((mCount + 1) * SPRITE_SIZE > mVertices.length) {
+            mVertices = Arrays.copyOf(mVertices,
+                    Math.min(mVertices.length * 2, MAX_SPRITES * SPRITE_SIZE));
+            allocateVertexBuffer();
+        }
+        final float radians = (float) Math.toRadians(angle);
+        final float red = Color.red(color) / 255.0f;
+        final float green = Color.green(color) / 255.0f;
+        final float blue = Color.blue(color) / 255.0f;
+        int offset = mCount * SPRITE_SIZE;
+        for (int corner = 0; corner < 4; ++corner) {
+            mVertices[offset] = x;
+            mVertices[offset + 1] = y;
+            mVertices[offset + 2] = z;
+            mVertices[offset + 3] = CORNERS[corner * 2];
+            mVertices[offset + 4] = CORNERS[corner * 2 + 1];
+            mVertices[offset + 5] = width;
+            mVertices[offset + 6] = height;
+            mVertices[offset + 7] = radians;
+            mVertices[offset + 8] = red;
+            mVertices[offset + 9] = green;
+            mVertices[offset + 10] = blue;
+            mVertices[offset + 11] = texture;
+            offset += VERTEX_SIZE;
+        }
+        ++mCount;
+    }
+
+    /**
+     * Draws all sprites with a single call.
+     *
+     * @param textureUnits the texture unit for each texture index.
+     */
+    public void draw(float[] projectionMatrix, int[] textureUnits) {
+        if (mCount == 0) {
+            return;
+        }
+        mVertexBuffer.position(0);
+        mVertexBuffer.put(mVertices, 0, mCount * SPRITE_SIZE);
+        mVertexBuffer.position(0);
+
+        mState.useProgram(mShaderProgram);
+        mState.uniformMatrix4fv(mProjectionMatrixUniformHandle, projectionMatrix,
+                mProjectionMatrix);
+        for (int i = 0; i < textureUnits.length; ++i) {
+            if (mTextureUnits[i] != textureUnits[i]) {
+                mTextureUnits[i] = textureUnits[i];
+                GLES20.glUniform1i(mTextureUniformHandles[i], textureUnits[i]);
+                mState.countCalls(1);
+            }
+        }
+
+        mState.bindArrayBuffer(mVertexBufferHandle);
+        // A new data store each time, so that the driver doesn't wait for the previous frame.
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mCount * SPRITE_SIZE * 4, mVertexBuffer,
+                GLES20.GL_STREAM_DRAW);
+        mState.countCalls(1);
+        mState.setVertexAttribArrays(mAttributeMask);
+        setAttribute(mCenterAttributeHandle, 3, 0);
+        setAttribute(mCornerAttributeHandle, 2, 3);
+        setAttribute(mSizeAttributeHandle, 2, 5);
+        setAttribute(mAngleAttributeHandle, 1, 7);
+        setAttribute(mColorAttributeHandle, 3, 8);
+        setAttribute(mTextureAttributeHandle, 1, 11);
+
+        mIndexBuffer.bind(mState, mCount);
+        mIndexBuffer.draw(mState, mCount);
+    }
+
+    private void setAttribute(int handle, int size, int offset) {
+        GLES20.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, VERTEX_SIZE * 4,
+                offset * 4);
+        mState.countCalls(1);
+    }
+
+    /**
+     * (Re-)allocates the staging buffer for the capacity of {@link #mVertices}.
+     */
+    private void allocateVertexBuffer() {
+        mVertexBuffer = ByteBuffer
+                .allocateDirect(mVertices.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.opengl;
+
+import android.graphics.Color;
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Text laid out as glyph quads of a {@link GlyphAtlas} and drawn with a single call.
+ *
+ * <p>The vertices are streamed to a buffer object every frame, so changing a label costs nothing
+ * more than drawing it: there are no bitmaps to rasterise and no textures to upload.</p>
+ *
+ * <p>Until an atlas is set, all text is dropped. Must be used on the GL thread.</p>
+ */
+public final class TextBatch {
+    private static final int MAX_GLYPHS = QuadIndexBuffer.MAX_QUADS;
+
+    // Position (3), texture coordinates (2), colour (3).
+    private static final int VERTEX_SIZE = 8;
+    private static final int GLYPH_SIZE = VERTEX_SIZE * 4;
+
+    private static final String VERTEX_SHADER_CODE = "uniform mat4 uProjectionMatrix;\n"
+            + "attribute vec3 aPosition;\n"
+            + "attribute vec2 aTexCoordinate;\n"
+            + "attribute vec3 aColor;\n"
+            + "varying vec2 vTexCoordinate;\n"
+            + "varying vec3 vColor;\n"
+            + "void main() {\n"
+            + "  gl_Position = uProjectionMatrix * vec4(aPosition, 1.0);\n"
+            + "  vTexCoordinate = aTexCoordinate;\n"
+            + "  vColor = aColor;\n"
+            + "}";
+
+    private static final String FRAGMENT_SHADER_CODE = "precision mediump float;\n"
+            + "uniform sampler2D uTexture;\n"
+            + "varying vec2 vTexCoordinate;\n"
+            + "varying vec3 vColor;\n"
+            + "void main() {\n"
+            + "  vec4 texel = texture2D(uTexture, vTexCoordinate);\n"
+            + "  if (texel.a < 0.1) {\n"
+            + "    discard;\n"
+            + "  }\n"
+            + "  gl_FragColor = texel * vec4(vColor, 1.0);\n"
+            + "}\n";
+
+    private final GlState mState;
+    private GlyphAtlas mAtlas;
+
+    private final Shader mShaderProgram;
+    private final int mPositionAttributeHandle;
+    private final int mTexCoordinateAttributeHandle;
+    private final int mColorAttributeHandle;
+    private final int mProjectionMatrixUniformHandle;
+    private final int mTextureUniformHandle;
+    private final int mAttributeMask;
+
+    // The last uploaded uniform values.
+    private final float[] mProjectionMatrix = new float[16];
+    private int mTextureUnit = -1;
+
+    private float[] mVertices = new float[256 * GLYPH_SIZE];
+    private FloatBuffer mVertexBuffer;
+    private final int mVertexBufferHandle;
+    private final QuadIndexBuffer mIndexBuffer;
+    private int mCount;
+
+    public TextBatch(@NonNull GlState state) {
+        mState = state;
+        mShaderProgram = new Shader(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
+        mPositionAttributeHandle = mShaderProgram.getAttributeLocation("aPosition");
+        mTexCoordinateAttributeHandle = mShaderProgram.getAttributeLocation("aTexCoordinate");
+        mColorAttributeHandle = mShaderProgram.getAttributeLocation("aColor");
+        mProjectionMatrixUniformHandle = mShaderProgram.getUniformLocation("uProjectionMatrix");
+        mTextureUniformHandle = mShaderProgram.getUniformLocation("uTexture");
+        mAttributeMask = GlState.mask(mPositionAttributeHandle, mTexCoordinateAttributeHandle,
+                mColorAttributeHandle);
+        Arrays.fill(mProjectionMatrix, Float.NaN);
+
+        final int[] handles = new int[1];
+        GLES20.glGenBuffers(1, handles, 0);
+        mVertexBufferHandle = handles[0];
+        mIndexBuffer = new QuadIndexBuffer();
+        allocateVertexBuffer();
+    }
+
+    /**
+     * Removes all text, call it before laying out a new batch.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Returns the number of glyphs.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Sets the uploaded atlas to lay out the text added from now on.
+     */
+    public void setAtlas(@Nullable GlyphAtlas atlas) {
+        mAtlas = atlas;
+    }
+
+    /**
+     * Returns the width of the text in dp, 0 if there is no atlas yet.
+     */
+    public float getWidth(@NonNull CharSequence text) {
+        return mAtlas != null ? mAtlas.getWidth(text) : 0;
+    }
+
+    /**
+     * Adds a line of text centered at the given point. The glyphs which don't fit are dropped.
+     *
+     * @param color the tint colour, the alpha is ignored.
+     */
+    public void add(@NonNull CharSequence text, float x, float y, float z, int color) {
+        final int length = text.length();
+        if (mAtlas == null || mCount + length > MAX_GLYPHS) {
+            return;
+        }
+        if ((mCount + length) * GLYPH_SIZE > mVertices.length) {
+            int capacity = mVertices.length / GLYPH_SIZE;
+            while (capacity < mCount + length) {
+                capacity *= 2;
+            }
+            mVertices = Arrays.copyOf(mVertices, Math.min(capacity, MAX_GLYPHS) * GLYPH_SIZE);
+            allocateVertexBuffer();
+        }
+        final float red = Color.red(color) / 255.0f;
+        final float green = Color.green(color) / 255.0f;
+        final float blue = Color.blue(color) / 255.0f;
+        final float top = y + mAtlas.getLineHeight() * 0.5f;
+        final float bottom = y - mAtlas.getLineHeight() * 0.5f;
+        float pen = x - mAtlas.getWidth(text) * 0.5f;
+        int offset = mCount * GLYPH_SIZE;
+        for (int i = 0; i < length; ++i) {
+            final int glyph = mAtlas.indexOf(text.charAt(i));
+            final float left = pen - mAtlas.getPadding();
+            final float right = left + mAtlas.getGlyphWidth(glyph);
+            offset = putVertex(offset, left, top, z, mAtlas.getLeft(glyph), mAtlas.getTop(glyph),
+                    red, green, blue);
+            offset = putVertex(offset, left, bottom, z, mAtlas.getLeft(glyph),
+                    mAtlas.getBottom(glyph), red, green, blue);
+            offset = putVertex(offset, right, top, z, mAtlas.getRight(glyph),
+                    mAtlas.getTop(glyph), red, green, blue);
+            offset = putVertex(offset, right, bottom, z, mAtlas.getRight(glyph),
+                    mAtlas.getBottom(glyph), red, green, blue);
+            pen += mAtlas.getAdvance(glyph);
+        }
+        mCount += length;
+    }
+
+    /**
+     * Draws all text with a single call.
+     *
+     * @param textureUnit the texture unit the atlas is bound to.
+     */
+    public void draw(float[] projectionMatrix, int textureUnit) {
+        if (mCount == 0) {
+            return;
+        }
+        mVertexBuffer.position(0);
+        mVertexBuffer.put(mVertices, 0, mCount * GLYPH_SIZE);
+        mVertexBuffer.position(0);
+
+        mState.useProgram(mShaderProgram);
+        mState.uniformMatrix4fv(mProjectionMatrixUniformHandle, projectionMatrix,
+                mProjectionMatrix);
+        if (mTextureUnit != textureUnit) {
+            mTextureUnit = textureUnit;
+            GLES20.glUniform1i(mTextureUniformHandle, textureUnit);
+            mState.countCalls(1);
+        }
+
+        mState.bindArrayBuffer(mVertexBufferHandle);
+        // A new data store each time, so that the driver doesn't wait for the previous draw.
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mCount * GLYPH_SIZE * 4, mVertexBuffer,
+                GLES20.GL_STREAM_DRAW);
+        mState.countCalls(1);
+        mState.setVertexAttribArrays(mAttributeMask);
+        setAttribute(mPositionAttributeHandle, 3, 0);
+        setAttribute(mTexCoordinateAttributeHandle, 2, 3);
+        setAttribute(mColorAttributeHandle, 3, 5);
+
+        mIndexBuffer.bind(mState, mCount);
+        mIndexBuffer.draw(mState, mCount);
+    }
+
+    private int putVertex(int offset, float x, float y, float z, float s, float t, float red,
+                          float green, float blue) {
+        mVertices[offset] = x;
+        mVertices[offset + 1] = y;
+        mVertices[offset + 2] = z;
+        mVertices[offset + 3] = s;
+        mVertices[offset + 4] = t;
+        mVertices[offset + 5] = red;
+        mVertices[offset + 6] = green;
+        mVertices[offset + 7] = blue;
+        return offset + VERTEX_SIZE;
+    }
+
+    private void setAttribute(int handle, int size, int offset) {
+        GLES20.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, VERTEX_SIZE * 4,
+                offset * 4);
+        mState.countCalls(1);
+    }
+
+    /**
+     * (Re-)allocates the staging buffer for the capacity of {@link #mVertices}.
+     */
+    private void allocateVertexBuffer() {
+        mVertexBuffer = ByteBuffer
+                .allocateDirect(mVertices.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.terrain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A 1x1 degree SRTM elevation tile in the HGT format.
+ *
+ * <p>The file is a square grid of big-endian 16-bit elevations in meters, the rows from north to
+ * south, e.g. 1201x1201 for SRTM3 or 3601x3601 for SRTM1. It is memory-mapped rather than read, so
+ * only the pages actually used are loaded, and the system may drop them again.</p>
+ */
+final class HgtTile {
+    private static final short VOID = -32768;
+
+    private final ShortBuffer mElevations;
+
+    /**
+     * The number of samples per row and per column.
+     */
+    private final int mSize;
+
+    private final int mLatitude;
+    private final int mLongitude;
+
+    private HgtTile(ShortBuffer elevations, int size, int lat, int lon) {
+        mElevations = elevations;
+        mSize = size;
+        mLatitude = lat;
+        mLongitude = lon;
+    }
+
+    /**
+     * Maps the tile whose south-west corner is at the given position.
+     */
+    static HgtTile open(File file, int lat, int lon) throws IOException {
+        // The mapping stays valid after the channel has been closed.
+        try (RandomAccessFile stream = new RandomAccessFile(file, "r");
+             FileChannel channel = stream.getChannel()) {
+            final long length = channel.size();
+            final int size = (int) Math.round(Math.sqrt(length / 2.0));
+            if (size < 2 || (long) size * size * 2 != length) {
+                throw new IOException("Not an HGT file: " + file);
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new HgtTile(buffer.asShortBuffer(), size, lat, lon);
+        }
+    }
+
+    /**
+     * Returns the elevation in meters over MSL, interpolated between the four nearest samples, or
+     * NaN if it is unknown.
+     */
+    double getElevation(double lat, double lon) {
+        final double row = (mLatitude + 1 - lat) * (mSize - 1);
+        final double column = (lon - mLongitude) * (mSize - 1);
+        final int row0 = Math.max(0, Math.min(mSize - 2, (int) row));
+        final int column0 = Math.max(0, Math.min(mSize - 2, (int) column));
+        final double y = row - row0;
+        final double x = column - column0;
+        final int index = row0 * mSize + column0;
+        final short a = mElevations.get(index);
+        final short b = mElevations.get(index + 1);
+        final short c = mElevations.get(index + mSize);
+        final short d = mElevations.get(index + mSize + 1);
+        if (a == VOID || b == VOID || c == VOID || d == VOID) {
+            return Double.NaN;
+        }
+        return (a * (1 - x) + b * x) * (1 - y) + (c * (1 - x) + d * x) * y;
+    }
+
+    /**
+     * Returns the distance between two samples in degrees.
+     */
+    double getResolution() {
+        return 1.0 / (mSize - 1);
+    }
+}
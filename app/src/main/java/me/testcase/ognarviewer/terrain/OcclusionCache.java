@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.terrain;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which targets are hidden by the ground, so the lines of sight are only checked again
+ * after the viewer or the target has moved significantly.
+ *
+ * <p>The targets are identified by a small integer (e.g. their slot in the world) and an object
+ * to detect a reused id. At most {@link #MAX_CHECKS_PER_FRAME} lines are checked per frame, the
+ * others keep their previous result until a later frame, so the frame time doesn't depend on
+ * the number of targets.</p>
+ *
+ * <p>This class is not thread safe, it is meant to be used by the renderer only.</p>
+ */
+public final class OcclusionCache {
+    static final int MAX_CHECKS_PER_FRAME = 32;
+
+    private static final double MAX_TARGET_MOVE = 200; // m
+    private static final double MAX_TARGET_CLIMB = 50; // m
+    private static final double MAX_VIEWER_MOVE = 50; // m
+    private static final double MAX_VIEWER_CLIMB = 20; // m
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6378137);
+
+    private final Terrain mTerrain;
+
+    private Object[] mKeys = new Object[0];
+    private int[] mGenerations = new int[0];
+    private boolean[] mOccluded = new boolean[0];
+    private double[] mLatitudes = new double[0];
+    private double[] mLongitudes = new double[0];
+    private double[] mAltitudes = new double[0];
+
+    private double mViewerLatitude = Double.NaN;
+    private double mViewerLongitude;
+    private double mViewerAltitude;
+
+    /**
+     * Incremented whenever the viewer moves significantly, which makes all results stale.
+     */
+    private int mGeneration = 1;
+
+    private int mChecks;
+
+    public OcclusionCache(Terrain terrain) {
+        mTerrain = terrain;
+    }
+
+    /**
+     * Starts a new frame.
+     *
+     * @param alt the altitude of the viewer over MSL.
+     */
+    public void setViewer(double lat, double lon, double alt) {
+        mChecks = 0;
+        if (Double.isNaN(mViewerLatitude)
+                || isFar(lat, lon, mViewerLatitude, mViewerLongitude, MAX_VIEWER_MOVE)
+                || Math.abs(alt - mViewerAltitude) > MAX_VIEWER_CLIMB) {
+            mViewerLatitude = lat;
+            mViewerLongitude = lon;
+            mViewerAltitude = alt;
+            ++mGeneration;
+        }
+    }
+
+    /**
+     * Returns true if the ground hides the target from the viewer.
+     *
+     * @param id a small non-negative integer identifying the target.
+     * @param key the target itself.
+     * @param alt the altitude of the target over MSL.
+     */
+    public boolean isOccluded(int id, Object key, double lat, double lon, double alt) {
+        if (id >= mKeys.length) {
+            grow(id + 1);
+        }
+        final boolean known = mKeys[id] == key;
+        if (known && mGenerations[id] == mGeneration
+                && !isFar(lat, lon, mLatitudes[id], mLongitudes[id], MAX_TARGET_MOVE)
+                && Math.abs(alt - mAltitudes[id]) <= MAX_TARGET_CLIMB) {
+            return mOccluded[id];
+        }
+        if (mChecks >= MAX_CHECKS_PER_FRAME) {
+            // Out of budget, a stale result is better than none.
+            return known && mOccluded[id];
+        }
+        ++mChecks;
+        mKeys[id] = key;
+        mGenerations[id] = mGeneration;
+        mLatitudes[id] = lat;
+        mLongitudes[id] = lon;
+        mAltitudes[id] = alt;
+        mOccluded[id] = mTerrain.isOccluded(mViewerLatitude, mViewerLongitude, mViewerAltitude,
+                lat, lon, alt);
+        return mOccluded[id];
+    }
+
+    private void grow(int size) {
+        final int capacity = Math.max(size, mKeys.length * 2);
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mGenerations = Arrays.copyOf(mGenerations, capacity);
+        mOccluded = Arrays.copyOf(mOccluded, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mAltitudes = Arrays.copyOf(mAltitudes, capacity);
+    }
+
+    private static boolean isFar(double lat1, double lon1, double lat2, double lon2,
+                                 double distance) {
+        final double north = (lat2 - lat1) * METERS_PER_DEGREE;
+        final double east = (lon2 - lon1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat1));
+        return north * north + east * east > distance * distance;
+    }
+}
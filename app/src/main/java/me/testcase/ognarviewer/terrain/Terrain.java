@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.terrain;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Ground elevation from the SRTM tiles in a local directory, e.g. {@code N49E007.hgt}.
+ *
+ * <p>The most recently used tiles are kept mapped, see {@link HgtTile}. Missing tiles are
+ * remembered as well, so the directory isn't searched again and again. Where there is no tile,
+ * the elevation is unknown and nothing is occluded.</p>
+ *
+ * <p>This class is not thread safe, the caller must synchronize.</p>
+ */
+public final class Terrain {
+    private static final String TAG = "Terrain";
+
+    /**
+     * The number of tiles kept mapped, enough for the visible range around a tile corner.
+     */
+    private static final int MAX_OPEN_TILES = 16;
+
+    // The earth radius for lines of sight, larger than the real one because of the refraction.
+    private static final double EFFECTIVE_EARTH_RADIUS = 6378137 * 7.0 / 6;
+
+    // The line of sight may touch the ground that much near its ends: GPS altitudes are not
+    // precise, and neither are the tiles.
+    private static final double CLEARANCE = 30; // m
+
+    // Ignore the ground around the viewer and the target, e.g. a hill the viewer stands on.
+    private static final double MARGIN = 300; // m
+
+    // Long lines are checked with fewer samples than the tile resolution allows.
+    private static final int MAX_SAMPLES = 256;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6378137);
+
+    private final File mDirectory;
+
+    // Access ordered, so the eldest entry is the least recently used tile. The value is null if
+    // there is no such tile.
+    private final Map<Integer, HgtTile> mTiles =
+            new LinkedHashMap<Integer, HgtTile>(MAX_OPEN_TILES * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, HgtTile> eldest) {
+                    return size() > MAX_OPEN_TILES;
+                }
+            };
+
+    // The tile of the previous lookup, the samples of a line of sight are mostly in the same one.
+    // The key is -1 if there was none.
+    private int mLastKey = -1;
+    private HgtTile mLastTile;
+
+    public Terrain(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the elevation in meters over MSL or NaN if it is unknown.
+     */
+    public double getElevation(double lat, double lon) {
+        final HgtTile tile = getTile(lat, lon);
+        if (tile == null) {
+            return Double.NaN;
+        }
+        return tile.getElevation(lat, lon);
+    }
+
+    /**
+     * Returns true if the ground hides the second position from the first one.
+     *
+     * <p>The line between the positions is sampled at about the resolution of the tiles. The earth
+     * curvature is taken into account: the ground bulges up between the positions, most in the
+     * middle.</p>
+     *
+     * @param alt1 the altitude over MSL.
+     * @param alt2 the altitude over MSL.
+     */
+    public boolean isOccluded(double lat1, double lon1, double alt1, double lat2, double lon2,
+                              double alt2) {
+        final double cos = Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        final double north = (lat2 - lat1) * METERS_PER_DEGREE;
+        final double east = (lon2 - lon1) * METERS_PER_DEGREE * cos;
+        final double distance = Math.hypot(north, east);
+        if (distance <= 2 * MARGIN) {
+            return false;
+        }
+
+        final HgtTile tile = getTile(lat1, lon1);
+        final double resolution = tile == null ? 1.0 / 1200 : tile.getResolution();
+        final double step = Math.max(resolution * METERS_PER_DEGREE, distance / MAX_SAMPLES);
+        for (double d = MARGIN; d < distance - MARGIN; d += step) {
+            final double t = d / distance;
+            final double elevation = getElevation(lat1 + (lat2 - lat1) * t,
+                    lon1 + (lon2 - lon1) * t);
+            if (Double.isNaN(elevation)) {
+                continue;
+            }
+            final double line = alt1 + (alt2 - alt1) * t
+                    - d * (distance - d) / (2 * EFFECTIVE_EARTH_RADIUS);
+            if (elevation > line + CLEARANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private HgtTile getTile(double lat, double lon) {
+        final int south = (int) Math.floor(lat);
+        final int west = (int) Math.floor(lon);
+        final int key = (south + 90) * 360 + west + 180;
+        if (key == mLastKey) {
+            return mLastTile;
+        }
+        // Only boxed when moving to another tile, which is rare along a line of sight.
+        final Integer boxedKey = key;
+        HgtTile tile = mTiles.get(boxedKey);
+        if (tile == null && !mTiles.containsKey(boxedKey)) {
+            tile = openTile(south, west);
+            mTiles.put(boxedKey, tile);
+        }
+        mLastKey = key;
+        mLastTile = tile;
+        return tile;
+    }
+
+    /**
+     * Returns the tile with the given south west corner or null if there is none.
+     */
+    private HgtTile openTile(int south, int west) {
+        final String name = String.format(Locale.ROOT, "%c%02d%c%03d.hgt",
+                south < 0 ? 'S' : 'N', Math.abs(south), west < 0 ? 'W' : 'E', Math.abs(west));
+        final File file = new File(mDirectory, name);
+        HgtTile tile = null;
+        if (file.exists()) {
+            try {
+                tile = HgtTile.open(file, south, west);
+            } catch (IOException e) {
+                Log.e(TAG, e.toString());
+            }
+        }
+        return tile;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import android.opengl.GLES20;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import me.testcase.ognarviewer.utils.Histogram;
+
+/**
+ * Measures how long each phase of a frame takes.
+ *
+ * <p>The CPU time of a phase is measured with System.nanoTime() and can be split into several
+ * parts per frame. The GPU time is the time glFinish() waits at the end of the frame: GLES20
+ * has no bindings for the timer queries, and the wait is only done while profiling.</p>
+ *
+ * <p>The phases may nest: the batches are drawn during the compass and targets phases, and the
+ * frame phase covers the CPU time of all others. The durations are added to a {@link Histogram}
+ * per phase in microseconds, so they can be read from any thread.</p>
+ */
+final class FrameProfiler {
+    static final int PHASE_CAMERA = 0;
+    static final int PHASE_COMPASS = 1;
+    static final int PHASE_TRAILS = 2;
+    static final int PHASE_TARGETS = 3;
+    static final int PHASE_BATCHES = 4;
+    static final int PHASE_GPU = 5;
+    static final int PHASE_FRAME = 6;
+
+    private static final String[] PHASE_NAMES = {
+            "camera", "compass", "trails", "targets", "batches", "gpu", "frame",
+    };
+
+    private final Histogram[] mHistograms = new Histogram[PHASE_NAMES.length];
+
+    // In nanoseconds, only used on the GL thread.
+    private final long[] mStartTimes = new long[PHASE_NAMES.length];
+    private final long[] mDurations = new long[PHASE_NAMES.length];
+
+    FrameProfiler() {
+        for (int i = 0; i < mHistograms.length; ++i) {
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    void beginFrame() {
+        for (int i = 0; i < mDurations.length; ++i) {
+            mDurations[i] = 0;
+        }
+        begin(PHASE_FRAME);
+    }
+
+    void begin(int phase) {
+        mStartTimes[phase] = System.nanoTime();
+    }
+
+    void end(int phase) {
+        mDurations[phase] += System.nanoTime() - mStartTimes[phase];
+    }
+
+    /**
+     * Waits for the GPU and adds the durations of the frame to the histograms.
+     *
+     * <p>The phases which didn't run in this frame are not added.</p>
+     */
+    void endFrame() {
+        end(PHASE_FRAME);
+        begin(PHASE_GPU);
+        GLES20.glFinish();
+        end(PHASE_GPU);
+        for (int i = 0; i < mDurations.length; ++i) {
+            if (mDurations[i] != 0) {
+                mHistograms[i].add(mDurations[i] / 1000);
+            }
+        }
+    }
+
+    int getPhaseCount() {
+        return PHASE_NAMES.length;
+    }
+
+    /**
+     * Returns a line like "targets 120/450/900 us" with the 50th, 95th and 99th percentiles.
+     */
+    @NonNull
+    String getSummary(int phase) {
+        final Histogram histogram = mHistograms[phase];
+        return String.format(Locale.US, "%s %d/%d/%d us", PHASE_NAMES[phase],
+                histogram.getPercentile(0.5), histogram.getPercentile(0.95),
+                histogram.getPercentile(0.99));
+    }
+
+    /**
+     * Writes all phases as CSV, the durations are in microseconds.
+     */
+    void export(@NonNull Writer writer) throws IOException {
+        writer.write("phase,count,p50,p95,p99,max\n");
+        for (int i = 0; i < PHASE_NAMES.length; ++i) {
+            final Histogram histogram = mHistograms[i];
+            writer.write(String.format(Locale.US, "%s,%d,%d,%d,%d,%d\n", PHASE_NAMES[i],
+                    histogram.getCount(), histogram.getPercentile(0.5),
+                    histogram.getPercentile(0.95), histogram.getPercentile(0.99),
+                    histogram.getMax()));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.testcase.ognarviewer.world.Target;
+
+/**
+ * The markers of the last frame, so that the taps can be resolved on the UI thread.
+ *
+ * <p>The renderer fills a back buffer while drawing and publishes it at the end of the frame, so
+ * the UI thread always sees a complete frame. Coordinates are in dp with the origin in the middle
+ * of the screen, like the orthographic projection of the renderer.</p>
+ */
+final class HitTestIndex {
+    private final Object mLock = new Object();
+
+    // Only used by the GL thread.
+    private Frame mBack = new Frame();
+
+    // Guarded by mLock.
+    private Frame mFront = new Frame();
+
+    /**
+     * Starts a new frame of the given size, on the GL thread.
+     */
+    void begin(float width, float height, float density) {
+        mBack.clear();
+        mBack.mWidth = width;
+        mBack.mHeight = height;
+        mBack.mDensity = density;
+    }
+
+    /**
+     * Adds the marker of a target, on the GL thread.
+     *
+     * @param radius half the size of the square which can be tapped.
+     */
+    void addTarget(@NonNull Target target, @NonNull String name, float x, float y, float radius,
+                   float distance) {
+        final int i = mBack.add(x, y, radius, distance);
+        mBack.mTargets[i] = target;
+        mBack.mNames[i] = name;
+    }
+
+    /**
+     * Adds the marker of a cluster, on the GL thread.
+     */
+    void addCluster(float[] direction, float x, float y, float radius, float distance) {
+        final int i = mBack.add(x, y, radius, distance);
+        System.arraycopy(direction, 0, mBack.mDirections, i * 3, 3);
+    }
+
+    /**
+     * Makes the frame visible to query(), on the GL thread.
+     */
+    void publish() {
+        synchronized (mLock) {
+            final Frame frame = mFront;
+            mFront = mBack;
+            mBack = frame;
+        }
+    }
+
+    /**
+     * Finds the markers under the point of the view, in pixels. A target is preferred to a
+     * cluster.
+     */
+    @NonNull
+    Result query(float viewX, float viewY) {
+        final Result result = new Result();
+        synchronized (mLock) {
+            final Frame frame = mFront;
+            if (frame.mDensity == 0) {
+                return result; // Nothing drawn yet.
+            }
+            final float x = viewX / frame.mDensity - frame.mWidth * 0.5f;
+            final float y = -viewY / frame.mDensity + frame.mHeight * 0.5f;
+            int hits = 0;
+            long[] order = new long[8];
+            float clusterDistance = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < frame.mCount; ++i) {
+                final float radius = frame.mRadii[i];
+                if (x < frame.mX[i] - radius || x > frame.mX[i] + radius
+                        || y < frame.mY[i] - radius || y > frame.mY[i] + radius) {
+                    continue;
+                }
+                if (frame.mTargets[i] != null) {
+                    if (hits == order.length) {
+                        order = Arrays.copyOf(order, hits * 2);
+                    }
+                    // Non-negative floats have the same order as their bits.
+                    order[hits++] = ((long) Float.floatToIntBits(frame.mDistances[i]) << 32) | i;
+                } else if (frame.mDistances[i] < clusterDistance) {
+                    clusterDistance = frame.mDistances[i];
+                    System.arraycopy(frame.mDirections, i * 3, result.mClusterDirection, 0, 3);
+                    result.mCluster = true;
+                }
+            }
+            Arrays.sort(order, 0, hits);
+            for (int k = 0; k < hits; ++k) {
+                final int i = (int) order[k];
+                result.mTargets.add(frame.mTargets[i]);
+                result.mNames.add(frame.mNames[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The result of a query.
+     */
+    static final class Result {
+        private final List<Target> mTargets = new ArrayList<>();
+        private final List<String> mNames = new ArrayList<>();
+        private final float[] mClusterDirection = new float[3];
+        private boolean mCluster;
+
+        /**
+         * Returns the tapped targets, the nearest first.
+         */
+        @NonNull
+        List<Target> getTargets() {
+            return mTargets;
+        }
+
+        /**
+         * Returns the labels of the targets, in the same order.
+         */
+        @NonNull
+        List<String> getNames() {
+            return mNames;
+        }
+
+        /**
+         * Returns true if a cluster was tapped, the targets take precedence.
+         */
+        boolean isCluster() {
+            return mCluster;
+        }
+
+        /**
+         * Returns the direction of the tapped cluster in the world coordinates.
+         */
+        @NonNull
+        float[] getClusterDirection() {
+            return mClusterDirection;
+        }
+    }
+
+    private static final class Frame {
+        float mWidth;
+        float mHeight;
+        float mDensity;
+
+        int mCount;
+        float[] mX = new float[64];
+        float[] mY = new float[64];
+        float[] mRadii = new float[64];
+        float[] mDistances = new float[64];
+        // Null for the clusters.
+        Target[] mTargets = new Target[64];
+        String[] mNames = new String[64];
+        float[] mDirections = new float[64 * 3];
+
+        void clear() {
+            // Don't keep the targets reachable until the next frame.
+            Arrays.fill(mTargets, 0, mCount, null);
+            Arrays.fill(mNames, 0, mCount, null);
+            mCount = 0;
+        }
+
+        int add(float x, float y, float radius, float distance) {
+            if (mCount == mX.length) {
+                final int length = mCount * 2;
+                mX = Arrays.copyOf(mX, length);
+                mY = Arrays.copyOf(mY, length);
+                mRadii = Arrays.copyOf(mRadii, length);
+                mDistances = Arrays.copyOf(mDistances, length);
+                mTargets = Arrays.copyOf(mTargets, length);
+                mNames = Arrays.copyOf(mNames, length);
+                mDirections = Arrays.copyOf(mDirections, length * 3);
+            }
+            final int i = mCount++;
+            mX[i] = x;
+            mY[i] = y;
+            mRadii[i] = radius;
+            mDistances[i] = distance;
+            mTargets[i] = null;
+            mNames[i] = null;
+            return i;
+        }
+    }
+}
@@ -313,6 +313,8 @@ public class HomeFragment extends Fragment implements AircraftBottomSheet.OnEdit
 
         mViewModel.requestLocationUpdates();
         mViewModel.registerSensorListener();
+        mViewModel.startExpiringTargets();
+        mViewModel.startDemoTraffic();
 
         mBinding.worldView.onResume();
         mBinding.gpsWaiting.trafficAnimation.onResume();
@@ -328,9 +330,12 @@ public class HomeFragment extends Fragment implements AircraftBottomSheet.OnEdit
         mBinding.autoCalibration.compassAnimation.onPause();
 
         if (!requireActivity().isChangingConfigurations()) {
+            mViewModel.stopExpiringTargets();
+            mViewModel.stopDemoTraffic();
             mViewModel.unregisterSensorListener();
             mViewModel.stopLocationUpdates();
             mViewModel.disconnect();
+            mViewModel.saveReceivers();
         }
 
         super.onPause();
@@ -30,6 +30,8 @@ import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationManager;
 import android.location.OnNmeaMessageListener;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -41,6 +43,8 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.preference.PreferenceManager;
 
+import java.io.File;
+
 import me.testcase.ognarviewer.CalibratedClock;
 import me.testcase.ognarviewer.R;
 import me.testcase.ognarviewer.client.AircraftLocationMessage;
@@ -50,8 +54,11 @@ import me.testcase.ognarviewer.client.ReceiverLocationMessage;
 import me.testcase.ognarviewer.client.ReceiverStatusMessage;
 import me.testcase.ognarviewer.utils.LocationObfuscator;
 import me.testcase.ognarviewer.world.Aircraft;
+import me.testcase.ognarviewer.world.CollisionAlert;
 import me.testcase.ognarviewer.world.Receiver;
+import me.testcase.ognarviewer.world.ReceiverCache;
 import me.testcase.ognarviewer.world.Target;
+import me.testcase.ognarviewer.world.TrafficSimulator;
 import me.testcase.ognarviewer.world.World;
 
 /**
@@ -61,7 +68,8 @@ import me.testcase.ognarviewer.world.World;
  */
 public final class HomeViewModel extends AndroidViewModel implements SensorEventListener,
         LocationListenerCompat, OnNmeaMessageListener,
-        SharedPreferences.OnSharedPreferenceChangeListener, Client.MessageListener {
+        SharedPreferences.OnSharedPreferenceChangeListener, Client.MessageListener,
+        World.OnTargetExpiredListener {
     private static final String TAG = "HomeViewModel";
 
     /**
@@ -93,6 +101,11 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
      */
     private static final int MINIMUM_ACCURACY = 10;
 
+    /**
+     * How often expired targets are removed from the world, in milliseconds.
+     */
+    private static final long EXPIRATION_INTERVAL = 1000;
+
     private final World mWorld = new World();
     private final Client mClient = new Client();
 
@@ -107,6 +120,11 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
 
     private final MutableLiveData<Target> mSelectedTarget = new MutableLiveData<>();
 
+    /**
+     * The change version of the selected target when it was emitted the last time.
+     */
+    private long mSelectedTargetVersion;
+
     private boolean mCompassOk;
     private boolean mGpsFixAvailable;
     private boolean mGoodGpsAccuracy;
@@ -127,8 +145,20 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
             new MutableLiveData<>(SensorManager.SENSOR_STATUS_NO_CONTACT);
 
     private boolean mDemoMode;
+    private TrafficSimulator mTrafficSimulator;
+    private CollisionAlert mCollisionAlert;
+    private final ReceiverCache mReceiverCache;
     private final MutableLiveData<Boolean> mShowReconnectDialog = new MutableLiveData<>();
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mExpireTargets = new Runnable() {
+        @Override
+        public void run() {
+            mWorld.expireTargets(CalibratedClock.currentTimeMillis());
+            mHandler.postDelayed(this, EXPIRATION_INTERVAL);
+        }
+    };
+
     private final GnssStatus.Callback mGnssStatusCallback = new GnssStatus.Callback() {
         @Override
         public void onSatelliteStatusChanged(@NonNull GnssStatus status) {
@@ -150,10 +180,16 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
         Log.v(TAG, String.format("HomeViewModel %h created", this));
 
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(application);
+        mReceiverCache = new ReceiverCache(new File(application.getCacheDir(), "receivers.bin"));
         mSharedPreferences.registerOnSharedPreferenceChangeListener(this);
+        mWorld.setOnTargetExpiredListener(this);
         mWorld.setLocationPredictionEnabled(mSharedPreferences.getBoolean("linear_interpolation",
                 true));
         setDemoMode(mSharedPreferences.getBoolean("demo_mode", false));
+        setCollisionAlertsEnabled(mSharedPreferences.getBoolean("collision_alerts", false));
+        if (!mDemoMode) {
+            mReceiverCache.loadInBackground(mWorld);
+        }
         mClient.setHostname(mSharedPreferences.getString("aprs_server", Client.DEFAULT_HOST));
 
         mSensorManager = (SensorManager) application.getSystemService(Context.SENSOR_SERVICE);
@@ -168,6 +204,10 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
     @Override
     protected void onCleared() {
         mSharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
+        mWorld.setOnTargetExpiredListener(null);
+        mWorld.setOnCollisionAlertListener(null);
+        stopExpiringTargets();
+        stopTrafficSimulator();
     }
 
     public World getWorld() {
@@ -228,7 +268,12 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
      */
     private void updateToolbarSubtitle() {
         String desiredText = null;
-        if (mDemoMode) {
+        if (mCollisionAlert != null) {
+            // More important than anything else.
+            desiredText = getApplication().getString(R.string.collision_alert,
+                    Math.round(mCollisionAlert.getTime()),
+                    mCollisionAlert.getAircraft().getCallSign());
+        } else if (mDemoMode) {
             desiredText = getApplication().getString(R.string.demo_mode_active);
         } else if (!mGoodGpsAccuracy && mHorizontalLocationAccuracy != -1) {
             desiredText = getApplication().getString(R.string.waiting_gps_accuracy,
@@ -245,9 +290,23 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
     }
 
     public void selectTarget(Target target) {
+        mSelectedTargetVersion = target != null ? target.getChangeVersion() : 0;
         mSelectedTarget.setValue(target);
     }
 
+    /**
+     * Emits the selected target again if it is the given one and it has changed since the last
+     * time, otherwise the bottom sheet would show stale data.
+     */
+    private void updateSelectedTarget(Target target) {
+        final Target selectedTarget = mSelectedTarget.getValue();
+        if (selectedTarget != null && selectedTarget == target
+                && target.getChangeVersion() != mSelectedTargetVersion) {
+            mSelectedTargetVersion = target.getChangeVersion();
+            mSelectedTarget.setValue(selectedTarget);
+        }
+    }
+
     public LiveData<Integer> getCompassAccuracy() {
         return mCompassAccuracy;
     }
@@ -309,6 +368,44 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
         return mGpsEnabled;
     }
 
+    /**
+     * Starts removing targets which haven't sent a beacon for too long.
+     */
+    public void startExpiringTargets() {
+        mHandler.removeCallbacks(mExpireTargets);
+        mHandler.post(mExpireTargets);
+    }
+
+    public void stopExpiringTargets() {
+        mHandler.removeCallbacks(mExpireTargets);
+    }
+
+    /**
+     * Resumes the simulated demo traffic, if any. Does nothing if it is already moving.
+     */
+    public void startDemoTraffic() {
+        if (mTrafficSimulator != null) {
+            mTrafficSimulator.start();
+        }
+    }
+
+    /**
+     * Pauses the simulated demo traffic, so it doesn't update the world while nothing is shown.
+     */
+    public void stopDemoTraffic() {
+        if (mTrafficSimulator != null) {
+            mTrafficSimulator.stop();
+        }
+    }
+
+    @Override
+    public void onTargetExpired(Target target) {
+        // The bottom sheet would show stale data otherwise.
+        if (mSelectedTarget.getValue() == target) {
+            mSelectedTarget.setValue(null);
+        }
+    }
+
     public void requestLocationUpdates() {
         Log.v(TAG, "requestLocationUpdates()");
         if (getApplication().checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION)
@@ -411,6 +508,9 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
     private void setDemoMode(boolean active) {
         mDemoMode = active;
 
+        // The simulator must not add aircraft after the world was cleared.
+        stopTrafficSimulator();
+
         if (active) {
             mWorld.clear();
             mWorld.setDemo(true);
@@ -421,33 +521,23 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
             location.setAltitude(350);
             mWorld.setPosition(location);
 
-            final Aircraft aircraft1 = mWorld.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350,
-                    CalibratedClock.currentTimeMillis());
-            aircraft1.setGroundSpeed(90);
-            aircraft1.setClimbRate(0);
-            aircraft1.setHeading(180);
-
-            final Aircraft aircraft2 = mWorld.addAircraft("FLR3D238E", 0x0A3D238E, 48.9, 6.9, 4350,
-                    CalibratedClock.currentTimeMillis());
-            aircraft2.setGroundSpeed(200);
-            aircraft2.setClimbRate(2);
-            aircraft2.setHeading(1);
-
-            final Aircraft aircraft3 = mWorld.addAircraft("FLR3FEF7C", 0x0A3FEF7C, 48.9, 6.9, 350,
-                    CalibratedClock.currentTimeMillis());
-            aircraft3.setGroundSpeed(0);
-
-            final Receiver receiver = mWorld.addReceiver(
-                    "TEST", 49.1, 7.1, 350, CalibratedClock.currentTimeMillis());
-            receiver.setFreeRam(128);
-            receiver.setTotalRam(1024);
-            receiver.setCpuLoad(0.7f);
-            receiver.setVersion("v1.2.3.DEMO");
-            receiver.setCpuTemperature(72);
-            receiver.setNtpOffset(0.5);
+            int traffic = 0;
+            try {
+                traffic = Integer.parseInt(mSharedPreferences.getString("demo_traffic", "0"));
+            } catch (NumberFormatException e) {
+                // Use the static aircraft.
+            }
+            if (traffic >= TrafficSimulator.MIN_AIRCRAFT
+                    && traffic <= TrafficSimulator.MAX_AIRCRAFT) {
+                mTrafficSimulator = new TrafficSimulator(mWorld, 49, 7, 350, traffic, 0);
+                mTrafficSimulator.start();
+            } else {
+                addStaticDemoAircraft();
+            }
         } else if (mWorld.isDemo()) {
             mWorld.clear();
             mWorld.setDemo(false);
+            mReceiverCache.loadInBackground(mWorld);
         }
 
         // When the demo mode is active, GPS overlays are impossible.
@@ -456,17 +546,73 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
         updateToolbarSubtitle();
     }
 
+    private void addStaticDemoAircraft() {
+        final Aircraft aircraft1 = mWorld.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350,
+                CalibratedClock.currentTimeMillis());
+        aircraft1.setGroundSpeed(90);
+        aircraft1.setClimbRate(0);
+        aircraft1.setHeading(180);
+
+        final Aircraft aircraft2 = mWorld.addAircraft("FLR3D238E", 0x0A3D238E, 48.9, 6.9, 4350,
+                CalibratedClock.currentTimeMillis());
+        aircraft2.setGroundSpeed(200);
+        aircraft2.setClimbRate(2);
+        aircraft2.setHeading(1);
+
+        final Aircraft aircraft3 = mWorld.addAircraft("FLR3FEF7C", 0x0A3FEF7C, 48.9, 6.9, 350,
+                CalibratedClock.currentTimeMillis());
+        aircraft3.setGroundSpeed(0);
+
+        final Receiver receiver = mWorld.addReceiver(
+                "TEST", 49.1, 7.1, 350, CalibratedClock.currentTimeMillis());
+        receiver.setFreeRam(128);
+        receiver.setTotalRam(1024);
+        receiver.setCpuLoad(0.7f);
+        receiver.setVersion("v1.2.3.DEMO");
+        receiver.setCpuTemperature(72);
+        receiver.setNtpOffset(0.5);
+    }
+
+    private void setCollisionAlertsEnabled(boolean enabled) {
+        if (enabled) {
+            // Aircraft are added on the client or the simulator thread.
+            mWorld.setOnCollisionAlertListener(alert -> mHandler.post(() -> {
+                mCollisionAlert = alert;
+                updateToolbarSubtitle();
+            }));
+            mCollisionAlert = mWorld.getCollisionAlert();
+        } else {
+            mWorld.setOnCollisionAlertListener(null);
+            mCollisionAlert = null;
+        }
+        updateToolbarSubtitle();
+    }
+
+    private void stopTrafficSimulator() {
+        if (mTrafficSimulator != null) {
+            mTrafficSimulator.stop();
+            mTrafficSimulator = null;
+        }
+    }
+
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
                                           @Nullable String key) {
         if (key == null) {
             setDemoMode(false);
+            setCollisionAlertsEnabled(false);
             mWorld.setLocationPredictionEnabled(true);
             mClient.setHostname(Client.DEFAULT_HOST);
         } else if (key.equals("linear_interpolation")) {
             mWorld.setLocationPredictionEnabled(mSharedPreferences.getBoolean(key, true));
         } else if (key.equals("demo_mode")) {
             setDemoMode(mSharedPreferences.getBoolean(key, false));
+        } else if (key.equals("demo_traffic")) {
+            if (mDemoMode) {
+                setDemoMode(true);
+            }
+        } else if (key.equals("collision_alerts")) {
+            setCollisionAlertsEnabled(mSharedPreferences.getBoolean(key, false));
         } else if (key.equals("aprs_server")) {
             mClient.setHostname(mSharedPreferences.getString(key, Client.DEFAULT_HOST));
         }
@@ -477,21 +623,24 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
         mOgnLocation = null;
     }
 
+    /**
+     * Remembers the receivers for the next start.
+     */
+    public void saveReceivers() {
+        if (!mDemoMode) {
+            mReceiverCache.save(mWorld, CalibratedClock.currentTimeMillis());
+        }
+    }
+
     @Override
     public void onAprsMessage(AprsMessage message) {
         if (message instanceof AircraftLocationMessage) {
             final AircraftLocationMessage ognMessage = (AircraftLocationMessage) message;
             final Aircraft aircraft = mWorld.addAircraft(message.callSign, ognMessage.id,
                     ognMessage.latitude, ognMessage.longitude, ognMessage.altitude,
-                    ognMessage.timestamp);
-            aircraft.setGroundSpeed(ognMessage.groundSpeed);
-            aircraft.setClimbRate((float) ognMessage.climbRate);
-            aircraft.setHeading(ognMessage.heading);
-            aircraft.setTurnRate(ognMessage.turnRate);
-            final Target selectedTarget = mSelectedTarget.getValue();
-            if (selectedTarget != null && selectedTarget == aircraft) {
-                mSelectedTarget.setValue(selectedTarget);
-            }
+                    ognMessage.timestamp, ognMessage.heading, ognMessage.groundSpeed,
+                    (float) ognMessage.climbRate, ognMessage.turnRate);
+            updateSelectedTarget(aircraft);
         } else if (message instanceof ReceiverLocationMessage) {
             final ReceiverLocationMessage locationMessage = (ReceiverLocationMessage) message;
             mWorld.addReceiver(message.callSign, locationMessage.latitude,
@@ -507,10 +656,7 @@ public final class HomeViewModel extends AndroidViewModel implements SensorEvent
             receiver.setTotalRam((float) statusMessage.totalRam);
             receiver.setCpuTemperature((float) statusMessage.cpuTemperature);
             receiver.setCpuLoad(statusMessage.cpuLoad);
-            final Target selectedTarget = mSelectedTarget.getValue();
-            if (selectedTarget != null && selectedTarget == receiver) {
-                mSelectedTarget.setValue(selectedTarget);
-            }
+            updateSelectedTarget(receiver);
         }
     }
 
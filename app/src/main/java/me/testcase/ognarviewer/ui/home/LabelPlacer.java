@@ -0,0 +1,298 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Places the target labels on the screen so that they don't overlap.
+ *
+ * <p>A label has a name line (optional) and a distance line below it. The labels are placed in
+ * the order of their priority: below the marker if there is room, otherwise above, right or left
+ * of it. If none of these fit, the label is collapsed to its first line and tried again, then
+ * it is hidden. The placed labels are kept in a uniform grid, so a candidate position is only
+ * checked against the labels in the cells it covers.</p>
+ *
+ * <p>All coordinates are in dp with the origin in the middle of the screen, like the
+ * orthographic projection of the renderer. The arrays are reused between the frames.</p>
+ */
+final class LabelPlacer {
+    static final float LINE_HEIGHT = 20;
+
+    /**
+     * The distance between the marker and the nearest line of a label.
+     */
+    static final float MARKER_OFFSET = 38;
+
+    /**
+     * The distance between the marker and the nearest edge of a label on the left or right.
+     */
+    static final float MARKER_SIDE_OFFSET = 25;
+
+    private static final float CELL_SIZE = 64;
+
+    private static final int ANCHOR_BELOW = 0;
+    private static final int ANCHOR_ABOVE = 1;
+    private static final int ANCHOR_RIGHT = 2;
+    private static final int ANCHOR_LEFT = 3;
+    private static final int ANCHOR_COUNT = 4;
+
+    // The candidates in the order they were added.
+    private int mCount;
+    private float[] mMarkerX = new float[64];
+    private float[] mMarkerY = new float[64];
+    private float[] mZ = new float[64];
+    private int[] mColors = new int[64];
+    private String[] mNames = new String[64];
+    private StringBuilder[] mDistances = new StringBuilder[64];
+    private float[] mNameWidths = new float[64];
+    private float[] mDistanceWidths = new float[64];
+
+    // Sort keys: the priority in the upper half and the candidate in the lower one.
+    private long[] mOrder = new long[64];
+
+    // The results: the center of the first line and the number of lines, 0 if hidden.
+    private float[] mX = new float[64];
+    private float[] mY = new float[64];
+    private int[] mLines = new int[64];
+
+    // The placed rectangles (left, bottom, right, top) and the grid of them. Each cell is a linked
+    // list of entries, an entry refers to a rectangle.
+    private float[] mRectangles = new float[64 * 4];
+    private int mRectangleCount;
+    private int[] mEntryRectangles = new int[256];
+    private int[] mEntryNext = new int[256];
+    private int mEntryCount;
+    private int[] mCells = new int[0];
+    private int mColumns;
+    private int mRows;
+    private float mLeft;
+    private float mBottom;
+
+    /**
+     * Removes all labels and sets the screen size for the next frame.
+     */
+    void reset(float width, float height) {
+        mCount = 0;
+        mRectangleCount = 0;
+        mEntryCount = 0;
+        mLeft = -width * 0.5f;
+        mBottom = -height * 0.5f;
+        mColumns = (int) Math.ceil(width / CELL_SIZE);
+        mRows = (int) Math.ceil(height / CELL_SIZE);
+        if (mCells.length < mColumns * mRows) {
+            mCells = new int[mColumns * mRows];
+        }
+        Arrays.fill(mCells, -1);
+    }
+
+    /**
+     * Adds the label of a marker.
+     *
+     * @param distance copied, so it may be reused by the caller.
+     * @param priority the lower the more important, must not be negative.
+     */
+    void add(float markerX, float markerY, float z, @Nullable String name, float nameWidth,
+             @NonNull CharSequence distance, float distanceWidth, int color, float priority) {
+        if (mCount == mMarkerX.length) {
+            grow();
+        }
+        final int i = mCount++;
+        mMarkerX[i] = markerX;
+        mMarkerY[i] = markerY;
+        mZ[i] = z;
+        mColors[i] = color;
+        mNames[i] = name;
+        mNameWidths[i] = nameWidth;
+        if (mDistances[i] == null) {
+            mDistances[i] = new StringBuilder();
+        }
+        mDistances[i].setLength(0);
+        mDistances[i].append(distance);
+        mDistanceWidths[i] = distanceWidth;
+        // Non-negative floats have the same order as their bits.
+        mOrder[i] = ((long) Float.floatToIntBits(priority) << 32) | i;
+    }
+
+    /**
+     * Places all added labels, see the getters for the results.
+     */
+    void place() {
+        Arrays.sort(mOrder, 0, mCount);
+        for (int k = 0; k < mCount; ++k) {
+            final int i = (int) mOrder[k];
+            final int lines = mNames[i] == null ? 1 : 2;
+            mLines[i] = 0;
+            // The full label first, then only its first line.
+            for (int shown = lines; shown > 0 && mLines[i] == 0; --shown) {
+                final float width = shown == 1 && mNames[i] != null ? mNameWidths[i]
+                        : Math.max(mNameWidths[i], mDistanceWidths[i]);
+                for (int anchor = 0; anchor < ANCHOR_COUNT; ++anchor) {
+                    if (tryPlace(i, anchor, width, shown)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of lines to draw: 0 if the label is hidden, 1 if only the first line is
+     * shown.
+     */
+    int getLines(int i) {
+        return mLines[i];
+    }
+
+    /**
+     * Returns the x coordinate of the center of the first line.
+     */
+    float getX(int i) {
+        return mX[i];
+    }
+
+    /**
+     * Returns the y coordinate of the center of the first line.
+     */
+    float getY(int i) {
+        return mY[i];
+    }
+
+    float getZ(int i) {
+        return mZ[i];
+    }
+
+    int getColor(int i) {
+        return mColors[i];
+    }
+
+    @Nullable
+    String getName(int i) {
+        return mNames[i];
+    }
+
+    @NonNull
+    CharSequence getDistance(int i) {
+        return mDistances[i];
+    }
+
+    private boolean tryPlace(int i, int anchor, float width, int lines) {
+        final float height = lines * LINE_HEIGHT;
+        final float x;
+        final float top;
+        switch (anchor) {
+            case ANCHOR_BELOW:
+                x = mMarkerX[i];
+                top = mMarkerY[i] - MARKER_OFFSET + LINE_HEIGHT * 0.5f;
+                break;
+            case ANCHOR_ABOVE:
+                x = mMarkerX[i];
+                top = mMarkerY[i] + MARKER_OFFSET - LINE_HEIGHT * 0.5f + height;
+                break;
+            case ANCHOR_RIGHT:
+                x = mMarkerX[i] + MARKER_SIDE_OFFSET + width * 0.5f;
+                top = mMarkerY[i] + height * 0.5f;
+                break;
+            default:
+                x = mMarkerX[i] - MARKER_SIDE_OFFSET - width * 0.5f;
+                top = mMarkerY[i] + height * 0.5f;
+                break;
+        }
+        final float left = x - width * 0.5f;
+        final float right = x + width * 0.5f;
+        final float bottom = top - height;
+
+        final int firstColumn = column(left);
+        final int lastColumn = column(right);
+        final int firstRow = row(bottom);
+        final int lastRow = row(top);
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                for (int entry = mCells[row * mColumns + column]; entry != -1;
+                        entry = mEntryNext[entry]) {
+                    final int r = mEntryRectangles[entry] * 4;
+                    if (left < mRectangles[r + 2] && mRectangles[r] < right
+                            && bottom < mRectangles[r + 3] && mRectangles[r + 1] < top) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // Free, take it.
+        if ((mRectangleCount + 1) * 4 > mRectangles.length) {
+            mRectangles = Arrays.copyOf(mRectangles, mRectangles.length * 2);
+        }
+        final int rectangle = mRectangleCount++;
+        mRectangles[rectangle * 4] = left;
+        mRectangles[rectangle * 4 + 1] = bottom;
+        mRectangles[rectangle * 4 + 2] = right;
+        mRectangles[rectangle * 4 + 3] = top;
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                if (mEntryCount == mEntryRectangles.length) {
+                    mEntryRectangles = Arrays.copyOf(mEntryRectangles, mEntryCount * 2);
+                    mEntryNext = Arrays.copyOf(mEntryNext, mEntryCount * 2);
+                }
+                final int cell = row * mColumns + column;
+                mEntryRectangles[mEntryCount] = rectangle;
+                mEntryNext[mEntryCount] = mCells[cell];
+                mCells[cell] = mEntryCount++;
+            }
+        }
+        mX[i] = x;
+        mY[i] = top - LINE_HEIGHT * 0.5f;
+        mLines[i] = lines;
+        return true;
+    }
+
+    /**
+     * Returns the grid column of the x coordinate, the labels partially off the screen are kept in
+     * the border cells.
+     */
+    private int column(float x) {
+        return Math.max(0, Math.min((int) ((x - mLeft) / CELL_SIZE), mColumns - 1));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min((int) ((y - mBottom) / CELL_SIZE), mRows - 1));
+    }
+
+    private void grow() {
+        final int length = mMarkerX.length * 2;
+        mMarkerX = Arrays.copyOf(mMarkerX, length);
+        mMarkerY = Arrays.copyOf(mMarkerY, length);
+        mZ = Arrays.copyOf(mZ, length);
+        mColors = Arrays.copyOf(mColors, length);
+        mNames = Arrays.copyOf(mNames, length);
+        mDistances = Arrays.copyOf(mDistances, length);
+        mNameWidths = Arrays.copyOf(mNameWidths, length);
+        mDistanceWidths = Arrays.copyOf(mDistanceWidths, length);
+        mOrder = Arrays.copyOf(mOrder, length);
+        mX = Arrays.copyOf(mX, length);
+        mY = Arrays.copyOf(mY, length);
+        mLines = Arrays.copyOf(mLines, length);
+    }
+}
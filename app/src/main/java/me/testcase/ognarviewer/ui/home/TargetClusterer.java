@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import java.util.Arrays;
+
+import me.testcase.ognarviewer.world.Target;
+
+/**
+ * Merges the distant targets which are close to each other on the screen.
+ *
+ * <p>The onscreen targets are grouped by the cell of a uniform grid they fall into, each group
+ * is drawn as a single marker with the number of targets. The offscreen targets are grouped by
+ * the direction of their arrow, only the nearest one of each group is drawn. So the number of
+ * markers is bounded by the screen size, not by the number of targets.</p>
+ *
+ * <p>All coordinates are in dp with the origin in the middle of the screen. The arrays are
+ * reused between the frames.</p>
+ */
+final class TargetClusterer {
+    /**
+     * About the size of a marker.
+     */
+    static final float CELL_SIZE = 48;
+
+    /**
+     * The number of arrow directions, 5 degrees each.
+     */
+    static final int DIRECTIONS = 72;
+
+    // The onscreen targets in the order they were added. Each one is in the linked list of its
+    // cell.
+    private int mCount;
+    private int[] mIndices = new int[64];
+    private Target[] mTargets = new Target[64];
+    private float[] mX = new float[64];
+    private float[] mY = new float[64];
+    private float[] mDistances = new float[64];
+    private int[] mColors = new int[64];
+    private int[] mNext = new int[64];
+
+    private int[] mCells = new int[0];
+    private int mColumns;
+    private int mRows;
+    private float mLeft;
+    private float mBottom;
+
+    // The clusters, i.e. the non-empty cells in the order they were filled.
+    private int mClusterCount;
+    private int[] mClusterCells = new int[64];
+    private int[] mClusterSizes = new int[64];
+    private int[] mClusterNearest = new int[64];
+    private float[] mClusterX = new float[64];
+    private float[] mClusterY = new float[64];
+
+    // The nearest offscreen target of each direction, NaN if there is none.
+    private final float[] mArrowDistances = new float[DIRECTIONS];
+    private final float[] mArrowX = new float[DIRECTIONS];
+    private final float[] mArrowY = new float[DIRECTIONS];
+    private final float[] mArrowAngles = new float[DIRECTIONS];
+    private final int[] mArrowColors = new int[DIRECTIONS];
+
+    /**
+     * Removes all targets and sets the screen size for the next frame.
+     */
+    void reset(float width, float height) {
+        // Don't keep the targets reachable until the next frame.
+        Arrays.fill(mTargets, 0, mCount, null);
+        mCount = 0;
+        mClusterCount = 0;
+        mLeft = -width * 0.5f;
+        mBottom = -height * 0.5f;
+        mColumns = Math.max(1, (int) Math.ceil(width / CELL_SIZE));
+        mRows = Math.max(1, (int) Math.ceil(height / CELL_SIZE));
+        if (mCells.length < mColumns * mRows) {
+            mCells = new int[mColumns * mRows];
+        }
+        Arrays.fill(mCells, -1);
+        Arrays.fill(mArrowDistances, Float.NaN);
+    }
+
+    /**
+     * Adds an onscreen target.
+     *
+     * @param index the index of the target in the caller's arrays, returned by getIndex().
+     */
+    void add(int index, Target target, float x, float y, float distance, int color) {
+        if (mCount == mIndices.length) {
+            grow();
+        }
+        final int i = mCount++;
+        mIndices[i] = index;
+        mTargets[i] = target;
+        mX[i] = x;
+        mY[i] = y;
+        mDistances[i] = distance;
+        mColors[i] = color;
+
+        final int column = Math.max(0, Math.min((int) ((x - mLeft) / CELL_SIZE), mColumns - 1));
+        final int row = Math.max(0, Math.min((int) ((y - mBottom) / CELL_SIZE), mRows - 1));
+        final int cell = row * mColumns + column;
+        if (mCells[cell] == -1) {
+            if (mClusterCount == mClusterCells.length) {
+                growClusters();
+            }
+            mClusterCells[mClusterCount++] = cell;
+        }
+        mNext[i] = mCells[cell];
+        mCells[cell] = i;
+    }
+
+    /**
+     * Adds an offscreen target with its arrow at the given point.
+     *
+     * @param angle the direction of the arrow in degrees, from -180 to 180.
+     */
+    void addOffscreen(float x, float y, float angle, float distance, int color) {
+        final int direction = Math.floorMod((int) Math.floor(angle * DIRECTIONS / 360),
+                DIRECTIONS);
+        if (mArrowDistances[direction] <= distance) {
+            return; // There is a nearer one already.
+        }
+        mArrowDistances[direction] = distance;
+        mArrowX[direction] = x;
+        mArrowY[direction] = y;
+        mArrowAngles[direction] = angle;
+        mArrowColors[direction] = color;
+    }
+
+    /**
+     * Computes the clusters of the targets added since the last reset().
+     */
+    void cluster() {
+        for (int c = 0; c < mClusterCount; ++c) {
+            int size = 0;
+            int nearest = -1;
+            float sumX = 0;
+            float sumY = 0;
+            for (int i = mCells[mClusterCells[c]]; i != -1; i = mNext[i]) {
+                ++size;
+                sumX += mX[i];
+                sumY += mY[i];
+                if (nearest == -1 || mDistances[i] < mDistances[nearest]) {
+                    nearest = i;
+                }
+            }
+            mClusterSizes[c] = size;
+            mClusterNearest[c] = nearest;
+            mClusterX[c] = sumX / size;
+            mClusterY[c] = sumY / size;
+        }
+    }
+
+    int getClusterCount() {
+        return mClusterCount;
+    }
+
+    int getClusterSize(int cluster) {
+        return mClusterSizes[cluster];
+    }
+
+    /**
+     * Returns the x coordinate of the centroid of the cluster.
+     */
+    float getClusterX(int cluster) {
+        return mClusterX[cluster];
+    }
+
+    float getClusterY(int cluster) {
+        return mClusterY[cluster];
+    }
+
+    /**
+     * Returns the nearest target of the cluster, it gives the cluster its distance and colour.
+     */
+    int getNearest(int cluster) {
+        return mClusterNearest[cluster];
+    }
+
+    /**
+     * Returns the first target of the cluster, see getNext().
+     */
+    int getFirst(int cluster) {
+        return mCells[mClusterCells[cluster]];
+    }
+
+    /**
+     * Returns the next target of the same cluster or -1 if there are no more.
+     */
+    int getNext(int target) {
+        return mNext[target];
+    }
+
+    int getIndex(int target) {
+        return mIndices[target];
+    }
+
+    Target getTarget(int target) {
+        return mTargets[target];
+    }
+
+    float getX(int target) {
+        return mX[target];
+    }
+
+    float getY(int target) {
+        return mY[target];
+    }
+
+    float getDistance(int target) {
+        return mDistances[target];
+    }
+
+    int getColor(int target) {
+        return mColors[target];
+    }
+
+    /**
+     * Returns true if there is an arrow in the given direction, see DIRECTIONS.
+     */
+    boolean hasArrow(int direction) {
+        return !Float.isNaN(mArrowDistances[direction]);
+    }
+
+    float getArrowX(int direction) {
+        return mArrowX[direction];
+    }
+
+    float getArrowY(int direction) {
+        return mArrowY[direction];
+    }
+
+    float getArrowAngle(int direction) {
+        return mArrowAngles[direction];
+    }
+
+    int getArrowColor(int direction) {
+        return mArrowColors[direction];
+    }
+
+    private void grow() {
+        final int length = mIndices.length * 2;
+        mIndices = Arrays.copyOf(mIndices, length);
+        mTargets = Arrays.copyOf(mTargets, length);
+        mX = Arrays.copyOf(mX, length);
+        mY = Arrays.copyOf(mY, length);
+        mDistances = Arrays.copyOf(mDistances, length);
+        mColors = Arrays.copyOf(mColors, length);
+        mNext = Arrays.copyOf(mNext, length);
+    }
+
+    private void growClusters() {
+        final int length = mClusterCells.length * 2;
+        mClusterCells = Arrays.copyOf(mClusterCells, length);
+        mClusterSizes = Arrays.copyOf(mClusterSizes, length);
+        mClusterNearest = Arrays.copyOf(mClusterNearest, length);
+        mClusterX = Arrays.copyOf(mClusterX, length);
+        mClusterY = Arrays.copyOf(mClusterY, length);
+    }
+}
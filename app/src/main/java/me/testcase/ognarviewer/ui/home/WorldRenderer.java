@@ -20,7 +20,6 @@ package me.testcase.ognarviewer.ui.home;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Color;
-import android.graphics.PointF;
 import android.graphics.SurfaceTexture;
 import android.hardware.SensorManager;
 import android.opengl.GLES11Ext;
@@ -28,23 +27,30 @@ import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLUtils;
 import android.opengl.Matrix;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
-import android.view.SoundEffectConstants;
 import android.view.Surface;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.content.res.AppCompatResources;
 import androidx.preference.PreferenceManager;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -55,11 +61,19 @@ import me.testcase.ognarviewer.CalibratedClock;
 import me.testcase.ognarviewer.R;
 import me.testcase.ognarviewer.directory.DirectoryEntry;
 import me.testcase.ognarviewer.opengl.DrawableTexture;
+import me.testcase.ognarviewer.opengl.GlState;
+import me.testcase.ognarviewer.opengl.GlyphAtlas;
 import me.testcase.ognarviewer.opengl.Shader;
-import me.testcase.ognarviewer.opengl.TextTexture;
+import me.testcase.ognarviewer.opengl.SpriteBatch;
+import me.testcase.ognarviewer.opengl.TextBatch;
+import me.testcase.ognarviewer.terrain.OcclusionCache;
+import me.testcase.ognarviewer.terrain.Terrain;
+import me.testcase.ognarviewer.utils.LabelFormatter;
 import me.testcase.ognarviewer.utils.UnitsConverter;
 import me.testcase.ognarviewer.world.Aircraft;
+import me.testcase.ognarviewer.world.CollisionAlert;
 import me.testcase.ognarviewer.world.Receiver;
+import me.testcase.ognarviewer.world.Sample;
 import me.testcase.ognarviewer.world.Target;
 import me.testcase.ognarviewer.world.World;
 
@@ -75,8 +89,6 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private static final float Z_NEAR = 10f;
     private static final float Z_FAR = 51000f;
 
-    private static final int COORDS_PER_VERTEX = 3;
-
     // Constants to manage texture units.
     private static final int TEXTURE_UNIT_TARGET = 0;
     private static final int TEXTURE_UNIT_ONSCREEN_TARGET_SELECTED = 1;
@@ -84,23 +96,26 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private static final int TEXTURE_UNIT_CAMERA = 10;
     private static final int TEXTURE_UNIT_TEXT = 15;
 
-    // TODO: join the two arrays below into one.
-    private static final float[] QUAD_VERTICES = {
-            -0.5f, 0.5f, 0,
-            -0.5f, -0.5f, 0,
-            0.5f, 0.5f, 0,
-            0.5f, -0.5f, 0,
-            0.5f, 0.5f, 0,
-            -0.5f, -0.5f, 0,
+    // The texture indices of the markers in the sprite batch and their texture units.
+    private static final int MARKER_ONSCREEN = 0;
+    private static final int MARKER_ONSCREEN_SELECTED = 1;
+    private static final int MARKER_OFFSCREEN = 2;
+    private static final int[] MARKER_TEXTURE_UNITS = {
+            TEXTURE_UNIT_TARGET,
+            TEXTURE_UNIT_ONSCREEN_TARGET_SELECTED,
+            TEXTURE_UNIT_OFFSCREEN_TARGET,
     };
-    private static final float[] QUAD_TEX_COORDINATES = {
-            0.0f, 1.0f,
-            0.0f, 0.0f,
-            1.0f, 1.0f,
-            1.0f, 0.0f,
-            1.0f, 1.0f,
-            0.0f, 0.0f,
+
+    // The position (3) and the texture coordinates (2) of each vertex.
+    private static final float[] QUAD_VERTICES = {
+            -0.5f, 0.5f, 0, 0.0f, 1.0f,
+            -0.5f, -0.5f, 0, 0.0f, 0.0f,
+            0.5f, 0.5f, 0, 1.0f, 1.0f,
+            0.5f, -0.5f, 0, 1.0f, 0.0f,
+            0.5f, 0.5f, 0, 1.0f, 1.0f,
+            -0.5f, -0.5f, 0, 0.0f, 0.0f,
     };
+    private static final int QUAD_VERTEX_SIZE = 5;
 
     /**
      * A vector pointing forward (-Z direction).
@@ -141,6 +156,40 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
             + "  }\n"
             + "}\n";
 
+    // Trails are drawn in 3D, so they have their own program without textures.
+    private static final String TRAIL_VERTEX_SHADER_CODE = "uniform mat4 uMatrix;\n"
+            + "attribute vec3 aPosition;\n"
+            + "attribute vec4 aColor;\n"
+            + "varying vec4 vColor;\n"
+            + "void main() {\n"
+            + "  gl_Position = uMatrix * vec4(aPosition, 1.0);\n"
+            + "  vColor = aColor;\n"
+            + "}";
+
+    private static final String TRAIL_FRAGMENT_SHADER_CODE = "precision mediump float;\n"
+            + "varying vec4 vColor;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = vColor;\n"
+            + "}\n";
+
+    private static final float TRAIL_WIDTH = 2; // In dp.
+
+    /**
+     * The targets further than this (in metres) are merged if they are close on the screen.
+     */
+    private static final float CLUSTER_DISTANCE = 10000;
+
+    /**
+     * The cosine of the angle around the tapped cluster in which the targets are not merged.
+     */
+    private static final float EXPANDED_CLUSTER_COS = 0.985f; // About 10 degrees.
+
+    /**
+     * Rasterises the glyph atlases of all renderers. Shared, so that a new view doesn't start
+     * another thread. A single thread, so a newer atlas is never replaced by an older one.
+     */
+    private static final Executor ATLAS_EXECUTOR = Executors.newSingleThreadExecutor();
+
     private static final float[] COMPASS_POINTS = new float[]{
             0, Z_FAR, 0, 1, // North.
             0, -Z_FAR, 0, 1, // South.
@@ -155,8 +204,23 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     };
     private final String[] mCompassPointNames;
 
-    private FloatBuffer mQuadVertexBuffer;
-    private FloatBuffer mQuadTexCoordinateBuffer;
+    /**
+     * The OpenGL state of the surface, all state changes of onDrawFrame() go through it.
+     */
+    private GlState mGlState;
+
+    /**
+     * The buffer object with QUAD_VERTICES, uploaded once per surface.
+     */
+    private int mQuadBufferHandle;
+
+    /**
+     * The trail vertices of the current frame, streamed to OpenGL in a single draw call.
+     */
+    private final float[] mTrailVertices =
+            new float[World.MAX_TRAIL_VERTICES * World.TRAIL_VERTEX_SIZE];
+    private FloatBuffer mTrailVertexBuffer;
+    private int mTrailBufferHandle;
 
     /**
      * A sensors based view matrix, used on the CPU.
@@ -200,11 +264,17 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private final float[] mTemp4x4Matrix = new float[16];
 
     /**
-     * Target coordinates.
+     * The product of the perspective projection, manual calibration and view matrices.
      *
-     * <p>Declared as a member to avoid memory allocation on each frame.</p>
+     * <p>Updated once per frame and used both by OpenGL for the trails and on the CPU to project
+     * the targets.</p>
+     */
+    private final float[] mViewProjectionMatrix = new float[16];
+
+    /**
+     * The forward direction in the world coordinates, updated once per frame.
      */
-    private final float[] mTargetCoordinates = new float[4];
+    private final float[] mForwardDirection = new float[4];
 
     /**
      * A weak reference to the view.
@@ -220,17 +290,28 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private final boolean mShowAircraft;
     private final boolean mShowAircraftWithoutMotion;
     private final boolean mShowReceivers;
+    private final boolean mShowTrails;
+    private final boolean mHideOccludedTargets;
     private final boolean mShowCompass;
     private final boolean mShowFpsCounter;
+
+    /**
+     * If false, the aircraft of the collision alert is drawn like any other.
+     */
+    private final boolean mCollisionAlerts;
     private final int mMaxDistance;
-    private final String mDistanceUnits;
+
+    /**
+     * Formats the distances, below 1 km with mShortDistanceFormatter if it is not null.
+     */
+    private final LabelFormatter mDistanceFormatter;
+    private final LabelFormatter mShortDistanceFormatter;
+    private final LabelFormatter mClusterCountFormatter;
     private final boolean mCompassDeclination;
     private final boolean mDemoMode;
 
     private int mDisplayRotation;
 
-    private final Handler mHandler = new Handler(Looper.getMainLooper());
-
     private int mWidthPx;
     private float mWidthDp;
     private int mHeightPx;
@@ -249,19 +330,97 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private int mTexCoordinateAttributeHandle;
     private int mProjectionMatrixUniformHandle;
     private int mModelMatrixUniformHandle;
-    private int mTextureUniformHandle;
     private int mSurfaceTextureUniformHandle;
     private int mSurfaceTextureMatrixUniformHandle;
-    private int mTintColorUniformHandle;
-    private TextTexture mFpsTextTexture;
+    private Shader mTrailShaderProgram;
+    private int mTrailPositionAttributeHandle;
+    private int mTrailColorAttributeHandle;
+    private int mTrailMatrixUniformHandle;
+    private int mTrailAttributeMask;
+    private int mAttributeMask;
+
+    // The last uploaded uniform values, see GlState.uniformMatrix4fv().
+    private final float[] mTrailMatrix = new float[16];
+    private final float[] mSurfaceTextureMatrix = new float[16];
+    private final float[] mModelMatrix = new float[16];
+    private String mFpsText = "";
+    private int mGlCalls;
+    private int mSkippedGlCalls;
     private SurfaceTexture mSurfaceTexture;
     private int mUseSurfaceTextureUniformHandle;
     private DrawableTexture mOnscreenTargetTexture;
     private DrawableTexture mSelectedOnscreenTargetTexture;
     private DrawableTexture mOffscreenTargetTexture;
 
+    /**
+     * The markers of the current frame, drawn at once after all targets.
+     */
+    private SpriteBatch mMarkerBatch;
+
+    /**
+     * The text of the current frame, laid out from mGlyphAtlas.
+     */
+    private TextBatch mTextBatch;
+
+    /**
+     * The uploaded atlas, null until the first one is rasterised.
+     */
+    private GlyphAtlas mGlyphAtlas;
+
+    /**
+     * The atlas rasterised by ATLAS_EXECUTOR and not yet uploaded.
+     */
+    private final AtomicReference<GlyphAtlas> mPendingGlyphAtlas = new AtomicReference<>();
+
+    /**
+     * All characters beyond ASCII the labels have needed so far, see addAtlasCharacters().
+     */
+    private final StringBuilder mAtlasCharacters = new StringBuilder();
+    private boolean mAtlasCharactersChanged;
+
+    /**
+     * The labels of the current frame, only those it places are added to mTextBatch.
+     */
+    private final LabelPlacer mLabelPlacer = new LabelPlacer();
+
+    /**
+     * The distant targets of the current frame, drawn after all others.
+     */
+    private final TargetClusterer mClusterer = new TargetClusterer();
+
+    /**
+     * The direction of the last tapped cluster, valid if mClusterExpanded is true.
+     */
+    private final float[] mExpandedClusterDirection = new float[3];
+    private boolean mClusterExpanded;
+    private final float[] mClusterDirection = new float[3];
+
+    /**
+     * The display names by target id, see getDisplayName().
+     */
+    private Target[] mDisplayNameTargets = new Target[0];
+    private String[] mDisplayNames = new String[0];
+    private int mDisplayNameModificationCount;
+
     private World mWorld;
-    private Target[] mTargets = new Target[1];
+
+    /**
+     * Null if the occluded targets are shown as usual.
+     */
+    private final OcclusionCache mOcclusionCache;
+
+    /**
+     * Null unless the frame profiler is enabled on the debug screen.
+     */
+    private final FrameProfiler mFrameProfiler;
+    private String[] mFrameProfileLines = new String[0];
+    private long mFrameProfileUpdateTime;
+
+    /**
+     * The coordinates of the targets in range and their ids, see World.computeCoordinates().
+     */
+    private float[] mPackedCoordinates = new float[0];
+    private int[] mTargetIds = new int[0];
 
     private float mVerticalRotation;
     private float mHorizontalRotation;
@@ -272,12 +431,9 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     private volatile String mSelectedTarget;
 
     /**
-     * When the user taps the view, this member becomes non-null.
-     *
-     * <p>On the next frame, the actual hit test is done. The result is submitted back to the view
-     * and this member becomes null again.</p>
+     * The markers of the last frame, the taps are resolved by the view.
      */
-    private PointF mHitTestPoint;
+    private final HitTestIndex mHitTestIndex = new HitTestIndex();
 
     public WorldRenderer(WorldView view) {
         mWeakView = new WeakReference<>(view);
@@ -287,18 +443,58 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
 
         mCompassPointNames = view.getResources().getStringArray(R.array.compass_signs);
 
+        // Besides ASCII, the atlas needs all characters the translations can put into the labels.
+        for (String name : mCompassPointNames) {
+            addAtlasCharacters(name);
+        }
+        addAtlasCharacters(mContext.getString(R.string.distance_m));
+        addAtlasCharacters(mContext.getString(R.string.distance_km));
+        addAtlasCharacters(mContext.getString(R.string.distance_nm));
+        addAtlasCharacters(mContext.getString(R.string.distance_mi));
+        addAtlasCharacters(mContext.getString(R.string.cluster_count));
+
         // Read the settings once because we're going to access them at >60 FPS.
         final SharedPreferences preferences =
                 PreferenceManager.getDefaultSharedPreferences(view.getContext());
         mShowAircraft = preferences.getBoolean("show_aircraft", true);
         mShowAircraftWithoutMotion = preferences.getBoolean("show_aircraft_without_motion", true);
         mShowReceivers = preferences.getBoolean("show_receivers", true);
+        mShowTrails = preferences.getBoolean("show_trails", true);
         mShowCompass = preferences.getBoolean("show_compass", true);
         mShowFpsCounter = preferences.getBoolean("show_fps", false);
+        mCollisionAlerts = preferences.getBoolean("collision_alerts", false);
         mMaxDistance = preferences.getInt("max_distance", DEFAULT_DISTANCE) * 1000;
-        mDistanceUnits = preferences.getString("units_distance", "km");
+        final String distanceUnits = preferences.getString("units_distance", "km");
+        final DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        if (distanceUnits.equals("nm")) {
+            mDistanceFormatter = new LabelFormatter(mContext.getString(R.string.distance_nm),
+                    UnitsConverter.METRES_PER_NAUTICAL_MILE, symbols);
+            mShortDistanceFormatter = null;
+        } else if (distanceUnits.equals("mi")) {
+            mDistanceFormatter = new LabelFormatter(mContext.getString(R.string.distance_mi),
+                    UnitsConverter.METRES_PER_MILE, symbols);
+            mShortDistanceFormatter = null;
+        } else {
+            mDistanceFormatter = new LabelFormatter(mContext.getString(R.string.distance_km),
+                    1000, symbols);
+            mShortDistanceFormatter = new LabelFormatter(mContext.getString(R.string.distance_m),
+                    1, symbols);
+        }
+        mClusterCountFormatter = new LabelFormatter(mContext.getString(R.string.cluster_count), 1,
+                symbols);
         mCompassDeclination = preferences.getBoolean("compass_declination", true);
         mDemoMode = preferences.getBoolean("demo_mode", false);
+        mFrameProfiler = preferences.getBoolean("frame_profiler", false) ? new FrameProfiler()
+                : null;
+        final String occludedTargets = preferences.getString("occluded_targets", "dim");
+        mHideOccludedTargets = occludedTargets.equals("hide");
+        if (occludedTargets.equals("show")) {
+            mOcclusionCache = null;
+        } else {
+            // The tiles are too large to ship, the user has to copy them there.
+            mOcclusionCache = new OcclusionCache(new Terrain(new File(
+                    mContext.getExternalFilesDir(null), "terrain")));
+        }
 
         // Initialize all matrices just for sure.
         Matrix.setIdentityM(mViewMatrix, 0);
@@ -360,9 +556,9 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
         Matrix.setIdentityM(mManualCalibrationMatrix, 0);
     }
 
-    public void setHitTestPoint(float x, float y) {
-        mHitTestPoint = new PointF(x / mDisplayMetrics.density - mWidthDp * 0.5f,
-                -y / mDisplayMetrics.density + mHeightDp * 0.5f);
+    @NonNull
+    HitTestIndex getHitTestIndex() {
+        return mHitTestIndex;
     }
 
     public void setCurrentTarget(String callSign) {
@@ -373,22 +569,37 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         Log.v(TAG, "onSurfaceCreated()");
 
-        // All old textures are invalid now.
-        TextTexture.clearCache();
+        mGlState = new GlState();
 
-        mQuadVertexBuffer = ByteBuffer
+        final int[] handles = new int[2];
+        GLES20.glGenBuffers(2, handles, 0);
+        mQuadBufferHandle = handles[0];
+        mTrailBufferHandle = handles[1];
+
+        final FloatBuffer quadVertexBuffer = ByteBuffer
                 .allocateDirect(QUAD_VERTICES.length * 4)
                 .order(ByteOrder.nativeOrder())
                 .asFloatBuffer();
-        mQuadVertexBuffer.put(QUAD_VERTICES);
-        mQuadVertexBuffer.position(0);
-
-        mQuadTexCoordinateBuffer = ByteBuffer
-                .allocateDirect(QUAD_TEX_COORDINATES.length * 4)
+        quadVertexBuffer.put(QUAD_VERTICES);
+        quadVertexBuffer.position(0);
+        mGlState.bindArrayBuffer(mQuadBufferHandle);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, QUAD_VERTICES.length * 4, quadVertexBuffer,
+                GLES20.GL_STATIC_DRAW);
+
+        mTrailVertexBuffer = ByteBuffer
+                .allocateDirect(mTrailVertices.length * 4)
                 .order(ByteOrder.nativeOrder())
                 .asFloatBuffer();
-        mQuadTexCoordinateBuffer.put(QUAD_TEX_COORDINATES);
-        mQuadTexCoordinateBuffer.position(0);
+
+        mTrailShaderProgram = new Shader(TRAIL_VERTEX_SHADER_CODE, TRAIL_FRAGMENT_SHADER_CODE);
+        mTrailPositionAttributeHandle = mTrailShaderProgram.getAttributeLocation("aPosition");
+        mTrailColorAttributeHandle = mTrailShaderProgram.getAttributeLocation("aColor");
+        mTrailMatrixUniformHandle = mTrailShaderProgram.getUniformLocation("uMatrix");
+        mTrailAttributeMask = GlState.mask(mTrailPositionAttributeHandle,
+                mTrailColorAttributeHandle);
+        Arrays.fill(mTrailMatrix, Float.NaN);
+
+        mMarkerBatch = new SpriteBatch(mGlState);
 
         mShaderProgram = new Shader(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
         // Cache attribute and uniform handles.
@@ -396,36 +607,46 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
         mTexCoordinateAttributeHandle = mShaderProgram.getAttributeLocation("aTexCoordinate");
         mProjectionMatrixUniformHandle = mShaderProgram.getUniformLocation("uProjectionMatrix");
         mModelMatrixUniformHandle = mShaderProgram.getUniformLocation("uModelMatrix");
-        mTextureUniformHandle = mShaderProgram.getUniformLocation("uTexture");
         mSurfaceTextureUniformHandle = mShaderProgram.getUniformLocation("uSurfaceTexture");
         mSurfaceTextureMatrixUniformHandle = mShaderProgram.getUniformLocation(
                 "uSurfaceTextureMatrix");
         mUseSurfaceTextureUniformHandle = mShaderProgram.getUniformLocation("uUseSurfaceTexture");
-        mTintColorUniformHandle = mShaderProgram.getUniformLocation("uTintColor");
+        mAttributeMask = GlState.mask(mPositionAttributeHandle, mTexCoordinateAttributeHandle);
+        Arrays.fill(mSurfaceTextureMatrix, Float.NaN);
+        Arrays.fill(mModelMatrix, Float.NaN);
 
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         GLES20.glEnable(GL10.GL_BLEND);
         GLES20.glBlendFunc(GL10.GL_ONE, GL10.GL_ONE_MINUS_SRC_ALPHA);
+        // Only the trails are lines.
+        GLES20.glLineWidth(TRAIL_WIDTH * mDisplayMetrics.density);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + TEXTURE_UNIT_TARGET);
+        mGlState.activeTexture(TEXTURE_UNIT_TARGET);
         mOnscreenTargetTexture = new DrawableTexture(AppCompatResources.getDrawable(mContext,
                 R.drawable.target_onscreen));
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + TEXTURE_UNIT_ONSCREEN_TARGET_SELECTED);
+        mGlState.activeTexture(TEXTURE_UNIT_ONSCREEN_TARGET_SELECTED);
         mSelectedOnscreenTargetTexture =
                 new DrawableTexture(AppCompatResources.getDrawable(mContext,
                         R.drawable.target_onscreen_selected));
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + TEXTURE_UNIT_OFFSCREEN_TARGET);
+        mGlState.activeTexture(TEXTURE_UNIT_OFFSCREEN_TARGET);
         mOffscreenTargetTexture = new DrawableTexture(AppCompatResources.getDrawable(mContext,
                 R.drawable.target_offscreen));
 
+        // The text is not drawn until the atlas is rasterised in the background. The texture of
+        // the previous atlas went away with the old context.
+        mTextBatch = new TextBatch(mGlState);
+        mGlyphAtlas = null;
+        requestGlyphAtlas();
+
         createSurfaceTexture();
 
-        mShaderProgram.use();
-        GLES20.glEnableVertexAttribArray(mPositionAttributeHandle);
-        GLES20.glEnableVertexAttribArray(mTexCoordinateAttributeHandle);
+        // The main program only draws the camera preview, so its samplers never change.
+        // FIXME: is it more or less efficient to use a separate program for it?
+        mGlState.useProgram(mShaderProgram);
         GLES20.glUniform1i(mSurfaceTextureUniformHandle, TEXTURE_UNIT_CAMERA);
+        GLES20.glUniform1i(mUseSurfaceTextureUniformHandle, 1);
 
         final WorldView view = mWeakView.get();
         if (view != null) {
@@ -458,6 +679,7 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
                 mHeightDp * 0.5f,
                 -1,
                 Z_FAR);
+        mGlState.useProgram(mShaderProgram);
         GLES20.glUniformMatrix4fv(mProjectionMatrixUniformHandle, 1, false,
                 mOrthographicProjectionMatrix, 0);
     }
@@ -470,34 +692,128 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        mGlCalls = mGlState.getCalls();
+        mSkippedGlCalls = mGlState.getSkippedCalls();
+        mGlState.resetCounters();
+        Matrix.multiplyMM(mTemp4x4Matrix, 0, mManualCalibrationMatrix, 0, mViewMatrix, 0);
+        Matrix.multiplyMM(mViewProjectionMatrix, 0, mPerspectiveProjectionMatrix, 0,
+                mTemp4x4Matrix, 0);
+        Matrix.multiplyMV(mForwardDirection, 0, mViewMatrixInverted, 0, FORWARD_VECTOR, 0);
+        uploadGlyphAtlas();
+
+        if (mFrameProfiler != null) {
+            mFrameProfiler.beginFrame();
+        }
+        beginPhase(FrameProfiler.PHASE_CAMERA);
         drawCameraPreview();
+        endPhase(FrameProfiler.PHASE_CAMERA);
         if (mShowCompass) {
+            beginPhase(FrameProfiler.PHASE_COMPASS);
             drawCompass();
+            endPhase(FrameProfiler.PHASE_COMPASS);
+        }
+        if (mShowAircraft && mShowTrails) {
+            beginPhase(FrameProfiler.PHASE_TRAILS);
+            drawTrails();
+            endPhase(FrameProfiler.PHASE_TRAILS);
         }
+        beginPhase(FrameProfiler.PHASE_TARGETS);
+        mHitTestIndex.begin(mWidthDp, mHeightDp, mDisplayMetrics.density);
         drawTargets();
+        mHitTestIndex.publish();
+        endPhase(FrameProfiler.PHASE_TARGETS);
         if (mShowFpsCounter) {
             drawFpsCounter();
         }
+        if (mFrameProfiler != null) {
+            drawFrameProfile();
+            mFrameProfiler.endFrame();
+        }
         checkError();
     }
 
+    private void beginPhase(int phase) {
+        if (mFrameProfiler != null) {
+            mFrameProfiler.begin(phase);
+        }
+    }
+
+    private void endPhase(int phase) {
+        if (mFrameProfiler != null) {
+            mFrameProfiler.end(phase);
+        }
+    }
+
+    /**
+     * Writes the frame profile to frame_profile.csv in the external files directory.
+     *
+     * <p>Does nothing unless the frame profiler is enabled. Writes the file, so it must not be
+     * called on the UI thread.</p>
+     */
+    public void exportFrameProfile() {
+        if (mFrameProfiler == null) {
+            return;
+        }
+        final File file = new File(mContext.getExternalFilesDir(null), "frame_profile.csv");
+        try (Writer writer = new FileWriter(file)) {
+            mFrameProfiler.export(writer);
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
     /**
      * Draws compass points (N, S, E, W).
      */
     private void drawCompass() {
+        mTextBatch.clear();
         for (int i = 0; i < mCompassPointNames.length; ++i) {
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mViewMatrix, 0, COMPASS_POINTS, i * 4);
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mManualCalibrationMatrix, 0, mTemp4x4Matrix, 0);
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mPerspectiveProjectionMatrix, 0, mTemp4x4Matrix,
-                    0);
-            perspectiveDivision(mTemp4x4Matrix);
+            project(COMPASS_POINTS[i * 4], COMPASS_POINTS[i * 4 + 1], COMPASS_POINTS[i * 4 + 2]);
             if (-1 <= mTemp4x4Matrix[2] && mTemp4x4Matrix[2] <= 1) {
-                setTintColor(COMPASS_POINT_COLORS[i]);
                 final float x = mTemp4x4Matrix[0] * mWidthDp * 0.5f;
                 final float y = mTemp4x4Matrix[1] * mHeightDp * 0.5f;
-                drawText(mCompassPointNames[i], x, y, 0);
+                mTextBatch.add(mCompassPointNames[i], x, y, 0, COMPASS_POINT_COLORS[i]);
             }
         }
+        drawTextBatch();
+    }
+
+    /**
+     * Draws the recent tracks of the aircraft as 3D lines.
+     *
+     * <p>All trails are uploaded at once and drawn with a single call, so the cost per frame
+     * doesn't depend on the number of aircraft, only on the total number of fixes, which is
+     * capped by the world.</p>
+     */
+    private void drawTrails() {
+        if (mWorld == null) {
+            return;
+        }
+        final int count = mWorld.getTrails(CalibratedClock.currentTimeMillis(), mMaxDistance,
+                mTrailVertices);
+        if (count == 0) {
+            return;
+        }
+        mTrailVertexBuffer.position(0);
+        mTrailVertexBuffer.put(mTrailVertices, 0, count * World.TRAIL_VERTEX_SIZE);
+        mTrailVertexBuffer.position(0);
+
+        mGlState.useProgram(mTrailShaderProgram);
+        mGlState.uniformMatrix4fv(mTrailMatrixUniformHandle, mViewProjectionMatrix, mTrailMatrix);
+        mGlState.bindArrayBuffer(mTrailBufferHandle);
+        // A new data store each time, so that the driver doesn't wait for the previous frame.
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, count * World.TRAIL_VERTEX_SIZE * 4,
+                mTrailVertexBuffer, GLES20.GL_STREAM_DRAW);
+        mGlState.setVertexAttribArrays(mTrailAttributeMask);
+        final int stride = World.TRAIL_VERTEX_SIZE * 4;
+        GLES20.glVertexAttribPointer(mTrailPositionAttributeHandle, 3, GLES20.GL_FLOAT, false,
+                stride, 0);
+        GLES20.glVertexAttribPointer(mTrailColorAttributeHandle, 4, GLES20.GL_FLOAT, false,
+                stride, 3 * 4);
+        GLES20.glDrawArrays(GLES20.GL_LINES, 0, count);
+        mGlState.countCalls(4);
+
+        checkError();
     }
 
     private void drawTargets() {
@@ -510,10 +826,37 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
 
         final long now = CalibratedClock.currentTimeMillis();
 
-        mTargets = mWorld.getTargets(mTargets);
-        for (Target target : mTargets) {
+        // Room for some new targets, the arrays are only reallocated when the world grows.
+        final int capacity = mWorld.getTargetCount();
+        if (mTargetIds.length < capacity) {
+            mTargetIds = new int[capacity * 2];
+            mPackedCoordinates = new float[capacity * 2 * 3];
+        }
+        final int count = mWorld.computeCoordinates(now, mMaxDistance, mPackedCoordinates,
+                mTargetIds);
+        mMarkerBatch.clear();
+        mTextBatch.clear();
+        mLabelPlacer.reset(mWidthDp, mHeightDp);
+        mClusterer.reset(mWidthDp, mHeightDp);
+        final CollisionAlert alert = mCollisionAlerts ? mWorld.getCollisionAlert() : null;
+        final Aircraft alertAircraft = alert != null ? alert.getAircraft() : null;
+        if (mOcclusionCache != null) {
+            mOcclusionCache.setViewer(mWorld.getLatitude(), mWorld.getLongitude(),
+                    mWorld.getAltitudeMsl());
+        }
+        for (int i = 0; i < count; ++i) {
+            final float targetX = mPackedCoordinates[i * 3];
+            final float targetY = mPackedCoordinates[i * 3 + 1];
+            final float targetZ = mPackedCoordinates[i * 3 + 2];
+            final double distance =
+                    Math.sqrt(targetX * targetX + targetY * targetY + targetZ * targetZ);
+            if (distance > mMaxDistance) {
+                continue; // Too far away...
+            }
+
+            final Target target = mWorld.getTarget(mTargetIds[i]);
             if (target == null) {
-                break;
+                continue; // Expired in the meantime.
             }
             if (target instanceof Aircraft) {
                 if (!mShowAircraft) {
@@ -536,36 +879,19 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
                 }
             }
 
-            mWorld.getTargetCoordinates(target, now, mTargetCoordinates);
-            final double distance =
-                    Math.sqrt(mTargetCoordinates[0] * mTargetCoordinates[0]
-                            + mTargetCoordinates[1] * mTargetCoordinates[1]
-                            + mTargetCoordinates[2] * mTargetCoordinates[2]);
-            if (distance > mMaxDistance) {
-                continue; // Too far away...
-            }
-
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mViewMatrix, 0, mTargetCoordinates, 0);
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mManualCalibrationMatrix, 0, mTemp4x4Matrix, 0);
-            Matrix.multiplyMV(mTemp4x4Matrix, 0, mPerspectiveProjectionMatrix, 0, mTemp4x4Matrix,
-                    0);
-            perspectiveDivision(mTemp4x4Matrix);
+            final int color = target.getColor();
+            project(targetX, targetY, targetZ);
             float x = mTemp4x4Matrix[0] * mWidthDp * 0.5f;
             float y = mTemp4x4Matrix[1] * mHeightDp * 0.5f;
 
-            // Remember if the target was outside the clip space before reusing mTemp4x4Matrix.
             final boolean offscreen =
                     mTemp4x4Matrix[0] < -1 || mTemp4x4Matrix[0] > 1 || mTemp4x4Matrix[1] < -1
                             || mTemp4x4Matrix[1] > 1;
 
             // A target is behind us if the dot product is negative (position * forward < 0).
-            Matrix.multiplyMV(mTemp4x4Matrix, 4, mViewMatrixInverted, 0, FORWARD_VECTOR, 0);
             final boolean behind =
-                    mTargetCoordinates[0] * mTemp4x4Matrix[4]
-                            + mTargetCoordinates[1] * mTemp4x4Matrix[5]
-                            + mTargetCoordinates[2] * mTemp4x4Matrix[6] < 0;
-
-            setTintColor(target.getColor());
+                    targetX * mForwardDirection[0] + targetY * mForwardDirection[1]
+                            + targetZ * mForwardDirection[2] < 0;
 
             if (behind || offscreen) {
                 // Need to invert the coordinates if the target is behind us.
@@ -593,73 +919,289 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
                     arrowY = -arrowY;
                 }
 
-                drawOffscreenTargetIndicator(arrowX, arrowY, angle);
-            } else {
-                final float z = (float) -distance;
-
-                final boolean selected =
-                        mSelectedTarget != null && mSelectedTarget.equals(target.getCallSign());
-                drawOnscreenTargetIndicator(x, y, z, selected);
-
-                if (mHitTestPoint != null && !selected) {
-                    if (x - 25 <= mHitTestPoint.x && mHitTestPoint.x <= x + 25
-                            && y - 25 < mHitTestPoint.y && mHitTestPoint.y <= y + 25) {
-                        mHandler.post(() -> {
-                            final WorldView view = mWeakView.get();
-                            if (view != null) {
-                                view.playSoundEffect(SoundEffectConstants.CLICK);
-                                view.onHitTestResult(target);
-                            }
-                        });
-                        mHitTestPoint = null;
-                    }
-                }
-
-                float textY = y - 38;
-                String displayName = null;
-                if (target instanceof Aircraft) {
-                    final Aircraft aircraft = (Aircraft) target;
-                    final DirectoryEntry entry =
-                            App.getDirectoryRepository().find(aircraft.getDirectoryId());
-                    if (entry != null) {
-                        displayName = entry.getRegistration();
-                    }
-                } else if (target instanceof Receiver) {
-                    final Receiver receiver = (Receiver) target;
-                    displayName = receiver.getCallSign();
-                }
-                if (displayName != null) {
-                    drawText(displayName, x, textY, z);
-                    textY -= 20;
-                }
-                final String distanceString;
-                if (mDistanceUnits.equals("nm")) {
-                    final double nm = UnitsConverter.metresToNauticalMiles(distance);
-                    distanceString = mContext.getString(R.string.distance_nm, nm);
-                } else if (mDistanceUnits.equals("mi")) {
-                    final double miles = UnitsConverter.metresToMiles(distance);
-                    distanceString = mContext.getString(R.string.distance_mi, miles);
-                } else if (distance > 1000) {
-                    distanceString = mContext.getString(R.string.distance_km, distance / 1000);
+                if (distance > CLUSTER_DISTANCE) {
+                    mClusterer.addOffscreen(arrowX, arrowY, angle, (float) distance, color);
                 } else {
-                    distanceString = mContext.getString(R.string.distance_m, Math.round(distance));
+                    drawOffscreenTargetIndicator(arrowX, arrowY, angle, color);
                 }
-                drawText(distanceString, x, textY, z);
+            } else if (distance > CLUSTER_DISTANCE && target != alertAircraft
+                    && !isSelected(target) && !isInExpandedCluster(targetX, targetY, targetZ,
+                    distance)) {
+                mClusterer.add(i, target, x, y, (float) distance, color);
+            } else {
+                drawOnscreenTarget(mTargetIds[i], target, x, y, distance, color,
+                        target == alertAircraft);
             }
         }
 
+        drawClusters();
+
+        if (mAtlasCharactersChanged) {
+            requestGlyphAtlas();
+        }
+
+        mLabelPlacer.place();
+        for (int i = 0; i < mLabelPlacer.size(); ++i) {
+            final int lines = mLabelPlacer.getLines(i);
+            if (lines == 0) {
+                continue; // Would overlap with more important labels.
+            }
+            final float x = mLabelPlacer.getX(i);
+            final float y = mLabelPlacer.getY(i);
+            final float z = mLabelPlacer.getZ(i);
+            final int color = mLabelPlacer.getColor(i);
+            final String name = mLabelPlacer.getName(i);
+            if (name == null) {
+                mTextBatch.add(mLabelPlacer.getDistance(i), x, y, z, color);
+                continue;
+            }
+            mTextBatch.add(name, x, y, z, color);
+            if (lines == 2) {
+                mTextBatch.add(mLabelPlacer.getDistance(i), x, y - LabelPlacer.LINE_HEIGHT, z,
+                        color);
+            }
+        }
+
+        drawTextBatch();
+        drawMarkers();
         GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+    }
 
-        if (mHitTestPoint != null) {
-            mHandler.post(() -> {
-                final WorldView view = mWeakView.get();
-                if (view != null) {
-                    view.onHitTestResult(null);
+    /**
+     * Adds the marker and the label of a target which is not merged into a cluster.
+     *
+     * <p>Only these targets are checked against the terrain: the occlusion check is too expensive
+     * for the arrows and the clusters, which are drawn in their own color.</p>
+     *
+     * @param id the id of the target, see World.computeCoordinates().
+     * @param important true if the label should only give way to the selected target.
+     */
+    private void drawOnscreenTarget(int id, @NonNull Target target, float x, float y,
+                                    double distance, int color, boolean important) {
+        if (mOcclusionCache != null) {
+            final Sample sample = target.getSample();
+            if (mOcclusionCache.isOccluded(id, target, sample.latitude, sample.longitude,
+                    sample.altitude)) {
+                if (mHideOccludedTargets) {
+                    return;
                 }
-            });
-            mHitTestPoint = null;
-            mSelectedTarget = null;
+                // Half way to black.
+                color = Color.rgb(Color.red(color) / 2, Color.green(color) / 2,
+                        Color.blue(color) / 2);
+            }
+        }
+
+        final float z = (float) -distance;
+
+        final boolean selected = isSelected(target);
+        drawOnscreenTargetIndicator(x, y, z, selected, color);
+
+        final String displayName = getDisplayName(id, target);
+        if (!selected) {
+            // Tapping the selected target deselects it, so it can't be hit.
+            mHitTestIndex.addTarget(target, displayName != null ? displayName
+                    : target.getCallSign(), x, y, 25, (float) distance);
+        }
+
+        final LabelFormatter formatter;
+        if (mShortDistanceFormatter != null && distance <= 1000) {
+            formatter = mShortDistanceFormatter;
+        } else {
+            formatter = mDistanceFormatter;
+        }
+        final CharSequence distanceText = formatter.format(distance);
+        // The selected target first, then the one we may collide with, then the nearest.
+        final float priority;
+        if (selected) {
+            priority = 0;
+        } else if (important) {
+            priority = 1;
+        } else {
+            priority = 2 + (float) distance;
+        }
+        mLabelPlacer.add(x, y, z, displayName,
+                displayName != null ? mTextBatch.getWidth(displayName) : 0, distanceText,
+                mTextBatch.getWidth(distanceText), color, priority);
+    }
+
+    /**
+     * Adds the markers of the targets collected by mClusterer. A cluster of one is drawn like any
+     * other target.
+     */
+    private void drawClusters() {
+        mClusterer.cluster();
+        for (int c = 0; c < mClusterer.getClusterCount(); ++c) {
+            final int nearest = mClusterer.getNearest(c);
+            final int color = mClusterer.getColor(nearest);
+            final float distance = mClusterer.getDistance(nearest);
+            if (mClusterer.getClusterSize(c) == 1) {
+                drawOnscreenTarget(mTargetIds[mClusterer.getIndex(nearest)],
+                        mClusterer.getTarget(nearest), mClusterer.getX(nearest),
+                        mClusterer.getY(nearest), distance, color, false);
+                continue;
+            }
+
+            final float x = mClusterer.getClusterX(c);
+            final float y = mClusterer.getClusterY(c);
+            drawOnscreenTargetIndicator(x, y, -distance, false, color);
+            final CharSequence countText =
+                    mClusterCountFormatter.format(mClusterer.getClusterSize(c));
+            mLabelPlacer.add(x, y, -distance, null, 0, countText, mTextBatch.getWidth(countText),
+                    color, 2 + distance);
+            computeClusterDirection(c);
+            mHitTestIndex.addCluster(mClusterDirection, x, y, 25, distance);
+        }
+
+        for (int direction = 0; direction < TargetClusterer.DIRECTIONS; ++direction) {
+            if (mClusterer.hasArrow(direction)) {
+                drawOffscreenTargetIndicator(mClusterer.getArrowX(direction),
+                        mClusterer.getArrowY(direction), mClusterer.getArrowAngle(direction),
+                        mClusterer.getArrowColor(direction));
+            }
+        }
+    }
+
+    /**
+     * Stops merging the targets in the given direction until collapseCluster() is called.
+     */
+    public void expandCluster(@NonNull float[] direction) {
+        System.arraycopy(direction, 0, mExpandedClusterDirection, 0, 3);
+        mClusterExpanded = true;
+    }
+
+    public void collapseCluster() {
+        mClusterExpanded = false;
+    }
+
+    /**
+     * Writes the mean direction of the targets of the cluster into mClusterDirection.
+     */
+    private void computeClusterDirection(int cluster) {
+        float sumX = 0;
+        float sumY = 0;
+        float sumZ = 0;
+        for (int i = mClusterer.getFirst(cluster); i != -1; i = mClusterer.getNext(i)) {
+            final int index = mClusterer.getIndex(i);
+            final float distance = mClusterer.getDistance(i);
+            sumX += mPackedCoordinates[index * 3] / distance;
+            sumY += mPackedCoordinates[index * 3 + 1] / distance;
+            sumZ += mPackedCoordinates[index * 3 + 2] / distance;
+        }
+        final float length = (float) Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ);
+        mClusterDirection[0] = sumX / length;
+        mClusterDirection[1] = sumY / length;
+        mClusterDirection[2] = sumZ / length;
+    }
+
+    private boolean isInExpandedCluster(float x, float y, float z, double distance) {
+        if (!mClusterExpanded) {
+            return false;
+        }
+        final double cos = (x * mExpandedClusterDirection[0] + y * mExpandedClusterDirection[1]
+                + z * mExpandedClusterDirection[2]) / distance;
+        return cos > EXPANDED_CLUSTER_COS;
+    }
+
+    private boolean isSelected(@NonNull Target target) {
+        return mSelectedTarget != null && mSelectedTarget.equals(target.getCallSign());
+    }
+
+    /**
+     * Returns the label of the target above its distance, or null if there is none.
+     *
+     * <p>The directory lookups are cached by the target id until the directory changes.</p>
+     */
+    @Nullable
+    private String getDisplayName(int id, @NonNull Target target) {
+        final int modificationCount = App.getDirectoryRepository().getModificationCount();
+        if (modificationCount != mDisplayNameModificationCount) {
+            Arrays.fill(mDisplayNameTargets, null);
+            mDisplayNameModificationCount = modificationCount;
+        }
+        if (id >= mDisplayNameTargets.length) {
+            final int length = Math.max(id + 1, mDisplayNameTargets.length * 2);
+            mDisplayNameTargets = Arrays.copyOf(mDisplayNameTargets, length);
+            mDisplayNames = Arrays.copyOf(mDisplayNames, length);
+        }
+        if (mDisplayNameTargets[id] == target) {
+            return mDisplayNames[id];
+        }
+        String displayName = null;
+        if (target instanceof Aircraft) {
+            final Aircraft aircraft = (Aircraft) target;
+            final DirectoryEntry entry =
+                    App.getDirectoryRepository().find(aircraft.getDirectoryId());
+            if (entry != null) {
+                displayName = entry.getRegistration();
+            }
+        } else if (target instanceof Receiver) {
+            final Receiver receiver = (Receiver) target;
+            displayName = receiver.getCallSign();
+        }
+        if (displayName != null) {
+            addAtlasCharacters(displayName);
+        }
+        mDisplayNameTargets[id] = target;
+        mDisplayNames[id] = displayName;
+        return displayName;
+    }
+
+    /**
+     * Remembers the characters of the text which the atlas is missing. They are drawn as the
+     * replacement glyph until the next atlas is rasterised.
+     */
+    private void addAtlasCharacters(@NonNull String text) {
+        for (int i = 0; i < text.length(); ++i) {
+            final char character = text.charAt(i);
+            if (character >= ' ' && character <= '~') {
+                continue; // Always in the atlas.
+            }
+            if (mAtlasCharacters.indexOf(text.substring(i, i + 1)) == -1) {
+                mAtlasCharacters.append(character);
+                mAtlasCharactersChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Rasterises a new atlas with all characters needed so far in the background.
+     *
+     * <p>Canvas rasterisation takes long enough to drop a frame, so only the upload is left to the
+     * GL thread.</p>
+     */
+    private void requestGlyphAtlas() {
+        mAtlasCharactersChanged = false;
+        final String characters = mAtlasCharacters.toString();
+        final float density = mDisplayMetrics.density;
+        ATLAS_EXECUTOR.execute(() -> {
+            final GlyphAtlas previous =
+                    mPendingGlyphAtlas.getAndSet(new GlyphAtlas(characters, density));
+            if (previous != null) {
+                previous.release(); // Never uploaded, the new one has all its characters.
+            }
+            final WorldView view = mWeakView.get();
+            if (view != null) {
+                view.requestRender();
+            }
+        });
+    }
+
+    /**
+     * Replaces the atlas with the one rasterised in the background, if there is a new one.
+     */
+    private void uploadGlyphAtlas() {
+        final GlyphAtlas atlas = mPendingGlyphAtlas.getAndSet(null);
+        if (atlas == null) {
+            return;
+        }
+        // The atlas stays bound for the lifetime of the surface.
+        mGlState.activeTexture(TEXTURE_UNIT_TEXT);
+        atlas.upload();
+        if (mGlyphAtlas != null) {
+            mGlyphAtlas.release();
         }
+        mGlyphAtlas = atlas;
+        mTextBatch.setAtlas(atlas);
     }
 
     /**
@@ -673,95 +1215,97 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
         final long elapsed = uptime - mFrameCounterStartTime;
         if (elapsed > 1000) {
             final long fps = Math.round(mFrameCounter * 1000.0 / elapsed);
-            final String text = String.format(Locale.US, "%d FPS", fps);
-            // FIXME: find a better solution, the FPS texture can be deleted if there is not enough
-            //  space in the cache!
-            mFpsTextTexture = TextTexture.of(text, mDisplayMetrics.density);
+            // The calls of the previous frame, this one is not complete yet.
+            mFpsText = String.format(Locale.US, "%d FPS, %d GL calls, %d skipped", fps,
+                    mGlCalls, mSkippedGlCalls);
             mFrameCounter = 0;
             mFrameCounterStartTime = uptime;
         }
-        setTintColor(Color.GREEN);
-        drawTextTexture(mFpsTextTexture, 0, 0, 0);
-        checkError();
+        mTextBatch.clear();
+        mTextBatch.add(mFpsText, 0, 0, 0, Color.GREEN);
+        drawTextBatch();
     }
 
-    private void drawOnscreenTargetIndicator(float x, float y, float z, boolean selected) {
-        Matrix.setIdentityM(mTemp4x4Matrix, 0);
-        Matrix.translateM(mTemp4x4Matrix, 0, x, y, z);
-        final float width;
-        final float height;
-        if (selected) {
-            width = mSelectedOnscreenTargetTexture.getWidth();
-            height = mSelectedOnscreenTargetTexture.getHeight();
-        } else {
-            width = mOnscreenTargetTexture.getWidth();
-            height = mOnscreenTargetTexture.getHeight();
+    /**
+     * Draws the 50th, 95th and 99th percentiles of each phase below the FPS counter.
+     */
+    private void drawFrameProfile() {
+        final long uptime = SystemClock.uptimeMillis();
+        if (uptime - mFrameProfileUpdateTime > 1000) {
+            final String[] lines = new String[mFrameProfiler.getPhaseCount()];
+            for (int i = 0; i < lines.length; ++i) {
+                lines[i] = mFrameProfiler.getSummary(i);
+            }
+            mFrameProfileLines = lines;
+            mFrameProfileUpdateTime = uptime;
         }
-        Matrix.scaleM(mTemp4x4Matrix, 0, width / mDisplayMetrics.density,
-                height / mDisplayMetrics.density, 0);
-        Matrix.rotateM(mTemp4x4Matrix, 0, 45, 0, 0, 1);
-
-        GLES20.glUniform1i(mTextureUniformHandle,
-                selected ? TEXTURE_UNIT_ONSCREEN_TARGET_SELECTED : TEXTURE_UNIT_TARGET);
-        GLES20.glUniformMatrix4fv(mModelMatrixUniformHandle, 1, false, mTemp4x4Matrix, 0);
-
-        GLES20.glVertexAttribPointer(mPositionAttributeHandle, 3, GLES20.GL_FLOAT, false, 12,
-                mQuadVertexBuffer);
-        GLES20.glVertexAttribPointer(mTexCoordinateAttributeHandle, 2, GLES20.GL_FLOAT, false, 8,
-                mQuadTexCoordinateBuffer);
-
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+        mTextBatch.clear();
+        for (int i = 0; i < mFrameProfileLines.length; ++i) {
+            mTextBatch.add(mFrameProfileLines[i], 0, -20 * (i + 1), 0, Color.GREEN);
+        }
+        drawTextBatch();
+    }
 
+    /**
+     * Draws the markers collected by drawTargets() with a single call.
+     *
+     * <p>The depth test sorts them out with the labels drawn before.</p>
+     */
+    private void drawMarkers() {
+        if (mMarkerBatch.size() == 0) {
+            return;
+        }
+        beginPhase(FrameProfiler.PHASE_BATCHES);
+        mMarkerBatch.draw(mOrthographicProjectionMatrix, MARKER_TEXTURE_UNITS);
+        endPhase(FrameProfiler.PHASE_BATCHES);
         checkError();
     }
 
-    private void drawOffscreenTargetIndicator(float x, float y, float angle) {
-        Matrix.setIdentityM(mTemp4x4Matrix, 0);
-        Matrix.translateM(mTemp4x4Matrix, 0, x, y, 0);
-        Matrix.scaleM(mTemp4x4Matrix, 0,
-                mOffscreenTargetTexture.getWidth() / mDisplayMetrics.density,
-                mOffscreenTargetTexture.getHeight() / mDisplayMetrics.density, 0);
-        Matrix.rotateM(mTemp4x4Matrix, 0, angle, 0, 0, 1);
-
-        GLES20.glUniform1i(mTextureUniformHandle, TEXTURE_UNIT_OFFSCREEN_TARGET);
-        GLES20.glUniformMatrix4fv(mModelMatrixUniformHandle, 1, false, mTemp4x4Matrix, 0);
-
-        GLES20.glVertexAttribPointer(mPositionAttributeHandle, 3, GLES20.GL_FLOAT, false, 12,
-                mQuadVertexBuffer);
-        GLES20.glVertexAttribPointer(mTexCoordinateAttributeHandle, 2, GLES20.GL_FLOAT, false, 8,
-                mQuadTexCoordinateBuffer);
-
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
-
+    /**
+     * Draws the text laid out into mTextBatch with a single call.
+     */
+    private void drawTextBatch() {
+        if (mTextBatch.size() == 0) {
+            return;
+        }
+        beginPhase(FrameProfiler.PHASE_BATCHES);
+        mTextBatch.draw(mOrthographicProjectionMatrix, TEXTURE_UNIT_TEXT);
+        endPhase(FrameProfiler.PHASE_BATCHES);
         checkError();
     }
 
-    private void drawText(@NonNull String text, float x, float y, float z) {
-        drawTextTexture(TextTexture.of(text, mDisplayMetrics.density), x, y, z);
+    private void drawOnscreenTargetIndicator(float x, float y, float z, boolean selected,
+                                             int color) {
+        final DrawableTexture texture =
+                selected ? mSelectedOnscreenTargetTexture : mOnscreenTargetTexture;
+        mMarkerBatch.add(x, y, z, texture.getWidth() / mDisplayMetrics.density,
+                texture.getHeight() / mDisplayMetrics.density, 45, color,
+                selected ? MARKER_ONSCREEN_SELECTED : MARKER_ONSCREEN);
     }
 
-    private void drawTextTexture(@NonNull TextTexture texture, float x, float y, float z) {
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + TEXTURE_UNIT_TEXT);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getHandle());
-
-        Matrix.setIdentityM(mTemp4x4Matrix, 0);
-        Matrix.translateM(mTemp4x4Matrix, 0, x, y, z);
-        Matrix.scaleM(mTemp4x4Matrix, 0, texture.getWidth(), texture.getHeight(), 0);
-        GLES20.glUniformMatrix4fv(mModelMatrixUniformHandle, 1, false, mTemp4x4Matrix, 0);
-        GLES20.glVertexAttribPointer(mPositionAttributeHandle, 3, GLES20.GL_FLOAT, false, 12,
-                mQuadVertexBuffer);
-        GLES20.glVertexAttribPointer(mTexCoordinateAttributeHandle, 2, GLES20.GL_FLOAT, false, 8,
-                mQuadTexCoordinateBuffer);
-        GLES20.glUniform1i(mTextureUniformHandle, TEXTURE_UNIT_TEXT);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, QUAD_VERTICES.length / COORDS_PER_VERTEX);
-
-        checkError();
+    private void drawOffscreenTargetIndicator(float x, float y, float angle, int color) {
+        mMarkerBatch.add(x, y, 0, mOffscreenTargetTexture.getWidth() / mDisplayMetrics.density,
+                mOffscreenTargetTexture.getHeight() / mDisplayMetrics.density, angle, color,
+                MARKER_OFFSCREEN);
     }
 
     private void createSurfaceTexture() {
         final int[] handles = new int[1];
         GLES20.glGenTextures(1, handles, 0);
+        mGlState.activeTexture(TEXTURE_UNIT_CAMERA);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, handles[0]);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_LINEAR);
         mSurfaceTexture = new SurfaceTexture(handles[0]);
+        // The view renders on demand, the camera frames set the pace.
+        mSurfaceTexture.setOnFrameAvailableListener(surfaceTexture -> {
+            final WorldView view = mWeakView.get();
+            if (view != null) {
+                view.onCameraFrameAvailable();
+            }
+        });
     }
 
     /**
@@ -773,19 +1317,14 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
             return; // Avoid division by zero.
         }
 
-        // Tell the fragment shader it should sample the GL_TEXTURE_EXTERNAL_OES target.
-        // FIXME: is it more or less efficient to use a separate program for it?
-        GLES20.glUniform1i(mUseSurfaceTextureUniformHandle, 1);
-
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + TEXTURE_UNIT_CAMERA);
+        mGlState.useProgram(mShaderProgram);
+        mGlState.activeTexture(TEXTURE_UNIT_CAMERA);
         mSurfaceTexture.updateTexImage(); // "Calls" glBindTexture().
-        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
-                GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
-                GLES20.GL_LINEAR);
+        mGlState.countCalls(1);
 
         mSurfaceTexture.getTransformMatrix(mTemp4x4Matrix);
-        GLES20.glUniformMatrix4fv(mSurfaceTextureMatrixUniformHandle, 1, false, mTemp4x4Matrix, 0);
+        mGlState.uniformMatrix4fv(mSurfaceTextureMatrixUniformHandle, mTemp4x4Matrix,
+                mSurfaceTextureMatrix);
 
         Matrix.setIdentityM(mTemp4x4Matrix, 0);
         // FIXME: is the code below really correct?
@@ -805,16 +1344,16 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
             Matrix.rotateM(mTemp4x4Matrix, 0, 270, 0, 0, 1);
         }
 
-        GLES20.glUniformMatrix4fv(mModelMatrixUniformHandle, 1, false, mTemp4x4Matrix, 0);
-        GLES20.glUniform1i(mSurfaceTextureUniformHandle, TEXTURE_UNIT_CAMERA);
-        GLES20.glVertexAttribPointer(mPositionAttributeHandle, 3, GLES20.GL_FLOAT, false, 12,
-                mQuadVertexBuffer);
-        GLES20.glVertexAttribPointer(mTexCoordinateAttributeHandle, 2, GLES20.GL_FLOAT, false, 8,
-                mQuadTexCoordinateBuffer);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
-
-        // Tell the fragment shader it should sample the GL_TEXTURE_2D target again.
-        GLES20.glUniform1i(mUseSurfaceTextureUniformHandle, 0);
+        mGlState.uniformMatrix4fv(mModelMatrixUniformHandle, mTemp4x4Matrix, mModelMatrix);
+        mGlState.bindArrayBuffer(mQuadBufferHandle);
+        mGlState.setVertexAttribArrays(mAttributeMask);
+        final int stride = QUAD_VERTEX_SIZE * 4;
+        GLES20.glVertexAttribPointer(mPositionAttributeHandle, 3, GLES20.GL_FLOAT, false, stride,
+                0);
+        GLES20.glVertexAttribPointer(mTexCoordinateAttributeHandle, 2, GLES20.GL_FLOAT, false,
+                stride, 3 * 4);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, QUAD_VERTICES.length / QUAD_VERTEX_SIZE);
+        mGlState.countCalls(3);
 
         // Make sure we are still in a valid state before leaving the function.
         checkError();
@@ -833,24 +1372,19 @@ public class WorldRenderer implements GLSurfaceView.Renderer {
     }
 
     /**
-     * Updates the current tint color in the fragment shader.
-     */
-    private void setTintColor(int color) {
-        final float red = Color.red(color) / 255.0f;
-        final float green = Color.green(color) / 255.0f;
-        final float blue = Color.blue(color) / 255.0f;
-        GLES20.glUniform3f(mTintColorUniformHandle, red, green, blue);
-        checkError();
-    }
-
-    /**
-     * Does perspective division.
+     * Projects a point from the world coordinates to the normalized device coordinates.
+     *
+     * <p>The result is stored in the first four elements of mTemp4x4Matrix. This is the same as
+     * multiplying by mViewProjectionMatrix and doing the perspective division, but without the
+     * three native calls per point.</p>
      */
-    private static void perspectiveDivision(float[] vector) {
-        vector[0] /= vector[3];
-        vector[1] /= vector[3];
-        vector[2] /= vector[3];
-        vector[3] = 1;
+    private void project(float x, float y, float z) {
+        final float[] m = mViewProjectionMatrix;
+        final float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+        mTemp4x4Matrix[0] = (m[0] * x + m[4] * y + m[8] * z + m[12]) / w;
+        mTemp4x4Matrix[1] = (m[1] * x + m[5] * y + m[9] * z + m[13]) / w;
+        mTemp4x4Matrix[2] = (m[2] * x + m[6] * y + m[10] * z + m[14]) / w;
+        mTemp4x4Matrix[3] = 1;
     }
 
     /**
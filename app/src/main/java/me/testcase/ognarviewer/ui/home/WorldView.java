@@ -38,22 +38,27 @@ import android.hardware.camera2.params.SessionConfiguration;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.opengl.GLSurfaceView;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.Size;
 import android.util.SizeF;
 import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.Surface;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import me.testcase.ognarviewer.BuildConfig;
+import me.testcase.ognarviewer.R;
 import me.testcase.ognarviewer.world.Target;
 import me.testcase.ognarviewer.world.World;
 
@@ -61,8 +66,41 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
         ManualCalibrationView.OnManualCalibration {
     private static final String TAG = "WorldView";
 
+    /**
+     * How often to redraw without camera frames, in milliseconds. The targets keep moving.
+     */
+    private static final long IDLE_FRAME_INTERVAL = 200;
+
+    /**
+     * After how many milliseconds without a frame the camera is considered stopped.
+     */
+    private static final long CAMERA_TIMEOUT = 250;
+
+    /**
+     * The smallest change of the device orientation worth a new frame, in radians.
+     */
+    private static final double ROTATION_THRESHOLD = Math.toRadians(0.1);
+
     private final WorldRenderer mRenderer;
 
+    /**
+     * The uptime of the last camera frame.
+     */
+    private volatile long mCameraFrameTime;
+
+    /**
+     * The last rotation vector passed to the renderer, as a quaternion.
+     */
+    private final float[] mRotation = new float[4];
+
+    private final Runnable mIdleFrame = new Runnable() {
+        @Override
+        public void run() {
+            requestFrame();
+            postDelayed(this, IDLE_FRAME_INTERVAL);
+        }
+    };
+
     private OnTargetClickListener mOnTargetClickListener;
 
     private Surface mSurface;
@@ -98,6 +136,8 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
 
         mRenderer = new WorldRenderer(this);
         setRenderer(mRenderer);
+        // Only draw when something has changed, see requestFrame().
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
     }
 
     public void setWorld(World world) {
@@ -113,6 +153,8 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
         // TODO: try TYPE_POSE_6DOF, more accurate but not available on my Pixel 4a
         final Sensor sensor = manager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
         manager.registerListener(this, sensor, SensorManager.SENSOR_DELAY_GAME);
+        Arrays.fill(mRotation, 0);
+        post(mIdleFrame);
     }
 
     @Override
@@ -121,10 +163,43 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
         final SensorManager manager =
                 (SensorManager) getContext().getSystemService(Context.SENSOR_SERVICE);
         manager.unregisterListener(this);
+        removeCallbacks(mIdleFrame);
+        // Off the UI thread, the GL thread runs the queued events even while paused.
+        queueEvent(mRenderer::exportFrameProfile);
         closeCamera();
         super.onPause();
     }
 
+    /**
+     * Queues the event and requests a frame to show its effect.
+     */
+    @Override
+    public void queueEvent(Runnable runnable) {
+        super.queueEvent(runnable);
+        requestFrame();
+    }
+
+    /**
+     * Requests a new frame unless the camera is running.
+     *
+     * <p>While the camera is running, its frames drive the rendering, so that the frame rate
+     * never exceeds the camera frame rate. All other changes are shown with the next camera
+     * frame.</p>
+     */
+    private void requestFrame() {
+        if (SystemClock.uptimeMillis() - mCameraFrameTime > CAMERA_TIMEOUT) {
+            requestRender();
+        }
+    }
+
+    /**
+     * Called by the renderer when a new camera frame is available, on an arbitrary thread.
+     */
+    void onCameraFrameAvailable() {
+        mCameraFrameTime = SystemClock.uptimeMillis();
+        requestRender();
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
@@ -135,18 +210,45 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
     @SuppressLint("ClickableViewAccessibility")
     public boolean onTouchEvent(MotionEvent event) {
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            queueEvent(() -> mRenderer.setHitTestPoint(event.getX(), event.getY()));
+            onTap(event.getX(), event.getY());
             return true;
         }
         return false;
     }
 
+    /**
+     * Resolves the tap against the markers of the last frame.
+     *
+     * <p>If several targets overlap, the user chooses one of them, the nearest first. A tap on a
+     * cluster expands it, a tap on nothing deselects the target.</p>
+     */
+    private void onTap(float x, float y) {
+        final HitTestIndex.Result result = mRenderer.getHitTestIndex().query(x, y);
+        if (result.getTargets().size() == 1) {
+            playSoundEffect(SoundEffectConstants.CLICK);
+            onHitTestResult(result.getTargets().get(0));
+        } else if (!result.getTargets().isEmpty()) {
+            playSoundEffect(SoundEffectConstants.CLICK);
+            new MaterialAlertDialogBuilder(getContext())
+                    .setTitle(R.string.choose_target)
+                    .setItems(result.getNames().toArray(new String[0]),
+                            (dialog, which) -> onHitTestResult(result.getTargets().get(which)))
+                    .setNegativeButton(R.string.close, null)
+                    .show();
+        } else if (result.isCluster()) {
+            playSoundEffect(SoundEffectConstants.CLICK);
+            queueEvent(() -> mRenderer.expandCluster(result.getClusterDirection()));
+        } else {
+            queueEvent(mRenderer::collapseCluster);
+            onHitTestResult(null);
+        }
+    }
+
     public void setOnTargetClickListener(@Nullable OnTargetClickListener listener) {
         mOnTargetClickListener = listener;
     }
 
-    // FIXME: public to be called from WorldRenderer
-    public void onHitTestResult(Target target) {
+    private void onHitTestResult(@Nullable Target target) {
         if (mOnTargetClickListener != null) {
             mOnTargetClickListener.onTargetClick(target);
         }
@@ -316,7 +418,23 @@ public class WorldView extends GLSurfaceView implements SensorEventListener,
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        queueEvent(() -> mRenderer.setRotationVector(event.values));
+        final float x = event.values[0];
+        final float y = event.values[1];
+        final float z = event.values[2];
+        // The scalar component is optional.
+        final float w = event.values.length > 3 ? event.values[3]
+                : (float) Math.sqrt(Math.max(0, 1 - x * x - y * y - z * z));
+        final double dot = Math.abs(x * mRotation[0] + y * mRotation[1] + z * mRotation[2]
+                + w * mRotation[3]);
+        if (2 * Math.acos(Math.min(dot, 1)) < ROTATION_THRESHOLD) {
+            return; // The change is too small to see.
+        }
+        mRotation[0] = x;
+        mRotation[1] = y;
+        mRotation[2] = z;
+        mRotation[3] = w;
+        final float[] vector = event.values.clone();
+        queueEvent(() -> mRenderer.setRotationVector(vector));
     }
 
     @Override
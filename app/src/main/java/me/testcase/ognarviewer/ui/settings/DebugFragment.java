@@ -42,10 +42,12 @@ import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
+import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceScreen;
+import androidx.preference.SwitchPreferenceCompat;
 
 import java.util.Set;
 
@@ -58,6 +60,29 @@ public class DebugFragment extends PreferenceFragmentCompat {
         final Context context = getPreferenceManager().getContext();
         final PreferenceScreen screen = getPreferenceManager().createPreferenceScreen(context);
 
+        // Persisted, see HomeViewModel.
+        final ListPreference demoTraffic = new ListPreference(context);
+        demoTraffic.setKey("demo_traffic");
+        demoTraffic.setTitle("Demo traffic");
+        demoTraffic.setDialogTitle("Demo traffic");
+        demoTraffic.setEntries(new CharSequence[]{"Static", "10 aircraft", "100 aircraft",
+                "1000 aircraft", "5000 aircraft"});
+        demoTraffic.setEntryValues(new CharSequence[]{"0", "10", "100", "1000", "5000"});
+        demoTraffic.setDefaultValue("0");
+        demoTraffic.setSummaryProvider(ListPreference.SimpleSummaryProvider.getInstance());
+        demoTraffic.setIconSpaceReserved(false);
+        screen.addPreference(demoTraffic);
+
+        // Persisted, see WorldRenderer.
+        final SwitchPreferenceCompat frameProfiler = new SwitchPreferenceCompat(context);
+        frameProfiler.setKey("frame_profiler");
+        frameProfiler.setTitle("Frame profiler");
+        frameProfiler.setSummary("Shows the 50th/95th/99th percentiles of each phase and exports "
+                + "them to frame_profile.csv in the app's external files directory on pause");
+        frameProfiler.setDefaultValue(false);
+        frameProfiler.setIconSpaceReserved(false);
+        screen.addPreference(frameProfiler);
+
         Preference preference = new Preference(context);
         preference.setPersistent(false);
         preference.setTitle("API level");
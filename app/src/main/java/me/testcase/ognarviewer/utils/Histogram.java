@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values with a relative precision of about 6%.
+ *
+ * <p>Like an HDR histogram, the buckets are log-linear: each power of two is split into
+ * {@link #SUB_BUCKETS} buckets of equal width, the values below {@link #SUB_BUCKETS} have a bucket
+ * each. The values above {@link #MAX_VALUE} are counted as {@link #MAX_VALUE}.</p>
+ *
+ * <p>The counters are atomic, so one thread may add values while another reads the percentiles
+ * without any locks. A reader may see a partially added value, which doesn't matter for
+ * statistics.</p>
+ */
+public final class Histogram {
+    public static final long MAX_VALUE = (1L << 31) - 1;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+    public void add(long value) {
+        mCounts.incrementAndGet(indexOf(Math.max(0, Math.min(value, MAX_VALUE))));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < mCounts.length(); ++i) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value below which the given fraction of the values are, or 0 if empty.
+     *
+     * <p>The result is the highest value of its bucket, so it is never lower than the exact
+     * percentile.</p>
+     *
+     * @param fraction e.g. 0.95 for the 95th percentile.
+     */
+    public long getPercentile(double fraction) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length(); ++i) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        // Values were added in the meantime.
+        return MAX_VALUE;
+    }
+
+    /**
+     * Returns the highest value of the highest non-empty bucket, or 0 if empty.
+     */
+    public long getMax() {
+        for (int i = mCounts.length() - 1; i >= 0; --i) {
+            if (mCounts.get(i) != 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCounts.length(); ++i) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) ((value >> shift) & (SUB_BUCKETS - 1));
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
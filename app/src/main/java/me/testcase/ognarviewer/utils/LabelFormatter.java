@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.utils;
+
+import androidx.annotation.NonNull;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Formats a measurement like a "%d m" or "%.1f km" string resource, but without allocations.
+ *
+ * <p>The value is rounded to the precision of the pattern and the labels of the recently seen
+ * rounded values are kept in a small cache, so a label which doesn't change is not formatted
+ * again.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public final class LabelFormatter {
+    /**
+     * The number of cached labels, must be a power of two.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final String mPrefix;
+    private final String mSuffix;
+    private final int mDecimals;
+    private final double mScale;
+    private final char mZeroDigit;
+    private final char mDecimalSeparator;
+
+    private final long[] mKeys = new long[CACHE_SIZE];
+    private final StringBuilder[] mLabels = new StringBuilder[CACHE_SIZE];
+
+    /**
+     * @param pattern a format string with a single %d or %.Nf conversion.
+     * @param unit the size of the unit of the label in the unit of the formatted values, e.g. 1000
+     *     to format metres as kilometres.
+     */
+    public LabelFormatter(@NonNull String pattern, double unit,
+                          @NonNull DecimalFormatSymbols symbols) {
+        final int start = pattern.indexOf('%');
+        if (start < 0) {
+            throw new IllegalArgumentException("No conversion in \"" + pattern + "\"");
+        }
+        int end = start + 1;
+        // Skip the argument index, e.g. "1$".
+        int digits = end;
+        while (digits < pattern.length() && Character.isDigit(pattern.charAt(digits))) {
+            ++digits;
+        }
+        if (digits < pattern.length() && pattern.charAt(digits) == '$') {
+            end = digits + 1;
+        }
+        int decimals = 0;
+        if (end < pattern.length() && pattern.charAt(end) == '.') {
+            ++end;
+            while (end < pattern.length() && Character.isDigit(pattern.charAt(end))) {
+                decimals = decimals * 10 + pattern.charAt(end) - '0';
+                ++end;
+            }
+        } else if (end < pattern.length() && pattern.charAt(end) == 'f') {
+            decimals = 6; // Like String.format().
+        }
+        final char conversion = end < pattern.length() ? pattern.charAt(end) : 0;
+        if (conversion != 'd' && conversion != 'f' || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported conversion in \"" + pattern + "\"");
+        }
+        mPrefix = pattern.substring(0, start);
+        mSuffix = pattern.substring(end + 1);
+        mDecimals = decimals;
+        mScale = POWERS_OF_TEN[decimals] / unit;
+        mZeroDigit = symbols.getZeroDigit();
+        mDecimalSeparator = symbols.getDecimalSeparator();
+        for (int i = 0; i < CACHE_SIZE; ++i) {
+            mLabels[i] = new StringBuilder(mPrefix.length() + mSuffix.length() + 16);
+        }
+    }
+
+    /**
+     * Returns the label of the value.
+     *
+     * <p>The returned sequence is reused, it is only valid until the next call.</p>
+     */
+    @NonNull
+    public CharSequence format(double value) {
+        final long key = Math.round(value * mScale);
+        final int slot = (int) (key & (CACHE_SIZE - 1));
+        final StringBuilder label = mLabels[slot];
+        if (mKeys[slot] == key && label.length() != 0) {
+            return label;
+        }
+        mKeys[slot] = key;
+        label.setLength(0);
+        label.append(mPrefix);
+        if (key < 0) {
+            label.append('-');
+        }
+        final long absolute = Math.abs(key);
+        appendDigits(label, absolute / POWERS_OF_TEN[mDecimals], 1);
+        if (mDecimals > 0) {
+            label.append(mDecimalSeparator);
+            appendDigits(label, absolute % POWERS_OF_TEN[mDecimals], mDecimals);
+        }
+        label.append(mSuffix);
+        return label;
+    }
+
+    /**
+     * Appends a non-negative number with at least the given number of digits.
+     */
+    private void appendDigits(@NonNull StringBuilder builder, long number, int minDigits) {
+        final int start = builder.length();
+        long rest = number;
+        int count = 0;
+        do {
+            builder.append((char) (mZeroDigit + rest % 10));
+            rest /= 10;
+            ++count;
+        } while (rest != 0 || count < minDigits);
+        // The digits were appended from the least significant one.
+        for (int i = start, j = builder.length() - 1; i < j; ++i, --j) {
+            final char c = builder.charAt(i);
+            builder.setCharAt(i, builder.charAt(j));
+            builder.setCharAt(j, c);
+        }
+    }
+}
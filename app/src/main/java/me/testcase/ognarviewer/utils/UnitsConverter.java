@@ -18,6 +18,9 @@
 package me.testcase.ognarviewer.utils;
 
 public final class UnitsConverter {
+    public static final double METRES_PER_MILE = 1609.344;
+    public static final double METRES_PER_NAUTICAL_MILE = 1852.0;
+
     public static int feetToMetres(int feet) {
         return (int) Math.round(feet / 3.28084);
     }
@@ -27,11 +30,11 @@ public final class UnitsConverter {
     }
 
     public static double metresToMiles(double meters) {
-        return meters / 1609.344;
+        return meters / METRES_PER_MILE;
     }
 
     public static double metresToNauticalMiles(double meters) {
-        return meters / 1852.0;
+        return meters / METRES_PER_NAUTICAL_MILE;
     }
 
     public static int knotsToKmh(int knots) {
@@ -24,10 +24,6 @@ import me.testcase.ognarviewer.utils.AircraftId;
  */
 public final class Aircraft extends Target {
     private final long mId;
-    private volatile int mHeading;
-    private volatile int mGroundSpeed;
-    private volatile float mClimbRate;
-    private volatile double mTurnRate;
 
     public Aircraft(String callSign, long id) {
         super(callSign);
@@ -60,7 +56,7 @@ public final class Aircraft extends Target {
      * <p>This method is thread safe.</p>
      */
     public int getHeading() {
-        return mHeading;
+        return getSample().heading;
     }
 
     /**
@@ -68,8 +64,9 @@ public final class Aircraft extends Target {
      *
      * <p>This method is thread safe.</p>
      */
-    public void setHeading(int heading) {
-        mHeading = heading;
+    public synchronized void setHeading(int heading) {
+        final Sample sample = getSample();
+        updateMotion(heading, sample.groundSpeed, sample.climbRate, sample.turnRate);
     }
 
     /**
@@ -78,7 +75,7 @@ public final class Aircraft extends Target {
      * <p>This method is thread safe.</p>
      */
     public int getGroundSpeed() {
-        return mGroundSpeed;
+        return getSample().groundSpeed;
     }
 
     /**
@@ -86,8 +83,9 @@ public final class Aircraft extends Target {
      *
      * <p>This method is thread safe.</p>
      */
-    public void setGroundSpeed(int speed) {
-        mGroundSpeed = speed;
+    public synchronized void setGroundSpeed(int speed) {
+        final Sample sample = getSample();
+        updateMotion(sample.heading, speed, sample.climbRate, sample.turnRate);
     }
 
     /**
@@ -96,7 +94,7 @@ public final class Aircraft extends Target {
      * <p>This method is thread safe.</p>
      */
     public float getClimbRate() {
-        return mClimbRate;
+        return getSample().climbRate;
     }
 
     /**
@@ -104,8 +102,9 @@ public final class Aircraft extends Target {
      *
      * <p>This method is thread safe.</p>
      */
-    public void setClimbRate(float rate) {
-        mClimbRate = rate;
+    public synchronized void setClimbRate(float rate) {
+        final Sample sample = getSample();
+        updateMotion(sample.heading, sample.groundSpeed, rate, sample.turnRate);
     }
 
     /**
@@ -114,7 +113,7 @@ public final class Aircraft extends Target {
      * <p>This method is thread safe.</p>
      */
     public double getTurnRate() {
-        return mTurnRate;
+        return getSample().turnRate;
     }
 
     /**
@@ -122,7 +121,27 @@ public final class Aircraft extends Target {
      *
      * <p>This method is thread safe.</p>
      */
-    public void setTurnRate(double turnRate) {
-        mTurnRate = turnRate;
+    public synchronized void setTurnRate(double turnRate) {
+        final Sample sample = getSample();
+        updateMotion(sample.heading, sample.groundSpeed, sample.climbRate, turnRate);
+    }
+
+    /**
+     * Sets the heading, the ground speed, the rate of climb and the turn rate at once.
+     *
+     * <p>This method is thread safe.</p>
+     */
+    public void setMotion(int heading, int groundSpeed, float climbRate, double turnRate) {
+        updateMotion(heading, groundSpeed, climbRate, turnRate);
+    }
+
+    /**
+     * Returns the distance in meters between the last received position and the position
+     * predicted for it, NaN if the position was not filtered.
+     *
+     * <p>This method is thread safe.</p>
+     */
+    public double getPredictionError() {
+        return getEstimate().mError;
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import java.util.Arrays;
+
+/**
+ * A hash table of aircraft by their id.
+ *
+ * <p>Unlike a {@code HashMap<Long, Aircraft>}, it neither boxes the keys nor allocates entries:
+ * the keys and the values are two parallel arrays and collisions are resolved by linear probing.
+ * A slot is free if its value is null, so any id can be a key.</p>
+ *
+ * <p>This class is not thread safe, the caller must synchronize.</p>
+ */
+final class AircraftTable {
+    /**
+     * The initial number of slots, must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private Aircraft[] mValues = new Aircraft[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * Returns the aircraft with the given id or null if there is none.
+     */
+    public Aircraft get(long id) {
+        final int mask = mValues.length - 1;
+        for (int slot = slot(id, mask); mValues[slot] != null; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == id) {
+                return mValues[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the aircraft or replaces the one with the same id.
+     */
+    public void put(long id, Aircraft aircraft) {
+        // Keep at least half of the slots free, so the probe sequences stay short.
+        if ((mSize + 1) * 2 > mValues.length) {
+            grow();
+        }
+        final int mask = mValues.length - 1;
+        int slot = slot(id, mask);
+        while (mValues[slot] != null) {
+            if (mKeys[slot] == id) {
+                mValues[slot] = aircraft;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = id;
+        mValues[slot] = aircraft;
+        ++mSize;
+    }
+
+    /**
+     * Removes the aircraft with the given id. Does nothing if there is none.
+     */
+    public void remove(long id) {
+        final int mask = mValues.length - 1;
+        int slot = slot(id, mask);
+        while (mValues[slot] != null && mKeys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (mValues[slot] == null) {
+            return;
+        }
+        mValues[slot] = null;
+        --mSize;
+
+        // Move the following entries of the cluster back if the hole is on their probe sequence,
+        // otherwise get() would stop at the hole.
+        int hole = slot;
+        for (slot = (slot + 1) & mask; mValues[slot] != null; slot = (slot + 1) & mask) {
+            final int home = slot(mKeys[slot], mask);
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                mKeys[hole] = mKeys[slot];
+                mValues[hole] = mValues[slot];
+                mValues[slot] = null;
+                hole = slot;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    private void grow() {
+        final long[] keys = mKeys;
+        final Aircraft[] values = mValues;
+        mKeys = new long[keys.length * 2];
+        mValues = new Aircraft[values.length * 2];
+        mSize = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null) {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+
+    private static int slot(long id, int mask) {
+        // Fibonacci hashing, the ids of the same manufacturer are often close.
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> (64 - Integer.bitCount(mask)));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+/**
+ * The most urgent risk of collision with the viewer, see {@link World#getCollisionAlert()}.
+ *
+ * <p>Instances are immutable.</p>
+ */
+public final class CollisionAlert {
+    /**
+     * The closest point of approach is 13 to 18 seconds away.
+     */
+    public static final int LEVEL_LOW = 1;
+
+    /**
+     * The closest point of approach is 9 to 12 seconds away.
+     */
+    public static final int LEVEL_IMPORTANT = 2;
+
+    /**
+     * The closest point of approach is at most 8 seconds away.
+     */
+    public static final int LEVEL_URGENT = 3;
+
+    private final Aircraft mAircraft;
+    private final int mLevel;
+    private final double mDistance;
+    private final double mTime;
+
+    CollisionAlert(Aircraft aircraft, int level, double distance, double time) {
+        mAircraft = aircraft;
+        mLevel = level;
+        mDistance = distance;
+        mTime = time;
+    }
+
+    public Aircraft getAircraft() {
+        return mAircraft;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Returns the horizontal distance at the closest point of approach in meters.
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * Returns the time to the closest point of approach in seconds, counted from the last beacon
+     * of the aircraft.
+     */
+    public double getTime() {
+        return mTime;
+    }
+}
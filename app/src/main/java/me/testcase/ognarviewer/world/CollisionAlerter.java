@@ -0,0 +1,290 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import java.util.List;
+
+/**
+ * Keeps the closest point of approach (CPA) of the aircraft near the viewer and the time to it
+ * (TCPA), for using the app on board.
+ *
+ * <p>The work is incremental: a beacon updates the CPA of its aircraft only, and only aircraft
+ * within {@link #RANGE} are kept, at most {@link #MAX_CANDIDATES} of them. Only when the viewer
+ * moves, all of them are updated, and the spatial index gives the new ones nearby. So the cost of
+ * a beacon doesn't depend on the number of aircraft in the world.</p>
+ *
+ * <p>The motion is extrapolated linearly: a circling glider is treated as flying along its
+ * current track, which overestimates the risk rather than underestimates it. Only aircraft which
+ * are closing in raise alerts: the aircraft without motion are parked (the beacons don't say
+ * whether an aircraft is on the ground), and the ones nearby but flying away are no risk.</p>
+ *
+ * <p>This class is not thread safe, the caller must synchronize.</p>
+ */
+final class CollisionAlerter {
+    /**
+     * Aircraft further away are ignored. Two aircraft at 250 km/h need 36 seconds for it.
+     */
+    static final double RANGE = 5000; // m
+
+    static final int MAX_CANDIDATES = 32;
+
+    // The aircraft must come that close to raise an alert.
+    private static final double HORIZONTAL_RADIUS = 300; // m
+    private static final double VERTICAL_RADIUS = 150; // m
+
+    // Slower relative motion is within the errors of the positions.
+    private static final double MIN_SPEED = 2; // m/s
+
+    // The time to the CPA for each alert level, like FLARM.
+    private static final double LOW_TIME = 18; // s
+    private static final double IMPORTANT_TIME = 12; // s
+    private static final double URGENT_TIME = 8; // s
+
+    private final Aircraft[] mCandidates = new Aircraft[MAX_CANDIDATES];
+    private final int[] mLevels = new int[MAX_CANDIDATES];
+    private final double[] mDistances = new double[MAX_CANDIDATES];
+    private final double[] mTimes = new double[MAX_CANDIDATES];
+
+    // The horizontal distance to the viewer at the last update.
+    private final double[] mRanges = new double[MAX_CANDIDATES];
+    private int mCount;
+
+    // The velocity of the viewer in m/s.
+    private double mViewerEast;
+    private double mViewerNorth;
+
+    private final float[] mCoordinates = new float[3];
+    private CollisionAlert mAlert;
+
+    private long mUpdateCount;
+    private long mLatencySum;
+    private long mLatencyMax;
+
+    /**
+     * Sets the velocity of the viewer.
+     *
+     * @param speed the ground speed in m/s.
+     * @param bearing the track in degrees.
+     */
+    void setViewerVelocity(double speed, double bearing) {
+        mViewerEast = speed * Math.sin(Math.toRadians(bearing));
+        mViewerNorth = speed * Math.cos(Math.toRadians(bearing));
+    }
+
+    /**
+     * Updates the CPA of the aircraft after its new beacon.
+     *
+     * @return true if the most urgent alert has changed.
+     */
+    boolean update(Aircraft aircraft, LocalTangentPlane plane) {
+        final Estimate estimate = aircraft.getEstimate();
+        plane.project(estimate.mLatitude, estimate.mLongitude, estimate.mAltitude, mCoordinates,
+                0);
+        final double east = mCoordinates[0];
+        final double north = mCoordinates[1];
+        final double up = mCoordinates[2];
+        final double range = Math.hypot(east, north);
+        int index = indexOf(aircraft);
+        if (range > RANGE || estimate.mGroundSpeed == 0) {
+            if (index >= 0) {
+                removeAt(index);
+                return updateAlert();
+            }
+            return false;
+        }
+        if (index < 0) {
+            if (mCount < MAX_CANDIDATES) {
+                index = mCount;
+                ++mCount;
+            } else {
+                // Replace the farthest one if this one is closer.
+                index = 0;
+                for (int i = 1; i < mCount; ++i) {
+                    if (mRanges[i] > mRanges[index]) {
+                        index = i;
+                    }
+                }
+                if (mRanges[index] <= range) {
+                    return false;
+                }
+            }
+            mCandidates[index] = aircraft;
+        }
+        mRanges[index] = range;
+
+        // The relative velocity. The vertical speed of the viewer is unknown.
+        double velocityEast = -mViewerEast;
+        double velocityNorth = -mViewerNorth;
+        if (estimate.mHeading != 0) {
+            final double speed = estimate.mGroundSpeed / 3.6;
+            velocityEast += speed * Math.sin(Math.toRadians(estimate.mHeading));
+            velocityNorth += speed * Math.cos(Math.toRadians(estimate.mHeading));
+        }
+        final double velocityUp = estimate.mClimbRate;
+
+        final double speedSquared = velocityEast * velocityEast + velocityNorth * velocityNorth
+                + velocityUp * velocityUp;
+        // Negative if the range is decreasing.
+        final double rangeRate = east * velocityEast + north * velocityNorth + up * velocityUp;
+        double time = 0;
+        double distance = range;
+        double height = up;
+        int level = 0;
+        if (speedSquared >= MIN_SPEED * MIN_SPEED && rangeRate < 0) {
+            time = -rangeRate / speedSquared;
+            distance = Math.hypot(east + velocityEast * time, north + velocityNorth * time);
+            height = up + velocityUp * time;
+        }
+        if (time > 0 && distance < HORIZONTAL_RADIUS && Math.abs(height) < VERTICAL_RADIUS) {
+            if (time <= URGENT_TIME) {
+                level = CollisionAlert.LEVEL_URGENT;
+            } else if (time <= IMPORTANT_TIME) {
+                level = CollisionAlert.LEVEL_IMPORTANT;
+            } else if (time <= LOW_TIME) {
+                level = CollisionAlert.LEVEL_LOW;
+            }
+        }
+        mLevels[index] = level;
+        mDistances[index] = distance;
+        mTimes[index] = time;
+        return updateAlert();
+    }
+
+    /**
+     * Updates all aircraft after the viewer has moved.
+     *
+     * @param nearby the targets within {@link #RANGE}, to find the new candidates.
+     * @return true if the most urgent alert has changed.
+     */
+    boolean updateAll(LocalTangentPlane plane, List<Target> nearby) {
+        boolean changed = false;
+        // Backwards, as the far ones are removed.
+        for (int i = mCount - 1; i >= 0; --i) {
+            changed |= update(mCandidates[i], plane);
+        }
+        for (Target target : nearby) {
+            if (target instanceof Aircraft && indexOf(target) < 0) {
+                changed |= update((Aircraft) target, plane);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Forgets the target. Does nothing if it is not a candidate.
+     *
+     * @return true if the most urgent alert has changed.
+     */
+    boolean remove(Target target) {
+        final int index = indexOf(target);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return updateAlert();
+    }
+
+    void clear() {
+        for (int i = 0; i < mCount; ++i) {
+            mCandidates[i] = null;
+        }
+        mCount = 0;
+        mAlert = null;
+        mUpdateCount = 0;
+        mLatencySum = 0;
+        mLatencyMax = 0;
+    }
+
+    CollisionAlert getAlert() {
+        return mAlert;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Adds the time from the arrival of a beacon until its alert was ready.
+     */
+    void addLatency(long nanos) {
+        ++mUpdateCount;
+        mLatencySum += nanos;
+        mLatencyMax = Math.max(mLatencyMax, nanos);
+    }
+
+    /**
+     * Returns the mean latency in milliseconds or NaN if there was no beacon yet.
+     */
+    double getLatencyMean() {
+        return mUpdateCount == 0 ? Double.NaN : mLatencySum * 1e-6 / mUpdateCount;
+    }
+
+    /**
+     * Returns the maximum latency in milliseconds.
+     */
+    double getLatencyMax() {
+        return mLatencyMax * 1e-6;
+    }
+
+    private int indexOf(Target target) {
+        // There are only a few candidates, a linear search is faster than hashing.
+        for (int i = 0; i < mCount; ++i) {
+            if (mCandidates[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        --mCount;
+        mCandidates[index] = mCandidates[mCount];
+        mLevels[index] = mLevels[mCount];
+        mDistances[index] = mDistances[mCount];
+        mTimes[index] = mTimes[mCount];
+        mRanges[index] = mRanges[mCount];
+        mCandidates[mCount] = null;
+    }
+
+    /**
+     * Finds the most urgent alert: the highest level, then the shortest time.
+     *
+     * @return true if its aircraft or its level has changed.
+     */
+    private boolean updateAlert() {
+        int best = -1;
+        for (int i = 0; i < mCount; ++i) {
+            if (mLevels[i] == 0) {
+                continue;
+            }
+            if (best < 0 || mLevels[i] > mLevels[best]
+                    || mLevels[i] == mLevels[best] && mTimes[i] < mTimes[best]) {
+                best = i;
+            }
+        }
+        final CollisionAlert previous = mAlert;
+        if (best < 0) {
+            mAlert = null;
+            return previous != null;
+        }
+        mAlert = new CollisionAlert(mCandidates[best], mLevels[best], mDistances[best],
+                mTimes[best]);
+        return previous == null || previous.getAircraft() != mAlert.getAircraft()
+                || previous.getLevel() != mAlert.getLevel();
+    }
+}
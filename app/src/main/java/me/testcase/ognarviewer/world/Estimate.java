@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+/**
+ * The filtered position and motion of a target, the starting point of the prediction.
+ *
+ * <p>Beacons are noisy, so jumping to each new position makes the markers jump too. Instead, the
+ * new position is compared with the one predicted from the previous estimate (constant turn), and
+ * only a part of the difference (the residual) is applied. The velocity is corrected by the
+ * residual as well and then pulled towards the reported motion. This is an alpha-beta filter,
+ * i.e. a Kalman filter with constant gains.</p>
+ *
+ * <p>Applying the residual at once would still move the predicted marker by a part of it on each
+ * beacon. So the estimate also remembers the correction as an offset (the blend) which brings it
+ * back to where the previous estimate predicted the target, and the offset fades out over
+ * {@link #BLEND_TIME}, see {@link #blend(float, float, float, double, float[], int)}.</p>
+ *
+ * <p>Targets without a known heading (receivers, aircraft on the ground) are not filtered, and
+ * neither are positions too far from the prediction: they restart the estimate.</p>
+ *
+ * <p>Instances are immutable, see {@link Sample}.</p>
+ */
+final class Estimate {
+    // The part of the residual applied to the position (alpha).
+    private static final double POSITION_GAIN = 0.5;
+
+    // The part of the residual per second applied to the velocity (beta).
+    private static final double VELOCITY_GAIN = 0.2;
+
+    // The weight of the reported motion in the new velocity.
+    private static final double MOTION_GAIN = 0.5;
+
+    // Larger residuals are not noise, but e.g. a missed turn or a wrong beacon.
+    private static final double MAX_RESIDUAL = 1000; // m
+
+    // About the interval of the beacons of a flying aircraft.
+    static final double BLEND_TIME = 1.0; // seconds
+
+    static final Estimate EMPTY = new Estimate(0, 0, 0, 0, 0, 0, 0, 0, Double.NaN, 0, 0, 0);
+
+    final long mTime;
+    final double mLatitude;
+    final double mLongitude;
+    final double mAltitude;
+
+    /**
+     * The heading in degrees, 0 if unknown, 360 if North.
+     */
+    final double mHeading;
+
+    /**
+     * The ground speed in km/h.
+     */
+    final double mGroundSpeed;
+
+    /**
+     * The rate of climb in m/s.
+     */
+    final double mClimbRate;
+
+    /**
+     * The turn rate in deg/s.
+     */
+    final double mTurnRate;
+
+    /**
+     * The distance in meters between the predicted and the received position on the last update,
+     * NaN if it was not filtered.
+     */
+    final double mError;
+
+    /**
+     * The offset in meters (east, north, up) from the estimate to the previously predicted
+     * position at {@link #mTime}, fading out over {@link #BLEND_TIME}.
+     */
+    final float mBlendEast;
+    final float mBlendNorth;
+    final float mBlendUp;
+
+    private Estimate(long time, double lat, double lon, double alt, double heading,
+                     double groundSpeed, double climbRate, double turnRate, double error,
+                     float blendEast, float blendNorth, float blendUp) {
+        mTime = time;
+        mLatitude = lat;
+        mLongitude = lon;
+        mAltitude = alt;
+        mHeading = heading;
+        mGroundSpeed = groundSpeed;
+        mClimbRate = climbRate;
+        mTurnRate = turnRate;
+        mError = error;
+        mBlendEast = blendEast;
+        mBlendNorth = blendNorth;
+        mBlendUp = blendUp;
+    }
+
+    /**
+     * Returns the estimate updated with the new sample.
+     */
+    Estimate update(Sample sample) {
+        // The motion is optional in the beacons.
+        final double climbRate = Double.isNaN(sample.climbRate) ? 0 : sample.climbRate;
+        final double turnRate = Double.isNaN(sample.turnRate) ? 0 : sample.turnRate;
+
+        if (sample.time == mTime) {
+            // Only the motion has changed.
+            return new Estimate(mTime, mLatitude, mLongitude, mAltitude, sample.heading,
+                    sample.groundSpeed, climbRate, turnRate, mError, mBlendEast, mBlendNorth,
+                    mBlendUp);
+        }
+        final double age = (sample.time - mTime) * 0.001;
+        if (mHeading == 0 || sample.heading == 0 || age < 0 || age > World.MAX_PREDICTION_TIME
+                || Math.abs(mLatitude) > 89) {
+            return restart(sample, climbRate, turnRate);
+        }
+
+        // Where the previous estimate says the target is now, in meters from it.
+        final float[] offset = new float[3];
+        World.predict(mHeading, mGroundSpeed, mClimbRate, mTurnRate, age, offset, 0);
+        final double cos = Math.cos(Math.toRadians(mLatitude));
+        double longitudeDelta = sample.longitude - mLongitude;
+        if (longitudeDelta < -180) {
+            longitudeDelta += 360;
+        } else if (longitudeDelta > 180) {
+            longitudeDelta -= 360;
+        }
+        final double residualEast = toMeters(longitudeDelta) * cos - offset[0];
+        final double residualNorth = toMeters(sample.latitude - mLatitude) - offset[1];
+        final double residualUp = sample.altitude - mAltitude - offset[2];
+        final double error = Math.sqrt(residualEast * residualEast
+                + residualNorth * residualNorth + residualUp * residualUp);
+        if (error > MAX_RESIDUAL) {
+            return restart(sample, climbRate, turnRate);
+        }
+
+        // The predicted velocity, corrected by the residual...
+        final double track = Math.toRadians(mHeading + mTurnRate * age);
+        final double speed = mGroundSpeed / 3.6;
+        double velocityEast = speed * Math.sin(track) + VELOCITY_GAIN * residualEast / age;
+        double velocityNorth = speed * Math.cos(track) + VELOCITY_GAIN * residualNorth / age;
+        double velocityUp = mClimbRate + VELOCITY_GAIN * residualUp / age;
+
+        // ...and by the reported one.
+        final double reportedTrack = Math.toRadians(sample.heading);
+        final double reportedSpeed = sample.groundSpeed / 3.6;
+        velocityEast += MOTION_GAIN * (reportedSpeed * Math.sin(reportedTrack) - velocityEast);
+        velocityNorth += MOTION_GAIN * (reportedSpeed * Math.cos(reportedTrack) - velocityNorth);
+        velocityUp += MOTION_GAIN * (climbRate - velocityUp);
+
+        double heading = Math.toDegrees(Math.atan2(velocityEast, velocityNorth));
+        if (heading <= 0) {
+            heading += 360; // 0 means unknown.
+        }
+        double lon = mLongitude
+                + Math.toDegrees((offset[0] + POSITION_GAIN * residualEast) / World.EARTH_RADIUS)
+                / cos;
+        if (lon < -180) {
+            lon += 360;
+        } else if (lon > 180) {
+            lon -= 360;
+        }
+
+        // The marker continues from where it was, including the rest of the previous blend.
+        final float[] blend = {0, 0, 0};
+        blend(mBlendEast, mBlendNorth, mBlendUp, age, blend, 0);
+        return new Estimate(sample.time,
+                mLatitude + Math.toDegrees((offset[1] + POSITION_GAIN * residualNorth)
+                        / World.EARTH_RADIUS),
+                lon,
+                mAltitude + offset[2] + POSITION_GAIN * residualUp,
+                heading,
+                Math.hypot(velocityEast, velocityNorth) * 3.6,
+                velocityUp,
+                turnRate,
+                error,
+                (float) (blend[0] - POSITION_GAIN * residualEast),
+                (float) (blend[1] - POSITION_GAIN * residualNorth),
+                (float) (blend[2] - POSITION_GAIN * residualUp));
+    }
+
+    private static Estimate restart(Sample sample, double climbRate, double turnRate) {
+        return new Estimate(sample.time, sample.latitude, sample.longitude, sample.altitude,
+                sample.heading, sample.groundSpeed, climbRate, turnRate, Double.NaN, 0, 0, 0);
+    }
+
+    /**
+     * Adds the part of the blend which hasn't faded out yet to the x, y, z at the offset.
+     *
+     * @param age the time since the estimate in seconds.
+     */
+    static void blend(float east, float north, float up, double age, float[] coordinates,
+                      int offset) {
+        if (age >= BLEND_TIME) {
+            return;
+        }
+        final float weight = (float) (1 - Math.max(0, age) / BLEND_TIME);
+        coordinates[offset] += east * weight;
+        coordinates[offset + 1] += north * weight;
+        coordinates[offset + 2] += up * weight;
+    }
+
+    private static double toMeters(double degrees) {
+        return Math.toRadians(degrees) * World.EARTH_RADIUS;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * A hashed timer wheel to expire targets which haven't sent a beacon for too long.
+ *
+ * <p>Each slot is an intrusive doubly linked list of targets (see {@link Target#mExpiryNext}),
+ * so re-arming a target on each beacon is O(1) and doesn't allocate.</p>
+ *
+ * <p>This class is not thread safe, the caller must synchronize.</p>
+ */
+final class ExpiryWheel {
+    /**
+     * The resolution of the wheel in milliseconds.
+     */
+    private static final long TICK = 1000;
+
+    /**
+     * The number of slots, must be a power of two.
+     *
+     * <p>Deadlines further than one revolution are allowed, they just stay in their slot for one
+     * more revolution.</p>
+     */
+    private static final int SLOT_COUNT = 512;
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final Target[] mSlots = new Target[SLOT_COUNT];
+
+    /**
+     * The last tick processed by {@link #expire(long, List)}.
+     */
+    private long mCurrentTick = NOT_STARTED;
+
+    /**
+     * Schedules the target to expire at the given time, replacing the previous deadline if any.
+     *
+     * @param deadline time in milliseconds when the target should expire.
+     * @param now the current time in milliseconds.
+     */
+    public void schedule(Target target, long deadline, long now) {
+        if (mCurrentTick == NOT_STARTED) {
+            mCurrentTick = now / TICK - 1;
+        }
+        cancel(target);
+        // A deadline in the past goes to the next tick, otherwise it would wait for a revolution.
+        final long tick = Math.max(deadline / TICK, mCurrentTick + 1);
+        final int slot = (int) (tick & (SLOT_COUNT - 1));
+        target.mExpiryDeadline = deadline;
+        target.mExpirySlot = slot;
+        target.mExpiryNext = mSlots[slot];
+        if (mSlots[slot] != null) {
+            mSlots[slot].mExpiryPrevious = target;
+        }
+        mSlots[slot] = target;
+    }
+
+    /**
+     * Removes the target from the wheel. Does nothing if it wasn't scheduled.
+     */
+    public void cancel(Target target) {
+        if (target.mExpirySlot < 0) {
+            return;
+        }
+        if (target.mExpiryPrevious == null) {
+            mSlots[target.mExpirySlot] = target.mExpiryNext;
+        } else {
+            target.mExpiryPrevious.mExpiryNext = target.mExpiryNext;
+        }
+        if (target.mExpiryNext != null) {
+            target.mExpiryNext.mExpiryPrevious = target.mExpiryPrevious;
+        }
+        target.mExpiryNext = null;
+        target.mExpiryPrevious = null;
+        target.mExpirySlot = -1;
+    }
+
+    /**
+     * Advances the wheel to the given time.
+     *
+     * <p>All targets whose deadline has passed are removed from the wheel and appended to the
+     * list (if not null).</p>
+     *
+     * @return the number of expired targets.
+     */
+    public int expire(long now, @Nullable List<Target> expired) {
+        final long nowTick = now / TICK;
+        if (mCurrentTick == NOT_STARTED || nowTick <= mCurrentTick) {
+            return 0;
+        }
+        // If the clock jumped by more than a revolution, visiting each slot once is enough.
+        final long firstTick = Math.max(mCurrentTick + 1, nowTick - SLOT_COUNT + 1);
+        int count = 0;
+        for (long tick = firstTick; tick <= nowTick; ++tick) {
+            Target target = mSlots[(int) (tick & (SLOT_COUNT - 1))];
+            while (target != null) {
+                final Target next = target.mExpiryNext;
+                if (target.mExpiryDeadline <= now) {
+                    cancel(target);
+                    if (expired != null) {
+                        expired.add(target);
+                    }
+                    ++count;
+                }
+                target = next;
+            }
+        }
+        mCurrentTick = nowTick;
+        return count;
+    }
+
+    public void clear() {
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            while (mSlots[i] != null) {
+                cancel(mSlots[i]);
+            }
+        }
+    }
+}
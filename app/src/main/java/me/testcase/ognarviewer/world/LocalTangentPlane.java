@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+/**
+ * The east-north-up plane touching the WGS 84 ellipsoid at the viewer.
+ *
+ * <p>Positions are converted to ECEF (earth-centered, earth-fixed) coordinates and then rotated
+ * into the plane, so the earth curvature is taken into account: far targets are lower than their
+ * altitude suggests.</p>
+ *
+ * <p>Instances are immutable. A new one is created whenever the viewer moves, so they can be used
+ * as the key of cached coordinates.</p>
+ */
+final class LocalTangentPlane {
+    private static final double SEMI_MAJOR_AXIS = 6378137; // WGS 84
+    private static final double FLATTENING = 1 / 298.257223563; // WGS 84
+    private static final double ECCENTRICITY_SQUARED = FLATTENING * (2 - FLATTENING);
+
+    private final double mGeoidHeight;
+    private final double mSinLatitude;
+    private final double mCosLatitude;
+    private final double mSinLongitude;
+    private final double mCosLongitude;
+    private final double mX;
+    private final double mY;
+    private final double mZ;
+
+    /**
+     * @param lat the latitude of the viewer.
+     * @param lon the longitude of the viewer.
+     * @param alt the altitude of the viewer over the ellipsoid.
+     * @param geoidHeight the height of the geoid over the ellipsoid at the viewer. It is used for
+     *     all targets, as it changes slowly enough within the visible range.
+     */
+    LocalTangentPlane(double lat, double lon, double alt, double geoidHeight) {
+        mGeoidHeight = geoidHeight;
+        mSinLatitude = Math.sin(Math.toRadians(lat));
+        mCosLatitude = Math.cos(Math.toRadians(lat));
+        mSinLongitude = Math.sin(Math.toRadians(lon));
+        mCosLongitude = Math.cos(Math.toRadians(lon));
+        final double n = primeVerticalRadius(mSinLatitude);
+        mX = (n + alt) * mCosLatitude * mCosLongitude;
+        mY = (n + alt) * mCosLatitude * mSinLongitude;
+        mZ = (n * (1 - ECCENTRICITY_SQUARED) + alt) * mSinLatitude;
+    }
+
+    /**
+     * Stores the east, north and up offsets of the position at the given offset.
+     *
+     * @param alt the altitude over MSL.
+     */
+    void project(double lat, double lon, double alt, float[] coordinates, int offset) {
+        final double sinLatitude = Math.sin(Math.toRadians(lat));
+        final double cosLatitude = Math.cos(Math.toRadians(lat));
+        final double sinLongitude = Math.sin(Math.toRadians(lon));
+        final double cosLongitude = Math.cos(Math.toRadians(lon));
+        final double n = primeVerticalRadius(sinLatitude);
+        final double h = alt + mGeoidHeight;
+        final double dx = (n + h) * cosLatitude * cosLongitude - mX;
+        final double dy = (n + h) * cosLatitude * sinLongitude - mY;
+        final double dz = (n * (1 - ECCENTRICITY_SQUARED) + h) * sinLatitude - mZ;
+        coordinates[offset] = (float) (-mSinLongitude * dx + mCosLongitude * dy);
+        coordinates[offset + 1] = (float) (-mSinLatitude * mCosLongitude * dx
+                - mSinLatitude * mSinLongitude * dy + mCosLatitude * dz);
+        coordinates[offset + 2] = (float) (mCosLatitude * mCosLongitude * dx
+                + mCosLatitude * mSinLongitude * dy + mSinLatitude * dz);
+    }
+
+    private static double primeVerticalRadius(double sinLatitude) {
+        return SEMI_MAJOR_AXIS / Math.sqrt(1 - ECCENTRICITY_SQUARED * sinLatitude * sinLatitude);
+    }
+}
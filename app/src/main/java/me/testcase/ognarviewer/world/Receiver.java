@@ -17,6 +17,8 @@
 
 package me.testcase.ognarviewer.world;
 
+import java.util.Objects;
+
 /**
  * A receiver or non-moving Target.
  */
@@ -48,7 +50,10 @@ public final class Receiver extends Target {
      * Sets the version string.
      */
     public void setVersion(String version) {
-        mVersion = version;
+        if (!Objects.equals(version, mVersion)) {
+            mVersion = version;
+            markChanged();
+        }
     }
 
     /**
@@ -62,7 +67,10 @@ public final class Receiver extends Target {
      * Sets NTP offset in ms.
      */
     public void setNtpOffset(double offset) {
-        mNtpOffset = offset;
+        if (Double.compare(offset, mNtpOffset) != 0) {
+            mNtpOffset = offset;
+            markChanged();
+        }
     }
 
     /**
@@ -76,7 +84,10 @@ public final class Receiver extends Target {
      * Sets the free RAM in MB.
      */
     public void setFreeRam(float amount) {
-        mFreeRam = amount;
+        if (Float.compare(amount, mFreeRam) != 0) {
+            mFreeRam = amount;
+            markChanged();
+        }
     }
 
     /**
@@ -90,7 +101,10 @@ public final class Receiver extends Target {
      * Sets the total RAM in MB.
      */
     public void setTotalRam(float amount) {
-        mTotalRam = amount;
+        if (Float.compare(amount, mTotalRam) != 0) {
+            mTotalRam = amount;
+            markChanged();
+        }
     }
 
     /**
@@ -104,7 +118,10 @@ public final class Receiver extends Target {
      * Sets the CPU temperature in °C.
      */
     public void setCpuTemperature(float temperature) {
-        mCpuTemperature = temperature;
+        if (Float.compare(temperature, mCpuTemperature) != 0) {
+            mCpuTemperature = temperature;
+            markChanged();
+        }
     }
 
     /**
@@ -118,6 +135,9 @@ public final class Receiver extends Target {
      * Sets the CPU load.
      */
     public void setCpuLoad(double load) {
-        mCpuLoad = load;
+        if (Double.compare(load, mCpuLoad) != 0) {
+            mCpuLoad = load;
+            markChanged();
+        }
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import me.testcase.ognarviewer.CalibratedClock;
+
+/**
+ * The receivers of the previous session.
+ *
+ * <p>Receivers send their position only every five minutes, so without the cache the receiver
+ * layer would fill in slowly after each start. The cache is a small binary file: a header with the
+ * time it was saved and then one record per receiver.</p>
+ *
+ * <p>Not everything is trusted. Receivers rarely move, so positions are restored up to
+ * {@link #MAX_POSITION_AGE} old, but the status (RAM, CPU...) changes all the time and is only
+ * restored if the cache is younger than {@link #MAX_STATUS_AGE}.</p>
+ */
+public final class ReceiverCache {
+    private static final String TAG = "ReceiverCache";
+
+    private static final int MAGIC = 0x4F524331; // "ORC1"
+
+    static final long MAX_POSITION_AGE = 24 * 60 * 60 * 1000; // ms
+    static final long MAX_STATUS_AGE = 60 * 60 * 1000; // ms
+
+    private final AtomicFile mFile;
+
+    // A single thread, so the reads and the writes never overlap.
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+
+    public ReceiverCache(File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Saves the receivers of the world.
+     *
+     * <p>The receivers are encoded on the calling thread, where they are updated, and the file is
+     * written in the background.</p>
+     */
+    @MainThread
+    public void save(World world, long now) {
+        final byte[] data = encode(world, now);
+        mExecutor.execute(() -> write(data));
+    }
+
+    /**
+     * Reads the file in the background and then adds the trusted receivers to the world on the
+     * main thread, where the world is updated.
+     *
+     * <p>Nothing is added if the world has switched to the demo mode in the meantime.</p>
+     */
+    @MainThread
+    public void loadInBackground(World world) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mExecutor.execute(() -> {
+            final byte[] data = read();
+            if (data == null) {
+                return;
+            }
+            handler.post(() -> {
+                if (!world.isDemo()) {
+                    apply(data, world, CalibratedClock.currentTimeMillis());
+                }
+            });
+        });
+    }
+
+    /**
+     * Adds the trusted receivers of the cache to the world, reading the file on the calling
+     * thread.
+     *
+     * @return the number of restored receivers.
+     */
+    public int load(World world, long now) {
+        final byte[] data = read();
+        return data != null ? apply(data, world, now) : 0;
+    }
+
+    @Nullable
+    private byte[] read() {
+        try {
+            // The file is small, so it's read at once rather than record by record.
+            return mFile.readFully();
+        } catch (FileNotFoundException e) {
+            return null; // First start.
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return null;
+        }
+    }
+
+    private static int apply(byte[] data, World world, long now) {
+        try {
+            return decode(data, world, now);
+        } catch (IOException e) {
+            // A truncated or foreign file, it will be overwritten on the next save.
+            Log.e(TAG, e.toString());
+            return 0;
+        }
+    }
+
+    static byte[] encode(World world, long now) {
+        final Target[] targets = world.getTargets(new Target[0]);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int count = 0;
+            for (Target target : targets) {
+                if (target instanceof Receiver && target.getPositionTime() != 0) {
+                    ++count;
+                }
+            }
+            out.writeInt(MAGIC);
+            out.writeLong(now);
+            out.writeInt(count);
+            for (Target target : targets) {
+                if (!(target instanceof Receiver) || target.getPositionTime() == 0) {
+                    continue;
+                }
+                final Receiver receiver = (Receiver) target;
+                final Sample sample = receiver.getSample();
+                out.writeUTF(receiver.getCallSign());
+                out.writeDouble(sample.latitude);
+                out.writeDouble(sample.longitude);
+                out.writeFloat((float) sample.altitude);
+                out.writeLong(sample.time);
+                out.writeUTF(receiver.getVersion() == null ? "" : receiver.getVersion());
+                out.writeDouble(receiver.getNtpOffset());
+                out.writeFloat(receiver.getFreeRam());
+                out.writeFloat(receiver.getTotalRam());
+                out.writeFloat(receiver.getCpuTemperature());
+                out.writeDouble(receiver.getCpuLoad());
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e); // Not possible for a ByteArrayOutputStream.
+        }
+        return bytes.toByteArray();
+    }
+
+    static int decode(byte[] data, World world, long now) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a receiver cache");
+        }
+        final long savedTime = in.readLong();
+        final boolean statusTrusted = now - savedTime <= MAX_STATUS_AGE;
+        final int count = in.readInt();
+        int restored = 0;
+        for (int i = 0; i < count; ++i) {
+            final String callSign = in.readUTF();
+            final double lat = in.readDouble();
+            final double lon = in.readDouble();
+            final float alt = in.readFloat();
+            final long time = in.readLong();
+            final String version = in.readUTF();
+            final double ntpOffset = in.readDouble();
+            final float freeRam = in.readFloat();
+            final float totalRam = in.readFloat();
+            final float cpuTemperature = in.readFloat();
+            final double cpuLoad = in.readDouble();
+            if (now - time > MAX_POSITION_AGE) {
+                continue;
+            }
+            final Receiver receiver = world.restoreReceiver(callSign, lat, lon, alt, time, now);
+            if (receiver == null) {
+                continue; // Already received in this session.
+            }
+            ++restored;
+            if (statusTrusted) {
+                receiver.setVersion(version.isEmpty() ? null : version);
+                receiver.setNtpOffset(ntpOffset);
+                receiver.setFreeRam(freeRam);
+                receiver.setTotalRam(totalRam);
+                receiver.setCpuTemperature(cpuTemperature);
+                receiver.setCpuLoad(cpuLoad);
+            }
+        }
+        return restored;
+    }
+
+    void write(byte[] data) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            stream.write(data);
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+/**
+ * An immutable snapshot of the position and the motion of a target.
+ *
+ * <p>A target publishes a new sample with a single reference write, so a reader on another
+ * thread never sees e.g. the new latitude with the old longitude.</p>
+ */
+public final class Sample {
+    static final Sample EMPTY = new Sample(0, 0, 0, 0, 0, 0, 0, 0);
+
+    public final double latitude;
+    public final double longitude;
+
+    /**
+     * The altitude in meters over MSL.
+     */
+    public final double altitude;
+
+    /**
+     * The time of the position in milliseconds.
+     */
+    public final long time;
+
+    /**
+     * The heading in degrees, 0 if unknown, 360 if North.
+     */
+    public final int heading;
+
+    /**
+     * The ground speed in km/h.
+     */
+    public final int groundSpeed;
+
+    /**
+     * The rate of climb in m/s.
+     */
+    public final float climbRate;
+
+    /**
+     * The turn rate in deg/s.
+     */
+    public final double turnRate;
+
+    Sample(double lat, double lon, double alt, long timestamp, int track, int speed,
+           float climb, double turn) {
+        latitude = lat;
+        longitude = lon;
+        altitude = alt;
+        time = timestamp;
+        heading = track;
+        groundSpeed = speed;
+        climbRate = climb;
+        turnRate = turn;
+    }
+}
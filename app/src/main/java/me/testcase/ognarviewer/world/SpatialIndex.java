@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import java.util.List;
+
+/**
+ * A geographic grid to find targets near a point without scanning all of them.
+ *
+ * <p>The globe is divided into cells of {@link #CELL_SIZE} degrees. Only the non-empty cells
+ * matter, so they are hashed into a fixed number of buckets. Each bucket is an intrusive doubly
+ * linked list of targets (see {@link Target#mGridNext}), so moving a target doesn't allocate.</p>
+ *
+ * <p>Distances are horizontal and use an equirectangular approximation on a sphere: the
+ * longitude is scaled by the cosine of the latitude of the query point. That is precise enough to
+ * select the cells and the candidates near it.</p>
+ *
+ * <p>This class is not thread safe, the caller must synchronize.</p>
+ */
+final class SpatialIndex {
+    /**
+     * The cell size in degrees, about 11 km in latitude.
+     */
+    private static final double CELL_SIZE = 0.1;
+
+    private static final int LATITUDE_CELLS = (int) Math.round(180 / CELL_SIZE);
+    private static final int LONGITUDE_CELLS = (int) Math.round(360 / CELL_SIZE);
+
+    /**
+     * The number of buckets, must be a power of two.
+     */
+    private static final int BUCKET_COUNT = 4096;
+
+    private final Target[] mBuckets = new Target[BUCKET_COUNT];
+
+    /**
+     * Inserts the target or moves it to its new cell after its position has changed.
+     */
+    public void update(Target target) {
+        final Sample sample = target.getSample();
+        final int cell = cell(latitudeCell(sample.latitude), longitudeCell(sample.longitude));
+        if (cell == target.mGridCell) {
+            return; // Still in the same cell, that's the common case.
+        }
+        remove(target);
+        final int bucket = bucket(cell);
+        target.mGridCell = cell;
+        target.mGridNext = mBuckets[bucket];
+        if (mBuckets[bucket] != null) {
+            mBuckets[bucket].mGridPrevious = target;
+        }
+        mBuckets[bucket] = target;
+    }
+
+    /**
+     * Removes the target from the index. Does nothing if it wasn't inserted.
+     */
+    public void remove(Target target) {
+        if (target.mGridCell < 0) {
+            return;
+        }
+        if (target.mGridPrevious == null) {
+            mBuckets[bucket(target.mGridCell)] = target.mGridNext;
+        } else {
+            target.mGridPrevious.mGridNext = target.mGridNext;
+        }
+        if (target.mGridNext != null) {
+            target.mGridNext.mGridPrevious = target.mGridPrevious;
+        }
+        target.mGridNext = null;
+        target.mGridPrevious = null;
+        target.mGridCell = -1;
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            while (mBuckets[i] != null) {
+                remove(mBuckets[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends all targets within the given horizontal distance (in meters) to the list.
+     */
+    public void queryRadius(double lat, double lon, double radius, List<Target> out) {
+        final int start = out.size();
+        final double latitudeDelta = Math.toDegrees(radius / World.EARTH_RADIUS);
+        final double cos = Math.cos(Math.toRadians(lat));
+        // Near the poles, all longitudes are close.
+        final double longitudeDelta = cos > 0 ? latitudeDelta / cos : 360;
+        collect(lat - latitudeDelta, lat + latitudeDelta, lon - longitudeDelta,
+                lon + longitudeDelta, out);
+
+        // Remove the candidates from the corners of the bounding box.
+        final double radiusSquared = radius * radius;
+        int size = start;
+        for (int i = start; i < out.size(); ++i) {
+            final Target target = out.get(i);
+            if (distanceSquared(lat, lon, cos, target) <= radiusSquared) {
+                out.set(size, target);
+                ++size;
+            }
+        }
+        out.subList(size, out.size()).clear();
+    }
+
+    /**
+     * Appends all targets inside the given box to the list.
+     *
+     * <p>If {@code west} is greater than {@code east}, the box crosses the antimeridian.</p>
+     */
+    public void queryBox(double south, double west, double north, double east, List<Target> out) {
+        if (west > east) {
+            east += 360;
+        }
+        final int start = out.size();
+        collect(south, north, west, east, out);
+
+        int size = start;
+        for (int i = start; i < out.size(); ++i) {
+            final Target target = out.get(i);
+            final Sample sample = target.getSample();
+            final double lat = sample.latitude;
+            double lon = sample.longitude;
+            if (lon < west) {
+                lon += 360;
+            }
+            if (south <= lat && lat <= north && lon <= east) {
+                out.set(size, target);
+                ++size;
+            }
+        }
+        out.subList(size, out.size()).clear();
+    }
+
+    /**
+     * Returns the square of the horizontal distance in meters between the point and the target.
+     *
+     * @param cos the cosine of {@code lat}.
+     */
+    static double distanceSquared(double lat, double lon, double cos, Target target) {
+        final Sample sample = target.getSample();
+        double longitudeDelta = sample.longitude - lon;
+        if (longitudeDelta < -180) {
+            longitudeDelta += 360;
+        } else if (longitudeDelta > 180) {
+            longitudeDelta -= 360;
+        }
+        final double x = World.EARTH_RADIUS * Math.toRadians(longitudeDelta) * cos;
+        final double y = World.EARTH_RADIUS * Math.toRadians(sample.latitude - lat);
+        return x * x + y * y;
+    }
+
+    /**
+     * Appends all targets from the cells overlapping the given box to the list.
+     *
+     * <p>The longitudes may be outside of [-180, 180], they are wrapped.</p>
+     */
+    private void collect(double south, double north, double west, double east, List<Target> out) {
+        final int southCell = latitudeCell(south);
+        final int northCell = latitudeCell(north);
+        final int westCell = (int) Math.floor((west + 180) / CELL_SIZE);
+        final int width = Math.min((int) Math.floor((east + 180) / CELL_SIZE) - westCell + 1,
+                LONGITUDE_CELLS);
+        final long cellCount = (long) (northCell - southCell + 1) * width;
+
+        if (cellCount >= BUCKET_COUNT) {
+            // Visiting each bucket once is cheaper than visiting each cell.
+            for (int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+                for (Target target = mBuckets[bucket]; target != null;
+                        target = target.mGridNext) {
+                    final int latitudeCell = target.mGridCell / LONGITUDE_CELLS;
+                    final int longitudeCell = target.mGridCell % LONGITUDE_CELLS;
+                    if (southCell <= latitudeCell && latitudeCell <= northCell
+                            && Math.floorMod(longitudeCell - westCell, LONGITUDE_CELLS) < width) {
+                        out.add(target);
+                    }
+                }
+            }
+            return;
+        }
+
+        for (int latitudeCell = southCell; latitudeCell <= northCell; ++latitudeCell) {
+            for (int i = 0; i < width; ++i) {
+                final int cell = cell(latitudeCell,
+                        Math.floorMod(westCell + i, LONGITUDE_CELLS));
+                // Several cells share a bucket, so skip the targets from the other ones.
+                for (Target target = mBuckets[bucket(cell)]; target != null;
+                        target = target.mGridNext) {
+                    if (target.mGridCell == cell) {
+                        out.add(target);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int latitudeCell(double lat) {
+        final int cell = (int) Math.floor((lat + 90) / CELL_SIZE);
+        return Math.max(0, Math.min(cell, LATITUDE_CELLS - 1));
+    }
+
+    private static int longitudeCell(double lon) {
+        return Math.floorMod((int) Math.floor((lon + 180) / CELL_SIZE), LONGITUDE_CELLS);
+    }
+
+    private static int cell(int latitudeCell, int longitudeCell) {
+        return latitudeCell * LONGITUDE_CELLS + longitudeCell;
+    }
+
+    private static int bucket(int cell) {
+        // Fibonacci hashing, neighbouring cells end up in different buckets.
+        return (cell * 0x9E3779B1) >>> (32 - Integer.numberOfTrailingZeros(BUCKET_COUNT));
+    }
+}
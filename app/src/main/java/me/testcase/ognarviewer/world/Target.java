@@ -52,10 +52,32 @@ public abstract class Target {
     };
 
     private final String mCallSign;
-    private volatile double mLatitude;
-    private volatile double mLongitude;
-    private volatile double mAltitude;
-    private volatile long mPositionTime;
+    private volatile Sample mSample = Sample.EMPTY;
+    private volatile Estimate mEstimate = Estimate.EMPTY;
+
+    // Node of the intrusive list used by ExpiryWheel, guarded by the World lock.
+    Target mExpiryNext;
+    Target mExpiryPrevious;
+    long mExpiryDeadline;
+    int mExpirySlot = -1;
+
+    // Node of the intrusive list used by SpatialIndex, guarded by the World lock.
+    Target mGridNext;
+    Target mGridPrevious;
+    int mGridCell = -1;
+
+    // The slot in the world's TargetStore (if any), written with the store lock held.
+    volatile TargetStore mStore;
+    int mSlot = -1;
+
+    // The world version of the last change, assigned by the TargetStore.
+    volatile long mChangeVersion;
+
+    // The block in the world's TrackHistory (if any), guarded by the history lock.
+    int mTrackBlock = -1;
+
+    // Written by World.getTargetCoordinates(), a race only means a recomputation.
+    volatile World.LocalPosition mLocalPosition;
 
     public Target(String callSign) {
         mCallSign = callSign;
@@ -67,31 +89,98 @@ public abstract class Target {
 
     public abstract int getColor();
 
+    /**
+     * Returns the version of the world in which the target has changed the last time, see
+     * {@link World#getVersion()}.
+     */
+    public final long getChangeVersion() {
+        return mChangeVersion;
+    }
+
+    /**
+     * Tells the world the target has changed. The position and the motion do it on their own.
+     */
+    final void markChanged() {
+        final TargetStore store = mStore;
+        if (store != null) {
+            store.touch(this);
+        }
+    }
+
+    /**
+     * Returns the position and the motion of the target.
+     *
+     * <p>Read the sample once and then use its fields to get a consistent picture, the other
+     * getters may each return a value from a different sample.</p>
+     */
+    public final Sample getSample() {
+        return mSample;
+    }
+
+    /**
+     * Returns the filtered position and motion, see {@link Estimate}.
+     */
+    final Estimate getEstimate() {
+        return mEstimate;
+    }
+
     public final double getLatitude() {
-        return mLatitude;
+        return mSample.latitude;
     }
 
     public final double getLongitude() {
-        return mLongitude;
+        return mSample.longitude;
     }
 
     /**
      * Returns the altitude in meters over MSL.
      */
     public final double getAltitude() {
-        return mAltitude;
+        return mSample.altitude;
     }
 
     public final long getPositionTime() {
-        return mPositionTime;
+        return mSample.time;
+    }
+
+    /**
+     * Sets the position if it is newer than the current one, keeping the motion.
+     */
+    public final synchronized void setPosition(double lat, double lon, double alt,
+                                               long timestamp) {
+        final Sample sample = mSample;
+        if (timestamp > sample.time) {
+            publish(new Sample(lat, lon, alt, timestamp, sample.heading, sample.groundSpeed,
+                    sample.climbRate, sample.turnRate));
+        }
+    }
+
+    /**
+     * Sets the position and the motion at once if the position is newer than the current one.
+     */
+    final synchronized void setSample(Sample sample) {
+        if (sample.time > mSample.time) {
+            publish(sample);
+        }
+    }
+
+    /**
+     * Sets the motion, keeping the position.
+     */
+    final synchronized void updateMotion(int heading, int groundSpeed, float climbRate,
+                                         double turnRate) {
+        final Sample sample = mSample;
+        publish(new Sample(sample.latitude, sample.longitude, sample.altitude, sample.time,
+                heading, groundSpeed, climbRate, turnRate));
     }
 
-    public final void setPosition(double lat, double lon, double alt, long timestamp) {
-        if (timestamp > mPositionTime) {
-            mLatitude = lat;
-            mLongitude = lon;
-            mAltitude = alt;
-            mPositionTime = timestamp;
+    private void publish(Sample sample) {
+        final Estimate estimate = mEstimate.update(sample);
+        mSample = sample;
+        mEstimate = estimate;
+        final TargetStore store = mStore;
+        if (store != null) {
+            store.setEstimate(this, estimate);
         }
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import java.util.Arrays;
+
+/**
+ * A struct-of-arrays copy of the targets known to the world.
+ *
+ * <p>Each target occupies a slot, and each of its properties is stored in a separate primitive
+ * column indexed by the slot. Passes over all targets (like computing their coordinates on each
+ * frame) read a few contiguous arrays instead of chasing a pointer per target.</p>
+ *
+ * <p>The {@link Target} objects stay the source of truth for the UI, they write their changes
+ * through to their slot. The slots hold the filtered {@link Estimate}, not the raw sample, as
+ * that's what the coordinates are computed from. Freed slots are recycled, so the columns only
+ * grow up to the maximum number of simultaneously known targets.</p>
+ *
+ * <p>The columns duplicate the fields of the targets, so each target costs about 110 bytes more
+ * than without the store (see TargetStoreBenchmark in androidTest).</p>
+ *
+ * <p>All access must be synchronized on the store.</p>
+ */
+final class TargetStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The columns are accessed directly by the bulk passes of World.
+    Target[] mTargets = new Target[INITIAL_CAPACITY];
+    double[] mLatitudes = new double[INITIAL_CAPACITY];
+    double[] mLongitudes = new double[INITIAL_CAPACITY];
+    double[] mAltitudes = new double[INITIAL_CAPACITY];
+    long[] mPositionTimes = new long[INITIAL_CAPACITY];
+    double[] mHeadings = new double[INITIAL_CAPACITY];
+    double[] mGroundSpeeds = new double[INITIAL_CAPACITY];
+    double[] mClimbRates = new double[INITIAL_CAPACITY];
+    double[] mTurnRates = new double[INITIAL_CAPACITY];
+    // East, north and up of the blend of each estimate.
+    float[] mBlends = new float[INITIAL_CAPACITY * 3];
+
+    // The world version of the last change of each slot.
+    long[] mVersions = new long[INITIAL_CAPACITY];
+
+    // East, north and up of each slot, valid if the plane of the slot is the current one.
+    float[] mLocalCoordinates = new float[INITIAL_CAPACITY * 3];
+    LocalTangentPlane[] mPlanes = new LocalTangentPlane[INITIAL_CAPACITY];
+
+    /**
+     * Stack of the freed slots below {@link #mSize}.
+     */
+    private int[] mFreeSlots = new int[INITIAL_CAPACITY];
+    private int mFreeCount;
+
+    /**
+     * The number of slots ever used, i.e. the bulk passes must iterate up to it.
+     */
+    private int mSize;
+
+    private int mCount;
+
+    /**
+     * The world version, incremented on each change.
+     */
+    private long mVersion;
+
+    /**
+     * Assigns a slot to the target and copies its current state into it.
+     */
+    public synchronized void add(Target target) {
+        final int slot;
+        if (mFreeCount > 0) {
+            --mFreeCount;
+            slot = mFreeSlots[mFreeCount];
+        } else {
+            if (mSize == mTargets.length) {
+                grow();
+            }
+            slot = mSize;
+            ++mSize;
+        }
+        ++mCount;
+        mTargets[slot] = target;
+        target.mStore = this;
+        target.mSlot = slot;
+        write(slot, target.getEstimate());
+        stamp(slot);
+    }
+
+    /**
+     * Frees the slot of the target. Does nothing if the target has no slot.
+     */
+    public synchronized void remove(Target target) {
+        if (target.mStore != this) {
+            return;
+        }
+        final int slot = target.mSlot;
+        mTargets[slot] = null; // Let the bulk passes skip it and the GC collect the target.
+        mFreeSlots[mFreeCount] = slot;
+        ++mFreeCount;
+        --mCount;
+        ++mVersion;
+        target.mStore = null;
+        target.mSlot = -1;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mSize; ++i) {
+            if (mTargets[i] != null) {
+                mTargets[i].mStore = null;
+                mTargets[i].mSlot = -1;
+                mTargets[i] = null;
+            }
+        }
+        mSize = 0;
+        mFreeCount = 0;
+        mCount = 0;
+        ++mVersion;
+    }
+
+    /**
+     * Returns the number of targets in the store.
+     */
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of slots the bulk passes must iterate over. Some of them may be empty.
+     */
+    int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Copies the new estimate of the target into its slot. Does nothing if it has no slot.
+     */
+    public synchronized void setEstimate(Target target, Estimate estimate) {
+        if (target.mStore == this) {
+            write(target.mSlot, estimate);
+            stamp(target.mSlot);
+        }
+    }
+
+    /**
+     * Marks the target as changed. Does nothing if it has no slot.
+     */
+    public synchronized void touch(Target target) {
+        if (target.mStore == this) {
+            stamp(target.mSlot);
+        }
+    }
+
+    /**
+     * Returns the version of the last change, including additions and removals.
+     */
+    public synchronized long getVersion() {
+        return mVersion;
+    }
+
+    private void stamp(int slot) {
+        ++mVersion;
+        mVersions[slot] = mVersion;
+        mTargets[slot].mChangeVersion = mVersion;
+    }
+
+    private void write(int slot, Estimate estimate) {
+        mLatitudes[slot] = estimate.mLatitude;
+        mLongitudes[slot] = estimate.mLongitude;
+        mAltitudes[slot] = estimate.mAltitude;
+        mPositionTimes[slot] = estimate.mTime;
+        mHeadings[slot] = estimate.mHeading;
+        mGroundSpeeds[slot] = estimate.mGroundSpeed;
+        mClimbRates[slot] = estimate.mClimbRate;
+        mTurnRates[slot] = estimate.mTurnRate;
+        mBlends[slot * 3] = estimate.mBlendEast;
+        mBlends[slot * 3 + 1] = estimate.mBlendNorth;
+        mBlends[slot * 3 + 2] = estimate.mBlendUp;
+        mPlanes[slot] = null;
+    }
+
+    private void grow() {
+        final int capacity = mTargets.length * 2;
+        mTargets = Arrays.copyOf(mTargets, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mAltitudes = Arrays.copyOf(mAltitudes, capacity);
+        mPositionTimes = Arrays.copyOf(mPositionTimes, capacity);
+        mHeadings = Arrays.copyOf(mHeadings, capacity);
+        mGroundSpeeds = Arrays.copyOf(mGroundSpeeds, capacity);
+        mClimbRates = Arrays.copyOf(mClimbRates, capacity);
+        mTurnRates = Arrays.copyOf(mTurnRates, capacity);
+        mBlends = Arrays.copyOf(mBlends, capacity * 3);
+        mVersions = Arrays.copyOf(mVersions, capacity);
+        mLocalCoordinates = Arrays.copyOf(mLocalCoordinates, capacity * 3);
+        mPlanes = Arrays.copyOf(mPlanes, capacity);
+        mFreeSlots = Arrays.copyOf(mFreeSlots, capacity);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import java.util.Arrays;
+
+/**
+ * The recent positions of the aircraft, used to draw their trails.
+ *
+ * <p>Each aircraft gets a block of {@link #BLOCK_SIZE} fixes used as a ring buffer, so only the
+ * latest ones are kept. The blocks come from a pool of at most {@link #MAX_BLOCKS}: if all of them
+ * are taken, a new aircraft gets no trail until a block is freed by an expired one. Taking blocks
+ * from the aircraft which are still reporting would make all trails rotate and shrink. So the
+ * memory doesn't depend on the number of aircraft, and neither does the time to build the
+ * trails.</p>
+ *
+ * <p>Like in {@link TargetStore}, the fixes are stored in primitive columns, the fix {@code i} of
+ * the block {@code b} is at the index {@code b * BLOCK_SIZE + i}.</p>
+ *
+ * <p>All access must be synchronized on the history.</p>
+ */
+final class TrackHistory {
+    static final int BLOCK_SIZE = 32;
+    static final int MAX_BLOCKS = 256;
+
+    private static final int INITIAL_BLOCKS = 16;
+
+    private Target[] mOwners = new Target[INITIAL_BLOCKS];
+
+    /**
+     * The index of the next fix to write in each block.
+     */
+    private int[] mHeads = new int[INITIAL_BLOCKS];
+
+    /**
+     * The number of valid fixes in each block.
+     */
+    private int[] mLengths = new int[INITIAL_BLOCKS];
+
+    private long[] mTimes = new long[INITIAL_BLOCKS * BLOCK_SIZE];
+    private double[] mLatitudes = new double[INITIAL_BLOCKS * BLOCK_SIZE];
+    private double[] mLongitudes = new double[INITIAL_BLOCKS * BLOCK_SIZE];
+    private double[] mAltitudes = new double[INITIAL_BLOCKS * BLOCK_SIZE];
+
+    // East, north and up of each fix, valid if the plane of the fix is the current one.
+    private float[] mLocalCoordinates = new float[INITIAL_BLOCKS * BLOCK_SIZE * 3];
+    private LocalTangentPlane[] mPlanes = new LocalTangentPlane[INITIAL_BLOCKS * BLOCK_SIZE];
+
+    /**
+     * Stack of the freed blocks below {@link #mSize}.
+     */
+    private int[] mFreeBlocks = new int[INITIAL_BLOCKS];
+    private int mFreeCount;
+
+    /**
+     * The number of blocks ever used.
+     */
+    private int mSize;
+
+    /**
+     * Appends the current position of the target to its track.
+     *
+     * <p>Does nothing if the position is not newer than the last recorded one, or if the target
+     * has no track and all blocks are taken.</p>
+     */
+    public synchronized void add(Target target) {
+        final Sample sample = target.getSample();
+        int block = target.mTrackBlock;
+        if (block < 0) {
+            block = allocate();
+            if (block < 0) {
+                return; // Maybe with the next beacon.
+            }
+            mOwners[block] = target;
+            mHeads[block] = 0;
+            mLengths[block] = 0;
+            target.mTrackBlock = block;
+        } else if (mLengths[block] > 0 && sample.time <= mTimes[last(block)]) {
+            return;
+        }
+        final int index = block * BLOCK_SIZE + mHeads[block];
+        mTimes[index] = sample.time;
+        mLatitudes[index] = sample.latitude;
+        mLongitudes[index] = sample.longitude;
+        mAltitudes[index] = sample.altitude;
+        mPlanes[index] = null;
+        mHeads[block] = (mHeads[block] + 1) % BLOCK_SIZE;
+        if (mLengths[block] < BLOCK_SIZE) {
+            ++mLengths[block];
+        }
+    }
+
+    /**
+     * Forgets the track of the target. Does nothing if there is none.
+     */
+    public synchronized void remove(Target target) {
+        final int block = target.mTrackBlock;
+        if (block < 0) {
+            return;
+        }
+        target.mTrackBlock = -1;
+        mOwners[block] = null;
+        mLengths[block] = 0;
+        Arrays.fill(mPlanes, block * BLOCK_SIZE, (block + 1) * BLOCK_SIZE, null);
+        mFreeBlocks[mFreeCount] = block;
+        ++mFreeCount;
+    }
+
+    public synchronized void clear() {
+        for (int block = 0; block < mSize; ++block) {
+            if (mOwners[block] != null) {
+                mOwners[block].mTrackBlock = -1;
+            }
+        }
+        Arrays.fill(mOwners, null);
+        Arrays.fill(mPlanes, null);
+        mFreeCount = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of blocks ever used, i.e. {@link #getTarget(int)} must be called up to
+     * it.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the owner of the block or null if the block is free.
+     */
+    public Target getTarget(int block) {
+        return mOwners[block];
+    }
+
+    /**
+     * Stores the east, north and up offsets of the fixes of the block not older than
+     * {@code since}, the oldest first.
+     *
+     * @return the number of fixes.
+     */
+    public int getCoordinates(int block, long since, LocalTangentPlane plane,
+                              float[] coordinates, int offset) {
+        final int length = mLengths[block];
+        int count = 0;
+        for (int i = 0; i < length; ++i) {
+            // The oldest fix is at the head if the ring is full, otherwise at the start.
+            final int index = block * BLOCK_SIZE
+                    + (mHeads[block] - length + i + BLOCK_SIZE) % BLOCK_SIZE;
+            if (mTimes[index] < since) {
+                continue;
+            }
+            if (mPlanes[index] != plane) {
+                plane.project(mLatitudes[index], mLongitudes[index], mAltitudes[index],
+                        mLocalCoordinates, index * 3);
+                mPlanes[index] = plane;
+            }
+            System.arraycopy(mLocalCoordinates, index * 3, coordinates, offset + count * 3, 3);
+            ++count;
+        }
+        return count;
+    }
+
+    private int last(int block) {
+        return block * BLOCK_SIZE + (mHeads[block] + BLOCK_SIZE - 1) % BLOCK_SIZE;
+    }
+
+    /**
+     * Returns a free block or -1 if all are taken.
+     */
+    private int allocate() {
+        if (mFreeCount > 0) {
+            --mFreeCount;
+            return mFreeBlocks[mFreeCount];
+        }
+        if (mSize < MAX_BLOCKS) {
+            if (mSize == mOwners.length) {
+                grow();
+            }
+            ++mSize;
+            return mSize - 1;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final int blocks = Math.min(mOwners.length * 2, MAX_BLOCKS);
+        final int fixes = blocks * BLOCK_SIZE;
+        mOwners = Arrays.copyOf(mOwners, blocks);
+        mHeads = Arrays.copyOf(mHeads, blocks);
+        mLengths = Arrays.copyOf(mLengths, blocks);
+        mFreeBlocks = Arrays.copyOf(mFreeBlocks, blocks);
+        mTimes = Arrays.copyOf(mTimes, fixes);
+        mLatitudes = Arrays.copyOf(mLatitudes, fixes);
+        mLongitudes = Arrays.copyOf(mLongitudes, fixes);
+        mAltitudes = Arrays.copyOf(mAltitudes, fixes);
+        mLocalCoordinates = Arrays.copyOf(mLocalCoordinates, fixes * 3);
+        mPlanes = Arrays.copyOf(mPlanes, fixes);
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.MainThread;
+
+import java.util.Random;
+
+import me.testcase.ognarviewer.CalibratedClock;
+
+/**
+ * Synthetic traffic around the viewer for the demo mode.
+ *
+ * <p>Gliders circle in thermals and cruise between them, tow planes pull gliders up and descend
+ * after the release. The aircraft are moved with the same constant turn model as the prediction
+ * and added to the world once per {@link #TICK} on a background thread, like real beacons.</p>
+ *
+ * <p>The state of the aircraft is kept in primitive columns, so thousands of them cost nothing
+ * but the world updates. The same seed gives the same traffic.</p>
+ */
+public final class TrafficSimulator {
+    public static final int MIN_AIRCRAFT = 10;
+    public static final int MAX_AIRCRAFT = 5000;
+
+    static final long TICK = 1000; // ms
+
+    // The aircraft stay within this distance from the center.
+    static final double RADIUS = 20000; // m
+
+    static final int MODE_THERMALLING = 0;
+    static final int MODE_CRUISING = 1;
+    static final int MODE_TOWING = 2;
+    static final int MODE_DESCENDING = 3;
+
+    private static final double CLOUD_BASE = 2000; // m over the ground
+    private static final double MIN_HEIGHT = 400; // m over the ground
+    private static final double RELEASE_HEIGHT = 600; // m over the ground
+
+    // The glider is this far behind the tow plane.
+    private static final double ROPE_LENGTH = 60; // m
+
+    // Every tenth aircraft is a tow plane, followed by its glider.
+    private static final int TOW_PAIR_INTERVAL = 10;
+
+    private static final long ID_GLIDER = 0x06000000; // FLARM glider
+    private static final long ID_TOW_PLANE = 0x0A000000; // FLARM tow plane
+    private static final int FIRST_ADDRESS = 0xDE0000;
+
+    private final World mWorld;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mElevation;
+    private final Random mRandom;
+
+    private final String[] mSources;
+    private final long[] mIds;
+    private final int[] mModes;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mAltitudes;
+    private final double[] mHeadings;
+    private final double[] mGroundSpeeds;
+    private final double[] mClimbRates;
+    private final double[] mTurnRates;
+
+    /**
+     * The index of the tow plane of each glider on tow or -1.
+     */
+    private final int[] mLeaders;
+
+    private final float[] mOffset = new float[3];
+
+    private long mTime;
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    /**
+     * @param lat the latitude of the center.
+     * @param lon the longitude of the center.
+     * @param elevation the ground elevation at the center.
+     * @param count the number of aircraft, between {@link #MIN_AIRCRAFT} and
+     *     {@link #MAX_AIRCRAFT}.
+     * @param seed the seed of the random generator.
+     */
+    public TrafficSimulator(World world, double lat, double lon, double elevation, int count,
+                            long seed) {
+        if (count < MIN_AIRCRAFT || count > MAX_AIRCRAFT) {
+            throw new IllegalArgumentException("Invalid number of aircraft: " + count);
+        }
+        mWorld = world;
+        mLatitude = lat;
+        mLongitude = lon;
+        mElevation = elevation;
+        mRandom = new Random(seed);
+
+        mSources = new String[count];
+        mIds = new long[count];
+        mModes = new int[count];
+        mLatitudes = new double[count];
+        mLongitudes = new double[count];
+        mAltitudes = new double[count];
+        mHeadings = new double[count];
+        mGroundSpeeds = new double[count];
+        mClimbRates = new double[count];
+        mTurnRates = new double[count];
+        mLeaders = new int[count];
+
+        for (int i = 0; i < count; ++i) {
+            final boolean towPlane = i % TOW_PAIR_INTERVAL == 0 && i + 1 < count;
+            final int address = FIRST_ADDRESS + i;
+            mSources[i] = String.format("FLR%06X", address);
+            mIds[i] = (towPlane ? ID_TOW_PLANE : ID_GLIDER) | address;
+            mLeaders[i] = -1;
+
+            final double distance = RADIUS * Math.sqrt(mRandom.nextDouble());
+            final double bearing = mRandom.nextDouble() * 2 * Math.PI;
+            mLatitudes[i] = mLatitude + Math.toDegrees(distance * Math.cos(bearing)
+                    / World.EARTH_RADIUS);
+            mLongitudes[i] = mLongitude + Math.toDegrees(distance * Math.sin(bearing)
+                    / World.EARTH_RADIUS) / Math.cos(Math.toRadians(mLatitude));
+            mAltitudes[i] = mElevation + MIN_HEIGHT
+                    + mRandom.nextDouble() * (CLOUD_BASE - MIN_HEIGHT);
+            mHeadings[i] = 1 + mRandom.nextInt(360);
+
+            if (i % TOW_PAIR_INTERVAL == 1) {
+                startTow(i - 1, i);
+            } else if (!towPlane) {
+                if (mRandom.nextBoolean()) {
+                    startThermalling(i);
+                } else {
+                    startCruising(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts moving the aircraft. Does nothing if already started.
+     */
+    @MainThread
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread("TrafficSimulator");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                step(CalibratedClock.currentTimeMillis());
+                mHandler.postDelayed(this, TICK);
+            }
+        });
+    }
+
+    /**
+     * Stops moving the aircraft and waits for the last tick, so the world can be cleared.
+     */
+    @MainThread
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mThread.quit();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+        mHandler = null;
+    }
+
+    public int getCount() {
+        return mIds.length;
+    }
+
+    /**
+     * Moves all aircraft to the given time and adds them to the world.
+     */
+    void step(long time) {
+        final double age = mTime == 0 ? 0 : (time - mTime) * 0.001;
+        mTime = time;
+        for (int i = 0; i < mIds.length; ++i) {
+            if (mLeaders[i] < 0) {
+                move(i, age);
+                steer(i, age);
+            }
+        }
+        for (int i = 0; i < mIds.length; ++i) {
+            if (mLeaders[i] >= 0) {
+                follow(i, mLeaders[i]);
+            }
+            mWorld.addAircraft(mSources[i], mIds[i], mLatitudes[i], mLongitudes[i],
+                    mAltitudes[i], time, (int) Math.round(mHeadings[i]),
+                    (int) Math.round(mGroundSpeeds[i]), (float) mClimbRates[i], mTurnRates[i]);
+        }
+    }
+
+    int getMode(int i) {
+        return mModes[i];
+    }
+
+    private void move(int i, double age) {
+        mOffset[0] = 0;
+        mOffset[1] = 0;
+        mOffset[2] = 0;
+        World.predict(mHeadings[i], mGroundSpeeds[i], mClimbRates[i], mTurnRates[i], age,
+                mOffset, 0);
+        mLatitudes[i] += Math.toDegrees(mOffset[1] / World.EARTH_RADIUS);
+        mLongitudes[i] += Math.toDegrees(mOffset[0] / World.EARTH_RADIUS)
+                / Math.cos(Math.toRadians(mLatitudes[i]));
+        mAltitudes[i] += mOffset[2];
+        double heading = (mHeadings[i] + mTurnRates[i] * age) % 360;
+        if (heading <= 0) {
+            heading += 360; // 0 means unknown.
+        }
+        mHeadings[i] = heading;
+    }
+
+    /**
+     * Switches the mode of the aircraft when it has reached the end of the current one.
+     */
+    private void steer(int i, double age) {
+        final double height = mAltitudes[i] - mElevation;
+        switch (mModes[i]) {
+            case MODE_THERMALLING:
+                if (height > CLOUD_BASE) {
+                    startCruising(i);
+                }
+                break;
+            case MODE_CRUISING:
+                if (height < MIN_HEIGHT) {
+                    startThermalling(i);
+                } else if (isOutside(i)) {
+                    headHome(i);
+                } else if (mRandom.nextDouble() < age / 120) {
+                    // About every two minutes, a new thermal on the way.
+                    startThermalling(i);
+                }
+                break;
+            case MODE_TOWING:
+                if (height > CLOUD_BASE || height > RELEASE_HEIGHT
+                        && mRandom.nextDouble() < age / 60) {
+                    release(i);
+                } else if (isOutside(i)) {
+                    headHome(i);
+                }
+                break;
+            case MODE_DESCENDING:
+                if (height < MIN_HEIGHT) {
+                    // The tow plane has landed and picks up the next glider, which reuses the
+                    // same id to keep the number of aircraft constant.
+                    startTow(i, i + 1);
+                } else if (isOutside(i)) {
+                    headHome(i);
+                }
+                break;
+        }
+    }
+
+    private void follow(int i, int leader) {
+        final double track = Math.toRadians(mHeadings[leader]);
+        mLatitudes[i] = mLatitudes[leader] - Math.toDegrees(ROPE_LENGTH * Math.cos(track)
+                / World.EARTH_RADIUS);
+        mLongitudes[i] = mLongitudes[leader] - Math.toDegrees(ROPE_LENGTH * Math.sin(track)
+                / World.EARTH_RADIUS) / Math.cos(Math.toRadians(mLatitudes[leader]));
+        mAltitudes[i] = mAltitudes[leader] - ROPE_LENGTH * 0.1;
+        mHeadings[i] = mHeadings[leader];
+        mGroundSpeeds[i] = mGroundSpeeds[leader];
+        mClimbRates[i] = mClimbRates[leader];
+        mTurnRates[i] = mTurnRates[leader];
+    }
+
+    private void startThermalling(int i) {
+        mModes[i] = MODE_THERMALLING;
+        mGroundSpeeds[i] = 80 + mRandom.nextDouble() * 20;
+        mClimbRates[i] = 0.5 + mRandom.nextDouble() * 3;
+        final double turnRate = 15 + mRandom.nextDouble() * 8;
+        mTurnRates[i] = mRandom.nextBoolean() ? turnRate : -turnRate;
+    }
+
+    private void startCruising(int i) {
+        mModes[i] = MODE_CRUISING;
+        mGroundSpeeds[i] = 110 + mRandom.nextDouble() * 70;
+        mClimbRates[i] = -0.8 - mRandom.nextDouble() * 1.2;
+        mTurnRates[i] = 0;
+    }
+
+    private void startTow(int towPlane, int glider) {
+        mModes[towPlane] = MODE_TOWING;
+        mAltitudes[towPlane] = mElevation + 50;
+        mGroundSpeeds[towPlane] = 120 + mRandom.nextDouble() * 20;
+        mClimbRates[towPlane] = 2.5 + mRandom.nextDouble();
+        mTurnRates[towPlane] = 0;
+        mModes[glider] = MODE_TOWING;
+        mLeaders[glider] = towPlane;
+    }
+
+    private void release(int towPlane) {
+        final int glider = towPlane + 1;
+        mLeaders[glider] = -1;
+        startThermalling(glider);
+
+        // The tow plane turns away and descends quickly.
+        mModes[towPlane] = MODE_DESCENDING;
+        mHeadings[towPlane] = (mHeadings[towPlane] + 150) % 360 + 1;
+        mGroundSpeeds[towPlane] = 160 + mRandom.nextDouble() * 20;
+        mClimbRates[towPlane] = -5;
+        mTurnRates[towPlane] = 0;
+    }
+
+    private boolean isOutside(int i) {
+        final double north = Math.toRadians(mLatitudes[i] - mLatitude) * World.EARTH_RADIUS;
+        final double east = Math.toRadians(mLongitudes[i] - mLongitude) * World.EARTH_RADIUS
+                * Math.cos(Math.toRadians(mLatitude));
+        return north * north + east * east > RADIUS * RADIUS;
+    }
+
+    private void headHome(int i) {
+        final double north = mLatitude - mLatitudes[i];
+        final double east = (mLongitude - mLongitudes[i]) * Math.cos(Math.toRadians(mLatitude));
+        double heading = Math.toDegrees(Math.atan2(east, north)) + mRandom.nextDouble() * 60 - 30;
+        if (heading <= 0) {
+            heading += 360;
+        } else if (heading > 360) {
+            heading -= 360;
+        }
+        mHeadings[i] = heading;
+    }
+}
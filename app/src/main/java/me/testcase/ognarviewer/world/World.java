@@ -24,28 +24,77 @@ import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import me.testcase.ognarviewer.CalibratedClock;
+import me.testcase.ognarviewer.utils.AircraftId;
 
 /**
  * A list of aircraft and receivers with some additional features.
  */
 public final class World {
-    // FIXME: it's the horizontal radius. Take the vertical radius into account too.
+    // Only for rough horizontal distances, see LocalTangentPlane for the exact coordinates.
     public static final double EARTH_RADIUS = 6378137; // WGS 84
 
-    private static final double MAX_PREDICTION_TIME = 10.0; // seconds
+    // The spherical distances of SpatialIndex may be that much shorter than the WGS 84 ones.
+    private static final double SPHERICAL_DISTANCE_ERROR = 0.01;
+
+    static final double MAX_PREDICTION_TIME = 10.0; // seconds
+
+    // Fast enough for anything receiving OGN, including jets seen via ADS-B.
+    private static final double MAX_PREDICTION_SPEED = 300; // m/s
+
+    /**
+     * The number of floats per vertex filled by {@link #getTrails(long, double, float[])}.
+     */
+    public static final int TRAIL_VERTEX_SIZE = 7;
+
+    /**
+     * The maximum number of vertices filled by {@link #getTrails(long, double, float[])}.
+     */
+    public static final int MAX_TRAIL_VERTICES = TrackHistory.MAX_BLOCKS * TrackHistory.BLOCK_SIZE
+            * 2;
+
+    private static final long TRAIL_DURATION = 120000; // ms
+
+    // Default threshold and work unit of the parallel computeCoordinates().
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+    private static final int PARALLEL_CHUNK_SIZE = 1024;
+
+    // Start radius for nearestK(), grows twice on each step.
+    private static final double NEAREST_INITIAL_RADIUS = 10000; // m
 
     // 5 for moving, 20 for not, add 10 seconds for sure.
     private static final long EXPIRE_TIME_AIRCRAFT = 30;
     // Default is 5 minutes, add 30 seconds for sure.
     private static final long EXPIRE_TIME_RECEIVER = 300 + 30;
 
-    private final Map<String, Target> mTargetMap = new HashMap<>();
+    private final Object mLock = new Object();
+    private final AircraftTable mAircraft = new AircraftTable();
+    private final Map<String, Receiver> mReceivers = new HashMap<>();
+    private final ExpiryWheel mExpiryWheel = new ExpiryWheel();
+    private final SpatialIndex mSpatialIndex = new SpatialIndex();
+    private final TargetStore mTargetStore = new TargetStore();
+    private final TrackHistory mTrackHistory = new TrackHistory();
+    private final List<Target> mQueryResult = new ArrayList<>();
+    private final List<Target> mExpiredTargets = new ArrayList<>();
+    // Guarded by the history lock, used by getTrails() only.
+    private final float[] mTrailCoordinates = new float[(TrackHistory.BLOCK_SIZE + 1) * 3];
+    private final float[] mTrailPosition = new float[4];
+    private final CollisionAlerter mCollisionAlerter = new CollisionAlerter();
+    private OnTargetExpiredListener mOnTargetExpiredListener;
+    private volatile OnCollisionAlertListener mOnCollisionAlertListener;
+    // Prediction errors of the filter, guarded by the lock.
+    private long mPredictionErrorCount;
+    private double mPredictionErrorSquares;
+    private double mPredictionErrorMax;
     private volatile double mLatitude;
     private volatile double mLongitude;
     private volatile double mAltitude;
@@ -53,6 +102,8 @@ public final class World {
     private volatile boolean mDemoMode;
     private volatile boolean mLocationPrediction;
     private volatile double mGeoidHeight;
+    private volatile int mParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile LocalTangentPlane mPlane = new LocalTangentPlane(0, 0, 0, 0);
 
     // TODO: just pass lat, lon and alt as arguments, do not depend on Location.
     @MainThread
@@ -66,6 +117,33 @@ public final class World {
                 (float) location.getLongitude(),
                 (float) location.getAltitude(),
                 CalibratedClock.currentTimeMillis());
+        updatePlane();
+
+        final boolean changed;
+        final CollisionAlert alert;
+        synchronized (mLock) {
+            if (location.hasSpeed() && location.hasBearing()) {
+                mCollisionAlerter.setViewerVelocity(location.getSpeed(), location.getBearing());
+            } else {
+                mCollisionAlerter.setViewerVelocity(0, 0);
+            }
+            mSpatialIndex.queryRadius(mLatitude, mLongitude, CollisionAlerter.RANGE,
+                    mQueryResult);
+            changed = mCollisionAlerter.updateAll(mPlane, mQueryResult);
+            mQueryResult.clear();
+            alert = mCollisionAlerter.getAlert();
+        }
+        if (changed) {
+            notifyCollisionAlert(alert);
+        }
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
     }
 
     /**
@@ -78,15 +156,25 @@ public final class World {
     /**
      * Returns the viewer altitude in meters over MSL.
      */
-    @MainThread
     public double getAltitudeMsl() {
-        // Both values may be modified from the main thread only and now we are on the main thread
-        // again => no locks are needed.
+        // Both values may be modified from the main thread only. Other threads (e.g. the renderer)
+        // may see the new altitude with the old geoid height for a moment, which is fine.
         return mAltitude - mGeoidHeight;
     }
 
     public void setGeoidHeight(double height) {
-        mGeoidHeight = height;
+        // Called for each NMEA sentence, but it almost never changes.
+        if (height != mGeoidHeight) {
+            mGeoidHeight = height;
+            updatePlane();
+        }
+    }
+
+    /**
+     * Invalidates all cached coordinates after the viewer has moved.
+     */
+    private void updatePlane() {
+        mPlane = new LocalTangentPlane(mLatitude, mLongitude, mAltitude, mGeoidHeight);
     }
 
     @VisibleForTesting(otherwise = VisibleForTesting.NONE)
@@ -105,66 +193,395 @@ public final class World {
      * <p>This function is supposed to be called on each frame, so to avoid expensive memory
      * allocations, pass the array returned by a previous call. If the array is big enough, it will
      * be reused. It is enough to iterate up to the first null element.</p>
+     *
+     * <p>No expiration is done here, see {@link #expireTargets(long)}.</p>
      */
     public Target[] getTargets(Target[] array) {
-        final long now = CalibratedClock.currentTimeMillis();
-        synchronized (mTargetMap) {
-            // Keep the lock, otherwise ConcurrentModificationException is thrown when addAircraft()
-            // or addReceiver() are called in the meantime.
-            final Collection<Target> values = mTargetMap.values();
-            if (array.length < values.size()) {
-                array = new Target[values.size()];
+        // All targets have changed at least once: when they were added.
+        return getTargetsChangedSince(0, array);
+    }
+
+    /**
+     * Returns the targets within the given horizontal distance (in meters) from the viewer.
+     *
+     * <p>If the location prediction is enabled, targets slightly further away are returned too,
+     * as they may come closer once predicted. The caller must check the exact distance anyway.</p>
+     *
+     * <p>The array is reused like in {@link #getTargets(Target[])}.</p>
+     */
+    public Target[] getTargetsInRange(double distance, Target[] array) {
+        return queryRadius(mLatitude, mLongitude, getRangeRadius(distance), array);
+    }
+
+    /**
+     * Returns the radius to query the spatial index with to find all targets within the given
+     * distance from the viewer, see {@link #getTargetsInRange(double, Target[])}.
+     */
+    private double getRangeRadius(double distance) {
+        distance *= 1 + SPHERICAL_DISTANCE_ERROR;
+        if (mLocationPrediction) {
+            distance += MAX_PREDICTION_SPEED * MAX_PREDICTION_TIME;
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the targets within the given horizontal distance (in meters) from the point.
+     *
+     * <p>The array is reused like in {@link #getTargets(Target[])}.</p>
+     */
+    public Target[] queryRadius(double lat, double lon, double radius, Target[] array) {
+        synchronized (mLock) {
+            mSpatialIndex.queryRadius(lat, lon, radius, mQueryResult);
+            array = toArray(mQueryResult, array);
+            mQueryResult.clear();
+        }
+        return array;
+    }
+
+    /**
+     * Returns the targets inside the given box.
+     *
+     * <p>If {@code west} is greater than {@code east}, the box crosses the antimeridian. The array
+     * is reused like in {@link #getTargets(Target[])}.</p>
+     */
+    public Target[] queryBox(double south, double west, double north, double east,
+                             Target[] array) {
+        synchronized (mLock) {
+            mSpatialIndex.queryBox(south, west, north, east, mQueryResult);
+            array = toArray(mQueryResult, array);
+            mQueryResult.clear();
+        }
+        return array;
+    }
+
+    /**
+     * Returns up to {@code count} targets nearest to the point, the nearest first.
+     *
+     * <p>The array is reused like in {@link #getTargets(Target[])}.</p>
+     */
+    public Target[] nearestK(double lat, double lon, int count, Target[] array) {
+        final double cos = Math.cos(Math.toRadians(lat));
+        synchronized (mLock) {
+            // The k nearest targets are within the radius as soon as there are k targets in it.
+            double radius = NEAREST_INITIAL_RADIUS;
+            while (true) {
+                mSpatialIndex.queryRadius(lat, lon, radius, mQueryResult);
+                if (mQueryResult.size() >= count || radius > Math.PI * EARTH_RADIUS) {
+                    break;
+                }
+                mQueryResult.clear();
+                radius *= 2;
             }
-            int i = 0;
-            // Iterate using an iterator to avoid ConcurrentModificationException.
-            for (Iterator<Target> it = values.iterator(); it.hasNext();) {
-                final Target target = it.next();
-                final long expireTime =
-                        target instanceof Aircraft ? EXPIRE_TIME_AIRCRAFT : EXPIRE_TIME_RECEIVER;
-                if (!mDemoMode && (now - target.getPositionTime()) > expireTime * 1000) {
-                    it.remove();
+            Collections.sort(mQueryResult, (a, b) -> Double.compare(
+                    SpatialIndex.distanceSquared(lat, lon, cos, a),
+                    SpatialIndex.distanceSquared(lat, lon, cos, b)));
+            if (mQueryResult.size() > count) {
+                mQueryResult.subList(count, mQueryResult.size()).clear();
+            }
+            array = toArray(mQueryResult, array);
+            mQueryResult.clear();
+        }
+        return array;
+    }
+
+    private static Target[] toArray(List<Target> targets, Target[] array) {
+        if (array.length < targets.size()) {
+            array = new Target[targets.size()];
+        }
+        int i = 0;
+        for (Target target : targets) {
+            array[i] = target;
+            ++i;
+        }
+        // Reset the rest of the array to avoid memory leaks. TODO: shrink the array?
+        for (int j = i; j < array.length; ++j) {
+            array[j] = null;
+        }
+        return array;
+    }
+
+    /**
+     * Removes all targets which haven't sent a position for too long.
+     *
+     * <p>Supposed to be called periodically (about once per second) on the main thread. The cost
+     * is proportional to the number of expired targets, not to the number of all targets.</p>
+     *
+     * <p>The {@link OnTargetExpiredListener} is called for each removed target.</p>
+     */
+    @MainThread
+    public void expireTargets(long now) {
+        if (mDemoMode) {
+            return; // Demo targets never send beacons.
+        }
+        boolean alertChanged = false;
+        final CollisionAlert alert;
+        synchronized (mLock) {
+            mExpiryWheel.expire(now, mExpiredTargets);
+            for (Target target : mExpiredTargets) {
+                if (target instanceof Aircraft) {
+                    mAircraft.remove(((Aircraft) target).getDirectoryId());
                 } else {
-                    array[i] = target;
-                    ++i;
+                    mReceivers.remove(target.getCallSign());
                 }
+                mSpatialIndex.remove(target);
+                mTargetStore.remove(target);
+                mTrackHistory.remove(target);
+                alertChanged |= mCollisionAlerter.remove(target);
             }
-            // Reset the rest of the array to avoid memory leaks. TODO: shrink the array?
-            for (int j = i; j < array.length; ++j) {
-                array[j] = null;
+            alert = mCollisionAlerter.getAlert();
+        }
+        if (alertChanged) {
+            notifyCollisionAlert(alert);
+        }
+        // Call the listener without the lock to allow it to access the world.
+        for (Target target : mExpiredTargets) {
+            if (mOnTargetExpiredListener != null) {
+                mOnTargetExpiredListener.onTargetExpired(target);
             }
         }
-        return array;
+        mExpiredTargets.clear();
+    }
+
+    @MainThread
+    public void setOnTargetExpiredListener(@Nullable OnTargetExpiredListener listener) {
+        mOnTargetExpiredListener = listener;
+    }
+
+    /**
+     * Sets the listener of the collision alerts.
+     *
+     * <p>It is called on the thread which has added the aircraft, without the lock held.</p>
+     */
+    public void setOnCollisionAlertListener(@Nullable OnCollisionAlertListener listener) {
+        mOnCollisionAlertListener = listener;
     }
 
+    /**
+     * Returns the most urgent risk of collision with the viewer or null if there is none.
+     */
+    @Nullable
+    public CollisionAlert getCollisionAlert() {
+        synchronized (mLock) {
+            return mCollisionAlerter.getAlert();
+        }
+    }
+
+    /**
+     * Returns the mean time in milliseconds from adding an aircraft until its collision alert was
+     * ready, NaN if no aircraft was added yet.
+     */
+    public double getCollisionAlertLatencyMean() {
+        synchronized (mLock) {
+            return mCollisionAlerter.getLatencyMean();
+        }
+    }
+
+    /**
+     * Returns the maximum time in milliseconds from adding an aircraft until its collision alert
+     * was ready.
+     */
+    public double getCollisionAlertLatencyMax() {
+        synchronized (mLock) {
+            return mCollisionAlerter.getLatencyMax();
+        }
+    }
+
+    private void notifyCollisionAlert(@Nullable CollisionAlert alert) {
+        final OnCollisionAlertListener listener = mOnCollisionAlertListener;
+        if (listener != null) {
+            listener.onCollisionAlert(alert);
+        }
+    }
+
+    /**
+     * (Re-)schedules the expiration of the target after its position has been updated.
+     *
+     * <p>Must be called with the lock held.</p>
+     */
+    private void scheduleExpiration(Target target, long expireTime) {
+        mExpiryWheel.schedule(target, target.getPositionTime() + expireTime * 1000,
+                CalibratedClock.currentTimeMillis());
+    }
+
+    /**
+     * Adds the aircraft or updates its position, keeping the previous motion.
+     */
     public Aircraft addAircraft(String source, long id, double lat, double lon, double alt,
                                 long timestamp) {
-        Aircraft aircraft;
-        synchronized (mTargetMap) {
-            aircraft = (Aircraft) mTargetMap.get(source);
-            if (aircraft == null) {
-                aircraft = new Aircraft(source, id);
-                mTargetMap.put(source, aircraft);
+        final long start = System.nanoTime();
+        final Aircraft aircraft;
+        final boolean changed;
+        final CollisionAlert alert;
+        synchronized (mLock) {
+            aircraft = findOrCreateAircraft(source, id);
+            final Estimate estimate = aircraft.getEstimate();
+            aircraft.setPosition(lat, lon, alt, timestamp);
+            recordPredictionError(estimate, aircraft.getEstimate());
+            mSpatialIndex.update(aircraft);
+            mTrackHistory.add(aircraft);
+            scheduleExpiration(aircraft, EXPIRE_TIME_AIRCRAFT);
+            changed = mCollisionAlerter.update(aircraft, mPlane);
+            alert = mCollisionAlerter.getAlert();
+            mCollisionAlerter.addLatency(System.nanoTime() - start);
+        }
+        if (changed) {
+            notifyCollisionAlert(alert);
+        }
+        return aircraft;
+    }
+
+    /**
+     * Adds the aircraft or updates its position and motion.
+     *
+     * <p>Both are published at once, so no reader sees the new position with the old motion. If
+     * the position is older than the current one, nothing is updated.</p>
+     */
+    public Aircraft addAircraft(String source, long id, double lat, double lon, double alt,
+                                long timestamp, int heading, int groundSpeed, float climbRate,
+                                double turnRate) {
+        final long start = System.nanoTime();
+        final Aircraft aircraft;
+        final boolean changed;
+        final CollisionAlert alert;
+        synchronized (mLock) {
+            aircraft = findOrCreateAircraft(source, id);
+            final Estimate estimate = aircraft.getEstimate();
+            aircraft.setSample(new Sample(lat, lon, alt, timestamp, heading, groundSpeed,
+                    climbRate, turnRate));
+            recordPredictionError(estimate, aircraft.getEstimate());
+            mSpatialIndex.update(aircraft);
+            mTrackHistory.add(aircraft);
+            scheduleExpiration(aircraft, EXPIRE_TIME_AIRCRAFT);
+            changed = mCollisionAlerter.update(aircraft, mPlane);
+            alert = mCollisionAlerter.getAlert();
+            mCollisionAlerter.addLatency(System.nanoTime() - start);
+        }
+        if (changed) {
+            notifyCollisionAlert(alert);
+        }
+        return aircraft;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void recordPredictionError(Estimate before, Estimate after) {
+        if (after.mTime > before.mTime && !Double.isNaN(after.mError)) {
+            ++mPredictionErrorCount;
+            mPredictionErrorSquares += after.mError * after.mError;
+            mPredictionErrorMax = Math.max(mPredictionErrorMax, after.mError);
+        }
+    }
+
+    /**
+     * Returns the number of positions compared with their prediction since the last
+     * {@link #resetPredictionErrors()}.
+     */
+    public long getPredictionErrorCount() {
+        synchronized (mLock) {
+            return mPredictionErrorCount;
+        }
+    }
+
+    /**
+     * Returns the root mean square distance in meters between the received positions and their
+     * predictions, NaN if there were none yet.
+     *
+     * <p>Meant for tuning the filter, see {@link Estimate}.</p>
+     */
+    public double getPredictionErrorRms() {
+        synchronized (mLock) {
+            if (mPredictionErrorCount == 0) {
+                return Double.NaN;
             }
+            return Math.sqrt(mPredictionErrorSquares / mPredictionErrorCount);
+        }
+    }
+
+    /**
+     * Returns the maximum distance in meters between a received position and its prediction.
+     */
+    public double getPredictionErrorMax() {
+        synchronized (mLock) {
+            return mPredictionErrorMax;
+        }
+    }
+
+    public void resetPredictionErrors() {
+        synchronized (mLock) {
+            mPredictionErrorCount = 0;
+            mPredictionErrorSquares = 0;
+            mPredictionErrorMax = 0;
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     *
+     * <p>Aircraft are identified by their address and its type, the call sign is only kept from
+     * the first beacon.</p>
+     */
+    private Aircraft findOrCreateAircraft(String source, long id) {
+        final long key = AircraftId.getDirectoryId(id);
+        Aircraft aircraft = mAircraft.get(key);
+        if (aircraft == null) {
+            aircraft = new Aircraft(source, id);
+            mAircraft.put(key, aircraft);
+            mTargetStore.add(aircraft);
         }
-        aircraft.setPosition(lat, lon, alt, timestamp);
         return aircraft;
     }
 
     public Receiver addReceiver(String callSign, double lat, double lon, double alt,
                                 long timestamp) {
         Receiver receiver;
-        synchronized (mTargetMap) {
-            // FIXME: what happens if someone names their receiver as an aircraft?
-            receiver = (Receiver) mTargetMap.get(callSign);
-            if (receiver == null) {
-                receiver = new Receiver(callSign);
-                mTargetMap.put(callSign, receiver);
+        synchronized (mLock) {
+            receiver = mReceivers.get(callSign);
+            final boolean added = receiver == null;
+            if (added) {
+                // There are only a few thousand receivers, but their status and position beacons
+                // bring a new copy of the name each time.
+                receiver = new Receiver(callSign.intern());
+                mReceivers.put(receiver.getCallSign(), receiver);
+                mTargetStore.add(receiver);
+            }
+            final boolean positioned = lat != 0 && lon != 0 && alt != 0;
+            if (positioned) {
+                receiver.setPosition(lat, lon, alt, timestamp);
+            }
+            mSpatialIndex.update(receiver);
+            // A status beacon doesn't move the deadline: it is computed from the position time,
+            // which may be old for a restored receiver, so it would only bring it forward.
+            if (added || positioned) {
+                scheduleExpiration(receiver, EXPIRE_TIME_RECEIVER);
             }
         }
-        if (lat != 0 && lon != 0 && alt != 0) {
+        return receiver;
+    }
+
+    /**
+     * Adds a receiver remembered from a previous session, see {@link ReceiverCache}.
+     *
+     * <p>The receiver keeps its old position time, but expires as if it had just sent a beacon,
+     * so it stays until its next one is due. Does nothing if the receiver is already known.</p>
+     *
+     * @return the new receiver or null.
+     */
+    Receiver restoreReceiver(String callSign, double lat, double lon, double alt, long timestamp,
+                             long now) {
+        synchronized (mLock) {
+            if (mReceivers.get(callSign) != null) {
+                return null;
+            }
+            final Receiver receiver = new Receiver(callSign.intern());
+            mReceivers.put(receiver.getCallSign(), receiver);
+            mTargetStore.add(receiver);
             receiver.setPosition(lat, lon, alt, timestamp);
+            mSpatialIndex.update(receiver);
+            mExpiryWheel.schedule(receiver, now + EXPIRE_TIME_RECEIVER * 1000, now);
+            return receiver;
         }
-        return receiver;
     }
 
     public boolean isDemo() {
@@ -188,42 +605,339 @@ public final class World {
 
     /**
      * Get the target position at the given time in world (OpenGL) coordinates.
+     *
+     * <p>The position is predicted from the filtered estimate, not from the last beacon, see
+     * {@link Estimate}.</p>
      */
     public void getTargetCoordinates(Target target, long time, float[] coordinates) {
-        double longitudeDelta = target.getLongitude() - mLongitude;
-        if (longitudeDelta < -180) {
-            longitudeDelta += 360;
-        } else if (longitudeDelta > 180) {
-            longitudeDelta -= 360;
-        }
-        coordinates[0] =
-                (float) (EARTH_RADIUS * Math.toRadians(longitudeDelta)
-                        * Math.cos(Math.toRadians(mLatitude)));
-        coordinates[1] = (float) (EARTH_RADIUS * Math.toRadians(target.getLatitude() - mLatitude));
-        coordinates[2] = (float) (target.getAltitude() - (mAltitude - mGeoidHeight));
+        // Read the estimate only once, a new one may be published in the meantime.
+        final Estimate estimate = target.getEstimate();
+        final LocalTangentPlane plane = mPlane;
+        final LocalPosition cached = target.mLocalPosition;
+        if (cached != null && cached.mEstimate == estimate && cached.mPlane == plane) {
+            coordinates[0] = cached.mEast;
+            coordinates[1] = cached.mNorth;
+            coordinates[2] = cached.mUp;
+        } else {
+            plane.project(estimate.mLatitude, estimate.mLongitude, estimate.mAltitude,
+                    coordinates, 0);
+            target.mLocalPosition = new LocalPosition(estimate, plane, coordinates);
+        }
         coordinates[3] = 1;
-        if (!mLocationPrediction || !(target instanceof Aircraft)) {
-            return;
+        // Receivers have no heading, so they are never predicted.
+        if (mLocationPrediction) {
+            final double age = (time - estimate.mTime) * 0.001;
+            predict(estimate.mHeading, estimate.mGroundSpeed, estimate.mClimbRate,
+                    estimate.mTurnRate, age, coordinates, 0);
+            Estimate.blend(estimate.mBlendEast, estimate.mBlendNorth, estimate.mBlendUp, age,
+                    coordinates, 0);
+        }
+    }
+
+    /**
+     * Returns the version of the world.
+     *
+     * <p>It is incremented each time a target is added, changed or removed. Remember it and pass
+     * it to {@link #getTargetsChangedSince(long, Target[])} later to find out what has changed in
+     * the meantime, or compare it with {@link Target#getChangeVersion()}.</p>
+     */
+    public long getVersion() {
+        return mTargetStore.getVersion();
+    }
+
+    /**
+     * Returns the targets added or changed after the given version of the world.
+     *
+     * <p>Removed targets are reported by the {@link OnTargetExpiredListener}. The array is reused
+     * like in {@link #getTargets(Target[])}.</p>
+     */
+    public Target[] getTargetsChangedSince(long version, Target[] array) {
+        synchronized (mTargetStore) {
+            final TargetStore store = mTargetStore;
+            final int size = store.getSize();
+            int count = 0;
+            for (int slot = 0; slot < size; ++slot) {
+                if (store.mTargets[slot] != null && store.mVersions[slot] > version) {
+                    ++count;
+                }
+            }
+            if (array.length < count) {
+                array = new Target[count];
+            }
+            int i = 0;
+            for (int slot = 0; slot < size && i < count; ++slot) {
+                if (store.mTargets[slot] != null && store.mVersions[slot] > version) {
+                    array[i] = store.mTargets[slot];
+                    ++i;
+                }
+            }
+            Arrays.fill(array, i, array.length, null);
         }
+        return array;
+    }
 
-        final Aircraft aircraft = (Aircraft) target;
+    /**
+     * Returns the number of targets known to the world, e.g. to size the arrays for
+     * {@link #computeCoordinates(long, float[], int[])}.
+     */
+    public int getTargetCount() {
+        return mTargetStore.getCount();
+    }
 
-        final double trackInDegrees = aircraft.getHeading();
+    /**
+     * Returns the target with the given id (see {@link #computeCoordinates(long, float[], int[])})
+     * or null if there is none.
+     *
+     * <p>Ids are recycled once a target is removed, so resolve them right after computing the
+     * coordinates.</p>
+     */
+    @Nullable
+    public Target getTarget(int id) {
+        synchronized (mTargetStore) {
+            return id < mTargetStore.getSize() ? mTargetStore.mTargets[id] : null;
+        }
+    }
+
+    /**
+     * Sets the number of targets from which {@link #computeCoordinates(long, float[], int[])}
+     * splits the work between several threads.
+     */
+    public void setParallelThreshold(int count) {
+        mParallelThreshold = count;
+    }
+
+    /**
+     * Computes the world (OpenGL) coordinates of all targets at the given time.
+     *
+     * <p>Unlike {@link #getTargetCoordinates(Target, long, float[])}, this is a single pass over
+     * the primitive columns of the {@link TargetStore}, split between the threads of the common
+     * fork/join pool if there are more targets than the
+     * {@link #setParallelThreshold(int) threshold}. The coordinates are packed as x, y, z
+     * triplets. The id of the target of the n-th triplet is stored at the n-th position of
+     * {@code idsOut}, see {@link #getTarget(int)}.</p>
+     *
+     * @return the number of targets. If the arrays are too small, the remaining targets are
+     *     skipped.
+     */
+    public int computeCoordinates(long time, float[] packedOut, int[] idsOut) {
+        final LocalTangentPlane plane = mPlane;
+        final boolean prediction = mLocationPrediction;
+        final int capacity = Math.min(packedOut.length / 3, idsOut.length);
+        synchronized (mTargetStore) {
+            final TargetStore store = mTargetStore;
+            final int size = store.getSize();
+            if (store.getCount() < mParallelThreshold) {
+                return computeCoordinates(store, plane, prediction, time, 0, size, 0, capacity,
+                        packedOut, idsOut);
+            }
+
+            // Each chunk writes right behind the targets of the previous chunks, so count them
+            // first. That's a cheap pass compared to the coordinates.
+            final int chunks = (size + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+            final int[] offsets = new int[chunks + 1];
+            for (int chunk = 0; chunk < chunks; ++chunk) {
+                int count = 0;
+                final int end = Math.min(size, (chunk + 1) * PARALLEL_CHUNK_SIZE);
+                for (int slot = chunk * PARALLEL_CHUNK_SIZE; slot < end; ++slot) {
+                    if (store.mTargets[slot] != null) {
+                        ++count;
+                    }
+                }
+                offsets[chunk + 1] = offsets[chunk] + count;
+            }
+            ForkJoinPool.commonPool().invoke(new CoordinatesTask(store, plane, prediction, time,
+                    offsets, 0, chunks, capacity, packedOut, idsOut));
+            return Math.min(offsets[chunks], capacity);
+        }
+    }
+
+    /**
+     * Like {@link #computeCoordinates(long, float[], int[])}, but only for the targets within the
+     * given horizontal distance (in meters) from the viewer.
+     *
+     * <p>The targets are picked with the spatial index, so the cost is proportional to the number
+     * of targets in range, not to the number of all targets. Like with
+     * {@link #getTargetsInRange(double, Target[])}, targets slightly further away may be returned
+     * too, so the caller must check the exact distance anyway. The work is never split between
+     * threads.</p>
+     */
+    public int computeCoordinates(long time, double distance, float[] packedOut, int[] idsOut) {
+        final LocalTangentPlane plane = mPlane;
+        final boolean prediction = mLocationPrediction;
+        final int capacity = Math.min(packedOut.length / 3, idsOut.length);
+        int found = 0;
+        synchronized (mLock) {
+            // The slots don't change while the lock is held: targets are only removed with it.
+            mSpatialIndex.queryRadius(mLatitude, mLongitude, getRangeRadius(distance),
+                    mQueryResult);
+            for (Target target : mQueryResult) {
+                if (found == capacity) {
+                    break;
+                }
+                idsOut[found] = target.mSlot;
+                ++found;
+            }
+            mQueryResult.clear();
+        }
+        int count = 0;
+        synchronized (mTargetStore) {
+            final TargetStore store = mTargetStore;
+            for (int i = 0; i < found; ++i) {
+                final int slot = idsOut[i];
+                if (store.mTargets[slot] == null) {
+                    continue; // Expired in the meantime.
+                }
+                computeCoordinates(store, plane, prediction, time, slot, packedOut, count * 3);
+                idsOut[count] = slot;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes the coordinates of the targets in the given slots, see
+     * {@link #computeCoordinates(long, float[], int[])}.
+     *
+     * <p>Must be called with the store lock held. The loop has no virtual calls, so the JIT
+     * compiles it into straight code over the columns.</p>
+     *
+     * @param offset the index of the first triplet to write.
+     * @return the number of written triplets.
+     */
+    private static int computeCoordinates(TargetStore store, LocalTangentPlane plane,
+                                          boolean prediction, long time, int fromSlot,
+                                          int toSlot, int offset, int capacity,
+                                          float[] packedOut, int[] idsOut) {
+        int count = offset;
+        for (int slot = fromSlot; slot < toSlot && count < capacity; ++slot) {
+            if (store.mTargets[slot] == null) {
+                continue; // A free slot.
+            }
+            computeCoordinates(store, plane, prediction, time, slot, packedOut, count * 3);
+            idsOut[count] = slot;
+            ++count;
+        }
+        return count - offset;
+    }
+
+    /**
+     * Computes the coordinates of the target in the slot and writes them at the offset.
+     *
+     * <p>Must be called with the store lock held.</p>
+     */
+    private static void computeCoordinates(TargetStore store, LocalTangentPlane plane,
+                                           boolean prediction, long time, int slot,
+                                           float[] packedOut, int offset) {
+        if (store.mPlanes[slot] != plane) {
+            // A new position or a new viewer position since the last pass.
+            plane.project(store.mLatitudes[slot], store.mLongitudes[slot],
+                    store.mAltitudes[slot], store.mLocalCoordinates, slot * 3);
+            store.mPlanes[slot] = plane;
+        }
+        System.arraycopy(store.mLocalCoordinates, slot * 3, packedOut, offset, 3);
+        // Receivers have no heading, so they are never predicted.
+        if (prediction) {
+            final double age = (time - store.mPositionTimes[slot]) * 0.001;
+            predict(store.mHeadings[slot], store.mGroundSpeeds[slot], store.mClimbRates[slot],
+                    store.mTurnRates[slot], age, packedOut, offset);
+            Estimate.blend(store.mBlends[slot * 3], store.mBlends[slot * 3 + 1],
+                    store.mBlends[slot * 3 + 2], age, packedOut, offset);
+        }
+    }
+
+    /**
+     * Fills the array with the trails of the aircraft as line segments in world (OpenGL)
+     * coordinates.
+     *
+     * <p>Each vertex consists of {@link #TRAIL_VERTEX_SIZE} floats: x, y, z, and the color of the
+     * aircraft as premultiplied red, green, blue and alpha. The trails fade out towards their
+     * oldest fixes. Each trail ends at the current (predicted) position of its aircraft, so it
+     * stays attached to it between the beacons.</p>
+     *
+     * <p>The array should have room for {@link #MAX_TRAIL_VERTICES} vertices, otherwise some
+     * trails are skipped.</p>
+     *
+     * @param distance the maximum distance of the aircraft in meters, the trails of the aircraft
+     *     further away are skipped.
+     * @return the number of vertices.
+     */
+    public int getTrails(long time, double distance, float[] vertices) {
+        final LocalTangentPlane plane = mPlane;
+        final double distanceSquared = distance * distance;
+        final int capacity = vertices.length / TRAIL_VERTEX_SIZE;
+        final float[] coordinates = mTrailCoordinates;
+        int count = 0;
+        synchronized (mTrackHistory) {
+            final int size = mTrackHistory.getSize();
+            for (int block = 0; block < size; ++block) {
+                final Target target = mTrackHistory.getTarget(block);
+                if (target == null) {
+                    continue; // A free block.
+                }
+                int fixes = mTrackHistory.getCoordinates(block, time - TRAIL_DURATION, plane,
+                        coordinates, 0);
+                getTargetCoordinates(target, time, mTrailPosition);
+                final float x = mTrailPosition[0];
+                final float y = mTrailPosition[1];
+                final float z = mTrailPosition[2];
+                if (fixes == 0 || x * x + y * y + z * z > distanceSquared) {
+                    continue;
+                }
+                System.arraycopy(mTrailPosition, 0, coordinates, fixes * 3, 3);
+                ++fixes;
+                if (count + (fixes - 1) * 2 > capacity) {
+                    break;
+                }
+                final int color = target.getColor();
+                final float red = ((color >> 16) & 0xff) / 255.0f;
+                final float green = ((color >> 8) & 0xff) / 255.0f;
+                final float blue = (color & 0xff) / 255.0f;
+                for (int i = 0; i < fixes - 1; ++i) {
+                    for (int j = i; j <= i + 1; ++j) {
+                        final float alpha = (j + 1) / (float) fixes;
+                        final int offset = count * TRAIL_VERTEX_SIZE;
+                        vertices[offset] = coordinates[j * 3];
+                        vertices[offset + 1] = coordinates[j * 3 + 1];
+                        vertices[offset + 2] = coordinates[j * 3 + 2];
+                        vertices[offset + 3] = red * alpha;
+                        vertices[offset + 4] = green * alpha;
+                        vertices[offset + 5] = blue * alpha;
+                        vertices[offset + 6] = alpha;
+                        ++count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves the x, y, z at the offset along the track of the aircraft.
+     *
+     * @param heading the heading in degrees, 0 if unknown.
+     * @param groundSpeed the ground speed in km/h.
+     * @param climbRate the rate of climb in m/s.
+     * @param turnRate the turn rate in deg/s.
+     * @param age the time since the position was received in seconds.
+     */
+    static void predict(double heading, double groundSpeed, double climbRate, double turnRate,
+                        double age, float[] coordinates, int offset) {
+        final double trackInDegrees = heading;
         if (trackInDegrees == 0) {
             return; // No track => no prediction!
         }
 
-        final double timeDeltaInSeconds = Math.max(0,
-                Math.min((time - target.getPositionTime()) * 0.001, MAX_PREDICTION_TIME));
+        final double timeDeltaInSeconds = Math.max(0, Math.min(age, MAX_PREDICTION_TIME));
         final double trackInRadians = Math.toRadians(trackInDegrees);
-        final double turnRateInDegreesPerSecond = aircraft.getTurnRate();
-        final double groundSpeedInMetrePerSecond = aircraft.getGroundSpeed() / 3.6;
+        final double turnRateInDegreesPerSecond = turnRate;
+        final double groundSpeedInMetrePerSecond = groundSpeed / 3.6;
 
         if (Math.abs(turnRateInDegreesPerSecond) < 1.0) {
-            coordinates[0] += (float) (groundSpeedInMetrePerSecond * Math.sin(trackInRadians)
-                    * timeDeltaInSeconds);
-            coordinates[1] += (float) (groundSpeedInMetrePerSecond * Math.cos(trackInRadians)
+            coordinates[offset] += (float) (groundSpeedInMetrePerSecond * Math.sin(trackInRadians)
                     * timeDeltaInSeconds);
+            coordinates[offset + 1] += (float) (groundSpeedInMetrePerSecond
+                    * Math.cos(trackInRadians) * timeDeltaInSeconds);
         } else {
             // FIXME: maybe just take the fact that it may be negative and simplify the code? try
             //  it after testing
@@ -237,31 +951,123 @@ public final class World {
             }
             final double newTrackInRadians = Math.toRadians(newTrackInDegrees);
             if (turnRateInDegreesPerSecond > 0) {
-                final double centerX = coordinates[0]
+                final double centerX = coordinates[offset]
                         + Math.cos(trackInRadians) * turnRadiusInMeters;
-                final double centerY = coordinates[1]
+                final double centerY = coordinates[offset + 1]
                         - Math.sin(trackInRadians) * turnRadiusInMeters;
-                coordinates[0] =
+                coordinates[offset] =
                         (float) (centerX - Math.cos(newTrackInRadians) * turnRadiusInMeters);
-                coordinates[1] =
+                coordinates[offset + 1] =
                         (float) (centerY + Math.sin(newTrackInRadians) * turnRadiusInMeters);
             } else {
-                final double centerX = coordinates[0]
+                final double centerX = coordinates[offset]
                         - Math.cos(trackInRadians) * turnRadiusInMeters;
-                final double centerY = coordinates[1]
+                final double centerY = coordinates[offset + 1]
                         + Math.sin(trackInRadians) * turnRadiusInMeters;
-                coordinates[0] =
+                coordinates[offset] =
                         (float) (centerX + Math.cos(newTrackInRadians) * turnRadiusInMeters);
-                coordinates[1] =
+                coordinates[offset + 1] =
                         (float) (centerY - Math.sin(newTrackInRadians) * turnRadiusInMeters);
             }
         }
-        coordinates[2] += (float) (aircraft.getClimbRate() * timeDeltaInSeconds);
+        coordinates[offset + 2] += (float) (climbRate * timeDeltaInSeconds);
     }
 
     public void clear() {
-        synchronized (mTargetMap) {
-            mTargetMap.clear();
+        synchronized (mLock) {
+            mExpiryWheel.clear();
+            mSpatialIndex.clear();
+            mTargetStore.clear();
+            mTrackHistory.clear();
+            mCollisionAlerter.clear();
+            mAircraft.clear();
+            mReceivers.clear();
+            mPredictionErrorCount = 0;
+            mPredictionErrorSquares = 0;
+            mPredictionErrorMax = 0;
+        }
+    }
+
+    /**
+     * Computes the coordinates of a range of chunks, splitting it in halves until a single chunk
+     * is left.
+     *
+     * <p>The chunks have disjoint slots and disjoint output ranges, so no synchronization between
+     * the tasks is needed. The caller holds the store lock for all of them.</p>
+     */
+    private static final class CoordinatesTask extends RecursiveAction {
+        private final TargetStore mStore;
+        private final LocalTangentPlane mPlane;
+        private final boolean mPrediction;
+        private final long mTime;
+        private final int[] mOffsets;
+        private final int mFromChunk;
+        private final int mToChunk;
+        private final int mCapacity;
+        private final float[] mPackedOut;
+        private final int[] mIdsOut;
+
+        CoordinatesTask(TargetStore store, LocalTangentPlane plane, boolean prediction, long time,
+                        int[] offsets, int fromChunk, int toChunk, int capacity,
+                        float[] packedOut, int[] idsOut) {
+            mStore = store;
+            mPlane = plane;
+            mPrediction = prediction;
+            mTime = time;
+            mOffsets = offsets;
+            mFromChunk = fromChunk;
+            mToChunk = toChunk;
+            mCapacity = capacity;
+            mPackedOut = packedOut;
+            mIdsOut = idsOut;
         }
+
+        @Override
+        protected void compute() {
+            if (mToChunk - mFromChunk > 1) {
+                final int middle = (mFromChunk + mToChunk) >>> 1;
+                invokeAll(new CoordinatesTask(mStore, mPlane, mPrediction, mTime, mOffsets,
+                                mFromChunk, middle, mCapacity, mPackedOut, mIdsOut),
+                        new CoordinatesTask(mStore, mPlane, mPrediction, mTime, mOffsets,
+                                middle, mToChunk, mCapacity, mPackedOut, mIdsOut));
+                return;
+            }
+            final int fromSlot = mFromChunk * PARALLEL_CHUNK_SIZE;
+            final int toSlot = Math.min(fromSlot + PARALLEL_CHUNK_SIZE, mStore.getSize());
+            computeCoordinates(mStore, mPlane, mPrediction, mTime, fromSlot, toSlot,
+                    mOffsets[mFromChunk], mCapacity, mPackedOut, mIdsOut);
+        }
+    }
+
+    /**
+     * The coordinates of an estimate in a plane, cached until either of them changes.
+     */
+    static final class LocalPosition {
+        final Estimate mEstimate;
+        final LocalTangentPlane mPlane;
+        final float mEast;
+        final float mNorth;
+        final float mUp;
+
+        LocalPosition(Estimate estimate, LocalTangentPlane plane, float[] coordinates) {
+            mEstimate = estimate;
+            mPlane = plane;
+            mEast = coordinates[0];
+            mNorth = coordinates[1];
+            mUp = coordinates[2];
+        }
+    }
+
+    public interface OnTargetExpiredListener {
+        void onTargetExpired(Target target);
+    }
+
+    public interface OnCollisionAlertListener {
+        /**
+         * Called when the aircraft or the level of the most urgent alert changes.
+         *
+         * @param alert the new alert or null if there is none any more.
+         */
+        void onCollisionAlert(@Nullable CollisionAlert alert);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.terrain;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+@RunWith(RobolectricTestRunner.class)
+public class TerrainTest {
+    // A coarse tile, 0.01 degrees between the samples.
+    private static final int SIZE = 101;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Terrain mTerrain;
+
+    @Before
+    public void setUp() throws IOException {
+        // A plain at 300 m with a 2000 m ridge from north to south at 7.5 degrees east, and a hole
+        // in the data at the south-east corner.
+        try (DataOutputStream stream = new DataOutputStream(
+                new FileOutputStream(mFolder.newFile("N49E007.hgt")))) {
+            for (int row = 0; row < SIZE; ++row) {
+                for (int column = 0; column < SIZE; ++column) {
+                    if (row == SIZE - 1 && column == SIZE - 1) {
+                        stream.writeShort(-32768);
+                    } else {
+                        stream.writeShort(column == 50 ? 2000 : 300);
+                    }
+                }
+            }
+        }
+        mTerrain = new Terrain(mFolder.getRoot());
+    }
+
+    @Test
+    public void testElevation() {
+        Assert.assertEquals(300, mTerrain.getElevation(49.5, 7.2), 1e-6);
+        Assert.assertEquals(2000, mTerrain.getElevation(49.5, 7.5), 1e-6);
+        // Half way between the samples.
+        Assert.assertEquals(1150, mTerrain.getElevation(49.5, 7.505), 1e-6);
+        Assert.assertTrue(Double.isNaN(mTerrain.getElevation(49.005, 7.995)));
+        // No such tile.
+        Assert.assertTrue(Double.isNaN(mTerrain.getElevation(48.5, 7.5)));
+    }
+
+    @Test
+    public void testOcclusion() {
+        // Behind the ridge.
+        Assert.assertTrue(mTerrain.isOccluded(49.5, 7.2, 400, 49.5, 7.8, 1000));
+        Assert.assertTrue(mTerrain.isOccluded(49.5, 7.8, 1000, 49.5, 7.2, 400));
+        // High enough to be seen over the ridge.
+        Assert.assertFalse(mTerrain.isOccluded(49.5, 7.2, 400, 49.5, 7.8, 4000));
+        // On this side of the ridge.
+        Assert.assertFalse(mTerrain.isOccluded(49.5, 7.2, 400, 49.5, 7.4, 400));
+        // Beyond the known tiles.
+        Assert.assertFalse(mTerrain.isOccluded(48.5, 7.2, 400, 48.5, 7.8, 400));
+    }
+
+    @Test
+    public void testCache() {
+        final OcclusionCache cache = new OcclusionCache(mTerrain);
+        cache.setViewer(49.5, 7.2, 400);
+        final Object[] targets = new Object[OcclusionCache.MAX_CHECKS_PER_FRAME + 1];
+        for (int i = 0; i < targets.length; ++i) {
+            targets[i] = new Object();
+        }
+        for (int i = 0; i < OcclusionCache.MAX_CHECKS_PER_FRAME; ++i) {
+            Assert.assertTrue(cache.isOccluded(i, targets[i], 49.5, 7.8, 1000));
+        }
+        // Out of budget for this frame, but the known results are still there.
+        final int last = OcclusionCache.MAX_CHECKS_PER_FRAME;
+        Assert.assertFalse(cache.isOccluded(last, targets[last], 49.5, 7.8, 1000));
+        Assert.assertTrue(cache.isOccluded(0, targets[0], 49.5, 7.8, 1000));
+
+        // The next frame.
+        cache.setViewer(49.5, 7.2, 400);
+        Assert.assertTrue(cache.isOccluded(last, targets[last], 49.5, 7.8, 1000));
+
+        // The target has climbed over the ridge.
+        Assert.assertFalse(cache.isOccluded(0, targets[0], 49.5, 7.8, 4000));
+
+        // Another target in a reused slot.
+        Assert.assertFalse(cache.isOccluded(1, new Object(), 49.5, 7.4, 400));
+
+        // The viewer has moved onto the ridge.
+        cache.setViewer(49.5, 7.5, 2010);
+        Assert.assertFalse(cache.isOccluded(2, targets[2], 49.5, 7.8, 1000));
+    }
+}
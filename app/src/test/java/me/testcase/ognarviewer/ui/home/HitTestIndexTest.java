@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import me.testcase.ognarviewer.world.Aircraft;
+
+@RunWith(RobolectricTestRunner.class)
+public class HitTestIndexTest {
+    @Test
+    public void testQuery() {
+        final HitTestIndex index = new HitTestIndex();
+        Assert.assertTrue(index.query(100, 100).getTargets().isEmpty());
+
+        final Aircraft far = new Aircraft("FLR000001", 1);
+        final Aircraft near = new Aircraft("FLR000002", 2);
+        final Aircraft other = new Aircraft("FLR000003", 3);
+        // 200x400 dp at 2 px per dp, so the view is 400x800 px with (0, 0) in the middle.
+        index.begin(200, 400, 2);
+        index.addTarget(far, "D-1234", 0, 0, 25, 5000);
+        index.addTarget(near, "D-5678", 10, 10, 25, 1000);
+        index.addTarget(other, "D-9999", -80, 150, 25, 3000);
+        index.addCluster(new float[]{0, 0, -1}, 0, -20, 25, 20000);
+
+        // Nothing is visible until the frame is published.
+        Assert.assertTrue(index.query(200, 400).getTargets().isEmpty());
+        index.publish();
+
+        HitTestIndex.Result result = index.query(200, 400);
+        Assert.assertEquals(2, result.getTargets().size());
+        Assert.assertSame(near, result.getTargets().get(0));
+        Assert.assertSame(far, result.getTargets().get(1));
+        Assert.assertEquals("D-5678", result.getNames().get(0));
+        Assert.assertTrue(result.isCluster());
+
+        result = index.query(40, 100);
+        Assert.assertEquals(1, result.getTargets().size());
+        Assert.assertSame(other, result.getTargets().get(0));
+        Assert.assertFalse(result.isCluster());
+
+        result = index.query(200, 480);
+        Assert.assertTrue(result.getTargets().isEmpty());
+        Assert.assertTrue(result.isCluster());
+        Assert.assertEquals(-1, result.getClusterDirection()[2], 0);
+
+        Assert.assertTrue(index.query(380, 20).getTargets().isEmpty());
+        Assert.assertFalse(index.query(380, 20).isCluster());
+
+        // The next frame replaces the previous one.
+        index.begin(200, 400, 2);
+        index.publish();
+        Assert.assertTrue(index.query(200, 400).getTargets().isEmpty());
+        Assert.assertFalse(index.query(200, 400).isCluster());
+    }
+}
@@ -381,22 +381,32 @@ public class HomeViewModelTest {
         // FIXME: make a mock Client instead, don't call onAprsMessage() directly.
         final AircraftLocationMessage message = new AircraftLocationMessage();
         message.callSign = "FLR3EE227";
+        message.id = 0x063EE227;
+        message.latitude = 49.1;
+        message.longitude = 7.1;
+        message.timestamp = CalibratedClock.currentTimeMillis() + 1000;
         mModel.onAprsMessage(message);
 
         // onAprsMessage() should emit the same value again, otherwise the bottom sheet will not be updated.
         Assert.assertEquals(aircraft, mModel.getSelectedTarget().getValue());
         Assert.assertEquals(3, observer.targets.size());
+        message.timestamp += 1000;
         mModel.onAprsMessage(message);
         Assert.assertEquals(aircraft, mModel.getSelectedTarget().getValue());
         Assert.assertEquals(4, observer.targets.size());
+        // The same or an outdated beacon changes nothing, so there is nothing to update.
+        mModel.onAprsMessage(message);
+        message.timestamp -= 5000;
         mModel.onAprsMessage(message);
         Assert.assertEquals(aircraft, mModel.getSelectedTarget().getValue());
-        Assert.assertEquals(5, observer.targets.size());
+        Assert.assertEquals(4, observer.targets.size());
         // If it was another aircraft, do not update.
         message.callSign = "FLR3D238E";
+        message.id = 0x0A3D238E;
+        message.timestamp += 10000;
         mModel.onAprsMessage(message);
         Assert.assertEquals(aircraft, mModel.getSelectedTarget().getValue());
-        Assert.assertEquals(5, observer.targets.size());
+        Assert.assertEquals(4, observer.targets.size());
 
         mModel.getSelectedTarget().removeObserver(observer);
     }
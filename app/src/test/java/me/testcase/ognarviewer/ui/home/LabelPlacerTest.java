@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LabelPlacerTest {
+    @Test
+    public void testSeparateLabels() {
+        final LabelPlacer placer = new LabelPlacer();
+        placer.reset(400, 800);
+        placer.add(-100, 0, -1, "A", 20, "1 km", 40, 0, 10);
+        placer.add(100, 0, -1, null, 0, "2 km", 40, 0, 20);
+        placer.place();
+        Assert.assertEquals(2, placer.size());
+        Assert.assertEquals(2, placer.getLines(0));
+        Assert.assertEquals(-100, placer.getX(0), 0);
+        Assert.assertEquals(-LabelPlacer.MARKER_OFFSET, placer.getY(0), 0);
+        Assert.assertEquals(1, placer.getLines(1));
+        Assert.assertEquals(100, placer.getX(1), 0);
+        Assert.assertEquals("2 km", placer.getDistance(1).toString());
+    }
+
+    @Test
+    public void testAlternativeAnchors() {
+        final LabelPlacer placer = new LabelPlacer();
+        placer.reset(400, 800);
+        // The same marker five times: below, above, right, left, then nothing.
+        for (int i = 0; i < 5; ++i) {
+            placer.add(0, 0, -1, null, 0, "1 km", 40, 0, i);
+        }
+        placer.place();
+        Assert.assertEquals(-LabelPlacer.MARKER_OFFSET, placer.getY(0), 0);
+        Assert.assertEquals(LabelPlacer.MARKER_OFFSET, placer.getY(1), 0);
+        Assert.assertEquals(LabelPlacer.MARKER_SIDE_OFFSET + 20, placer.getX(2), 0);
+        Assert.assertEquals(0, placer.getY(2), 0);
+        Assert.assertEquals(-LabelPlacer.MARKER_SIDE_OFFSET - 20, placer.getX(3), 0);
+        Assert.assertEquals(0, placer.getLines(4));
+    }
+
+    @Test
+    public void testPriority() {
+        final LabelPlacer placer = new LabelPlacer();
+        placer.reset(400, 800);
+        // Added first, but less important.
+        placer.add(0, 0, -1, "FAR", 30, "9 km", 40, 0, 9000);
+        placer.add(0, 0, -1, "NEAR", 40, "1 km", 40, 0, 1000);
+        placer.place();
+        Assert.assertEquals(-LabelPlacer.MARKER_OFFSET, placer.getY(1), 0);
+        Assert.assertEquals(LabelPlacer.MARKER_OFFSET + LabelPlacer.LINE_HEIGHT, placer.getY(0),
+                0);
+    }
+
+    @Test
+    public void testCollapse() {
+        final LabelPlacer placer = new LabelPlacer();
+        placer.reset(400, 800);
+        // Walls on every side leave room for a single line below the marker only.
+        placer.add(0, -30, -1, null, 0, "wall", 200, 0, 0);
+        placer.add(0, 76, -1, null, 0, "wall", 200, 0, 1);
+        placer.add(0, 48, -1, "wall", 400, "wall", 400, 0, 2);
+        placer.add(0, 0, -1, "A", 20, "1 km", 40, 0, 3);
+        placer.place();
+        Assert.assertEquals(1, placer.getLines(0));
+        Assert.assertEquals(1, placer.getLines(1));
+        Assert.assertEquals(2, placer.getLines(2));
+        Assert.assertEquals(1, placer.getLines(3));
+        Assert.assertEquals(-LabelPlacer.MARKER_OFFSET, placer.getY(3), 0);
+    }
+
+    @Test
+    public void testReuse() {
+        final LabelPlacer placer = new LabelPlacer();
+        final StringBuilder distance = new StringBuilder();
+        for (int frame = 0; frame < 2; ++frame) {
+            placer.reset(400, 800);
+            for (int i = 0; i < 100; ++i) {
+                distance.setLength(0);
+                distance.append(i);
+                placer.add(0, 0, -1, null, 0, distance, 20, 0, i);
+            }
+            placer.place();
+            Assert.assertEquals(100, placer.size());
+            Assert.assertEquals("42", placer.getDistance(42).toString());
+            Assert.assertEquals(4, placer.getLines(3) + placer.getLines(2) + placer.getLines(1)
+                    + placer.getLines(0));
+            Assert.assertEquals(0, placer.getLines(99));
+        }
+    }
+}
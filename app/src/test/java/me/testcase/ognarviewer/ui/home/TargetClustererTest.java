@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.ui.home;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TargetClustererTest {
+    @Test
+    public void testCluster() {
+        final TargetClusterer clusterer = new TargetClusterer();
+        for (int frame = 0; frame < 2; ++frame) {
+            clusterer.reset(480, 800);
+            clusterer.add(0, null, 1, 1, 20000, 1);
+            clusterer.add(1, null, 3, 5, 15000, 2);
+            clusterer.add(2, null, 200, 300, 30000, 3);
+            clusterer.cluster();
+            Assert.assertEquals(2, clusterer.getClusterCount());
+
+            Assert.assertEquals(2, clusterer.getClusterSize(0));
+            Assert.assertEquals(2, clusterer.getClusterX(0), 0);
+            Assert.assertEquals(3, clusterer.getClusterY(0), 0);
+            final int nearest = clusterer.getNearest(0);
+            Assert.assertEquals(1, clusterer.getIndex(nearest));
+            Assert.assertEquals(2, clusterer.getColor(nearest));
+            int size = 0;
+            for (int i = clusterer.getFirst(0); i != -1; i = clusterer.getNext(i)) {
+                ++size;
+            }
+            Assert.assertEquals(2, size);
+
+            Assert.assertEquals(1, clusterer.getClusterSize(1));
+            Assert.assertEquals(2, clusterer.getIndex(clusterer.getNearest(1)));
+        }
+    }
+
+    @Test
+    public void testOffscreen() {
+        final TargetClusterer clusterer = new TargetClusterer();
+        clusterer.reset(480, 800);
+        clusterer.addOffscreen(100, 0, 1, 20000, 1);
+        clusterer.addOffscreen(100, 1, 2, 15000, 2);
+        clusterer.addOffscreen(100, 2, 3, 25000, 3);
+        clusterer.addOffscreen(-100, 0, -179, 20000, 4);
+        int arrows = 0;
+        for (int direction = 0; direction < TargetClusterer.DIRECTIONS; ++direction) {
+            if (clusterer.hasArrow(direction)) {
+                ++arrows;
+            }
+        }
+        Assert.assertEquals(2, arrows);
+        Assert.assertTrue(clusterer.hasArrow(0));
+        Assert.assertEquals(2, clusterer.getArrowColor(0));
+        Assert.assertEquals(2, clusterer.getArrowAngle(0), 0);
+        Assert.assertTrue(clusterer.hasArrow(TargetClusterer.DIRECTIONS / 2));
+        Assert.assertEquals(4, clusterer.getArrowColor(TargetClusterer.DIRECTIONS / 2));
+
+        clusterer.reset(480, 800);
+        Assert.assertFalse(clusterer.hasArrow(0));
+    }
+}
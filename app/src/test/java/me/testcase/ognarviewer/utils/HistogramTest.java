@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (long value = 0; value < 100000; ++value) {
+            final int index = Histogram.indexOf(value);
+            Assert.assertTrue(value <= Histogram.highestValueOf(index));
+            if (index > 0) {
+                Assert.assertTrue(value > Histogram.highestValueOf(index - 1));
+            }
+            // Within about 6%.
+            Assert.assertTrue(Histogram.highestValueOf(index) - value <= value / 16);
+            Assert.assertTrue(index >= previous);
+            previous = index;
+        }
+        Assert.assertEquals(Histogram.MAX_VALUE,
+                Histogram.highestValueOf(Histogram.indexOf(Histogram.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getPercentile(0.5));
+        Assert.assertEquals(0, histogram.getMax());
+
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.add(i);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        assertNear(500, histogram.getPercentile(0.5));
+        assertNear(950, histogram.getPercentile(0.95));
+        assertNear(990, histogram.getPercentile(0.99));
+        assertNear(1000, histogram.getMax());
+        Assert.assertEquals(1, histogram.getPercentile(0));
+
+        histogram.add(Long.MAX_VALUE);
+        histogram.add(-5);
+        Assert.assertEquals(Histogram.MAX_VALUE, histogram.getMax());
+        Assert.assertEquals(0, histogram.getPercentile(0));
+
+        histogram.clear();
+        Assert.assertEquals(0, histogram.getCount());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(actual + " is not near " + expected,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+}
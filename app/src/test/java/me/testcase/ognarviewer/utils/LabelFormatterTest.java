@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+public class LabelFormatterTest {
+    private static final DecimalFormatSymbols US = DecimalFormatSymbols.getInstance(Locale.US);
+
+    @Test
+    public void testInteger() {
+        final LabelFormatter formatter = new LabelFormatter("%d m", 1, US);
+        Assert.assertEquals("0 m", formatter.format(0).toString());
+        Assert.assertEquals("1 m", formatter.format(0.5).toString());
+        Assert.assertEquals("999 m", formatter.format(999.4).toString());
+        Assert.assertEquals("1000 m", formatter.format(999.5).toString());
+    }
+
+    @Test
+    public void testFixedPoint() {
+        final LabelFormatter formatter = new LabelFormatter("%.1f km", 1000, US);
+        Assert.assertEquals("1.0 km", formatter.format(1000).toString());
+        Assert.assertEquals("1.1 km", formatter.format(1050).toString());
+        Assert.assertEquals("12.3 km", formatter.format(12345).toString());
+        Assert.assertEquals("0.0 km", formatter.format(49).toString());
+
+        final LabelFormatter precise = new LabelFormatter("%.3f", 1, US);
+        Assert.assertEquals("3.007", precise.format(3.007).toString());
+        Assert.assertEquals("-0.250", precise.format(-0.25).toString());
+    }
+
+    @Test
+    public void testSameAsStringFormat() {
+        final LabelFormatter formatter = new LabelFormatter("%.1f NM",
+                UnitsConverter.METRES_PER_NAUTICAL_MILE, US);
+        for (int metres = 0; metres < 100000; metres += 37) {
+            final String expected = String.format(Locale.US, "%.1f NM",
+                    UnitsConverter.metresToNauticalMiles(metres));
+            Assert.assertEquals(expected, formatter.format(metres).toString());
+        }
+    }
+
+    @Test
+    public void testPattern() {
+        final LabelFormatter formatter = new LabelFormatter("~%1$.2f mi!", 1,
+                DecimalFormatSymbols.getInstance(Locale.GERMANY));
+        Assert.assertEquals("~1,50 mi!", formatter.format(1.5).toString());
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new LabelFormatter("no conversion", 1, US));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new LabelFormatter("%s km", 1, US));
+    }
+
+    @Test
+    public void testCache() {
+        final LabelFormatter formatter = new LabelFormatter("%.1f km", 1000, US);
+        final CharSequence label = formatter.format(1234);
+        Assert.assertSame(label, formatter.format(1249));
+        Assert.assertEquals("1.2 km", label.toString());
+        // Another value in the same slot.
+        formatter.format(1234 + 256 * 100);
+        Assert.assertEquals("26.8 km", formatter.format(26834).toString());
+        Assert.assertEquals("1.2 km", formatter.format(1234).toString());
+    }
+}
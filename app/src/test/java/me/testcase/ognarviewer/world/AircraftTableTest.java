@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class AircraftTableTest {
+    @Test
+    public void testTable() {
+        final AircraftTable table = new AircraftTable();
+        final Map<Long, Aircraft> expected = new HashMap<>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            // Few distinct ids, so there are many collisions and removals.
+            final long id = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                table.remove(id);
+                expected.remove(id);
+            } else {
+                final Aircraft aircraft = new Aircraft(String.format("FLR%06X", id), id);
+                table.put(id, aircraft);
+                expected.put(id, aircraft);
+            }
+            if (i % 1000 == 0) {
+                for (long j = 0; j < 2000; ++j) {
+                    Assert.assertEquals(expected.get(j), table.get(j));
+                }
+            }
+        }
+        Assert.assertEquals(expected.size(), table.size());
+        for (long j = 0; j < 2000; ++j) {
+            Assert.assertEquals(expected.get(j), table.get(j));
+        }
+
+        // Zero is a valid id too.
+        final Aircraft aircraft = new Aircraft("FLR000000", 0);
+        table.put(0, aircraft);
+        Assert.assertEquals(aircraft, table.get(0));
+
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        Assert.assertNull(table.get(0));
+    }
+}
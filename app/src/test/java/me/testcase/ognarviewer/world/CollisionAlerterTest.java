@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.testcase.ognarviewer.CalibratedClock;
+
+@RunWith(RobolectricTestRunner.class)
+public class CollisionAlerterTest {
+    private static final long TIME = 1700000000000L;
+
+    // About 1 km in latitude.
+    private static final double KILOMETER = 1 / 111.32;
+
+    @Test
+    public void testLevels() {
+        final World world = createWorld();
+        final List<CollisionAlert> alerts = new ArrayList<>();
+        world.setOnCollisionAlertListener(alerts::add);
+
+        // 2 km south, heading north at 360 km/h, i.e. 20 seconds to the viewer. No alert yet.
+        world.addAircraft("FLR000001", 0x06000001, 49 - 2 * KILOMETER, 7, 1000, TIME, 360, 360,
+                0, 0);
+        Assert.assertNull(world.getCollisionAlert());
+        Assert.assertTrue(alerts.isEmpty());
+
+        // 15 seconds.
+        world.addAircraft("FLR000001", 0x06000001, 49 - 1.5 * KILOMETER, 7, 1000, TIME + 5000,
+                360, 360, 0, 0);
+        CollisionAlert alert = world.getCollisionAlert();
+        Assert.assertNotNull(alert);
+        Assert.assertEquals(CollisionAlert.LEVEL_LOW, alert.getLevel());
+        Assert.assertEquals(15, alert.getTime(), 0.5);
+        Assert.assertEquals(0, alert.getDistance(), 5);
+        Assert.assertEquals(1, alerts.size());
+
+        // 10 seconds.
+        world.addAircraft("FLR000001", 0x06000001, 49 - 1 * KILOMETER, 7, 1000, TIME + 10000,
+                360, 360, 0, 0);
+        Assert.assertEquals(CollisionAlert.LEVEL_IMPORTANT, world.getCollisionAlert().getLevel());
+
+        // 5 seconds.
+        world.addAircraft("FLR000001", 0x06000001, 49 - 0.5 * KILOMETER, 7, 1000, TIME + 15000,
+                360, 360, 0, 0);
+        Assert.assertEquals(CollisionAlert.LEVEL_URGENT, world.getCollisionAlert().getLevel());
+        Assert.assertEquals(3, alerts.size());
+
+        // Passed.
+        world.addAircraft("FLR000001", 0x06000001, 49 + 0.5 * KILOMETER, 7, 1000, TIME + 25000,
+                360, 360, 0, 0);
+        Assert.assertNull(world.getCollisionAlert());
+        Assert.assertEquals(4, alerts.size());
+        Assert.assertNull(alerts.get(3));
+
+        Assert.assertTrue(world.getCollisionAlertLatencyMean() < 10);
+        Assert.assertTrue(world.getCollisionAlertLatencyMax() >= 0);
+    }
+
+    @Test
+    public void testMisses() {
+        final World world = createWorld();
+
+        // Passes 1 km east.
+        world.addAircraft("FLR000001", 0x06000001, 49 - 1 * KILOMETER, 7.0137, 1000, TIME, 360,
+                360, 0, 0);
+        // Passes 1000 m above.
+        world.addAircraft("FLR000002", 0x06000002, 49 - 1 * KILOMETER, 7, 2000, TIME, 360, 360,
+                0, 0);
+        // Flies away.
+        world.addAircraft("FLR000003", 0x06000003, 49 - 1 * KILOMETER, 7, 1000, TIME, 180, 360,
+                0, 0);
+        // Out of range.
+        world.addAircraft("FLR000004", 0x06000004, 49 - 10 * KILOMETER, 7, 1000, TIME, 360, 3600,
+                0, 0);
+        Assert.assertNull(world.getCollisionAlert());
+    }
+
+    @Test
+    public void testViewerMoves() {
+        final World world = createWorld();
+        final long now = CalibratedClock.currentTimeMillis();
+
+        // Slowly crossing 1 km north of the viewer at the same altitude, no risk...
+        world.addAircraft("FLR000001", 0x06000001, 49 + 1 * KILOMETER, 7, 1000, now, 90, 36, 0,
+                0);
+        Assert.assertNull(world.getCollisionAlert());
+
+        // ...until the viewer flies towards it at 100 m/s.
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(1000);
+        location.setSpeed(100);
+        location.setBearing(0);
+        world.setPosition(location);
+        Assert.assertEquals(CollisionAlert.LEVEL_IMPORTANT, world.getCollisionAlert().getLevel());
+
+        // The aircraft expires.
+        world.expireTargets(now + 3600000);
+        Assert.assertNull(world.getCollisionAlert());
+    }
+
+    @Test
+    public void testParked() {
+        final World world = createWorld();
+        // An airfield grid around the viewer, nobody moves.
+        for (int i = 0; i < 20; ++i) {
+            world.addAircraft("FLR", 0x06000000 + i, 49 + (i - 10) * 0.02 * KILOMETER, 7.001,
+                    1000, TIME);
+        }
+        Assert.assertNull(world.getCollisionAlert());
+
+        // Taking off 100 m away, but flying away from the viewer.
+        world.addAircraft("FLR", 0x06000100, 49 + 0.1 * KILOMETER, 7, 1000, TIME, 360, 100, 0,
+                0);
+        Assert.assertNull(world.getCollisionAlert());
+    }
+
+    @Test
+    public void testCandidates() {
+        final World world = createWorld();
+        // Flying away, so they are candidates without alerts.
+        for (int i = 0; i < CollisionAlerter.MAX_CANDIDATES * 2; ++i) {
+            world.addAircraft("FLR", 0x06000000 + i, 49 + (i + 1) * 0.01 * KILOMETER, 7, 1000,
+                    TIME, 360, 100, 0, 0);
+        }
+        Assert.assertNull(world.getCollisionAlert());
+
+        // The closest one on a collision course replaces a far one.
+        final Aircraft aircraft = world.addAircraft("FLR", 0x06000100, 49 - 0.1 * KILOMETER, 7,
+                1000, TIME, 360, 100, 0, 0);
+        final CollisionAlert alert = world.getCollisionAlert();
+        Assert.assertEquals(CollisionAlert.LEVEL_URGENT, alert.getLevel());
+        Assert.assertSame(aircraft, alert.getAircraft());
+    }
+
+    private static World createWorld() {
+        final World world = new World();
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(1000);
+        world.setPosition(location);
+        return world;
+    }
+}
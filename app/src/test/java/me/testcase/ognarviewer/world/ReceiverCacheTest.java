@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.os.Looper;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+
+import java.io.File;
+import java.io.IOException;
+
+import me.testcase.ognarviewer.CalibratedClock;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReceiverCacheTest {
+    private static final long TIME = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final World world = new World();
+        final Receiver receiver = world.addReceiver("Koenigstl", 50.2, 8.4, 800, TIME);
+        receiver.setVersion("v0.3.0.RPI-GPU");
+        receiver.setCpuLoad(0.5);
+        receiver.setFreeRam(100);
+        receiver.setTotalRam(1000);
+        receiver.setCpuTemperature(45);
+        receiver.setNtpOffset(0.25);
+        world.addReceiver("NoPos", 0, 0, 0, TIME); // Only the status was received.
+        world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350, TIME);
+
+        final File file = mFolder.newFile();
+        final ReceiverCache cache = new ReceiverCache(file);
+        cache.write(ReceiverCache.encode(world, TIME + 1000));
+
+        final World restored = new World();
+        Assert.assertEquals(1, cache.load(restored, TIME + 2000));
+        final Target[] targets = restored.getTargets(new Target[0]);
+        Assert.assertEquals(1, targets.length);
+        final Receiver copy = (Receiver) targets[0];
+        Assert.assertEquals("Koenigstl", copy.getCallSign());
+        Assert.assertEquals(50.2, copy.getSample().latitude, 0);
+        Assert.assertEquals(8.4, copy.getSample().longitude, 0);
+        Assert.assertEquals(800, copy.getSample().altitude, 0);
+        Assert.assertEquals(TIME, copy.getPositionTime());
+        Assert.assertEquals("v0.3.0.RPI-GPU", copy.getVersion());
+        Assert.assertEquals(0.5, copy.getCpuLoad(), 0);
+        Assert.assertEquals(100, copy.getFreeRam(), 0);
+        Assert.assertEquals(1000, copy.getTotalRam(), 0);
+        Assert.assertEquals(45, copy.getCpuTemperature(), 0);
+        Assert.assertEquals(0.25, copy.getNtpOffset(), 0);
+
+        // The restored receiver doesn't expire immediately despite its old position.
+        restored.expireTargets(TIME + 2000 + 60000);
+        Assert.assertEquals(1, restored.getTargetCount());
+
+        // Known receivers are not overwritten.
+        Assert.assertEquals(0, cache.load(restored, TIME + 3000));
+
+        // Nothing to load.
+        Assert.assertEquals(0, new ReceiverCache(new File(mFolder.getRoot(), "missing"))
+                .load(new World(), TIME));
+    }
+
+    @Test
+    public void testStatusAfterRestore() throws IOException {
+        // The app always runs on the current time, unlike the other tests.
+        final long now = CalibratedClock.currentTimeMillis();
+        final World world = new World();
+        world.addReceiver("Koenigstl", 50.2, 8.4, 800, now - 60 * 60 * 1000);
+        final byte[] data = ReceiverCache.encode(world, now);
+
+        final World restored = new World();
+        Assert.assertEquals(1, ReceiverCache.decode(data, restored, now));
+        // The status beacon doesn't bring the deadline forward to the old position time.
+        restored.addReceiver("Koenigstl", 0, 0, 0, now);
+        restored.expireTargets(now + 2000);
+        Assert.assertEquals(1, restored.getTargetCount());
+    }
+
+    @Test
+    public void testLoadInBackground() throws IOException, InterruptedException {
+        final long now = CalibratedClock.currentTimeMillis();
+        final World world = new World();
+        world.addReceiver("Koenigstl", 50.2, 8.4, 800, now);
+        final ReceiverCache cache = new ReceiverCache(mFolder.newFile());
+        cache.write(ReceiverCache.encode(world, now));
+
+        final World restored = new World();
+        cache.loadInBackground(restored);
+        // The file is read in the background, but the world is only changed on the main thread.
+        for (int i = 0; i < 100 && restored.getTargetCount() == 0; ++i) {
+            Thread.sleep(10);
+            Assert.assertEquals(0, restored.getTargetCount());
+            Shadows.shadowOf(Looper.getMainLooper()).idle();
+        }
+        Assert.assertEquals(1, restored.getTargetCount());
+
+        // Not into the demo world.
+        final World demo = new World();
+        demo.setDemo(true);
+        cache.loadInBackground(demo);
+        Thread.sleep(100);
+        Shadows.shadowOf(Looper.getMainLooper()).idle();
+        Assert.assertEquals(0, demo.getTargetCount());
+    }
+
+    @Test
+    public void testTrust() throws IOException {
+        final World world = new World();
+        world.addReceiver("Old", 50.2, 8.4, 800, TIME - ReceiverCache.MAX_POSITION_AGE);
+        final Receiver receiver = world.addReceiver("New", 50.3, 8.5, 900, TIME);
+        receiver.setCpuLoad(0.5);
+        final byte[] data = ReceiverCache.encode(world, TIME);
+
+        // The status is too old, but the position is not.
+        World restored = new World();
+        Assert.assertEquals(1, ReceiverCache.decode(data, restored,
+                TIME + ReceiverCache.MAX_STATUS_AGE + 1));
+        Receiver copy = (Receiver) restored.getTargets(new Target[0])[0];
+        Assert.assertEquals("New", copy.getCallSign());
+        Assert.assertTrue(Double.isNaN(copy.getCpuLoad()));
+
+        // Both are fine.
+        restored = new World();
+        Assert.assertEquals(1, ReceiverCache.decode(data, restored, TIME + 1));
+        copy = (Receiver) restored.getTargets(new Target[0])[0];
+        Assert.assertEquals(0.5, copy.getCpuLoad(), 0);
+
+        // A corrupted file.
+        final ReceiverCache cache = new ReceiverCache(mFolder.newFile());
+        cache.write(new byte[]{1, 2, 3});
+        Assert.assertEquals(0, cache.load(new World(), TIME));
+    }
+}
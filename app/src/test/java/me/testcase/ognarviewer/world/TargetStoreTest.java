@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import me.testcase.ognarviewer.CalibratedClock;
+
+@RunWith(RobolectricTestRunner.class)
+public class TargetStoreTest {
+    private static final long TIME = 1721460905000L;
+
+    @Test
+    public void testSlots() {
+        final TargetStore store = new TargetStore();
+        final Aircraft aircraft1 = new Aircraft("FLR3EE227", 0x063EE227);
+        final Aircraft aircraft2 = new Aircraft("FLR3D238E", 0x0A3D238E);
+        final Receiver receiver = new Receiver("TEST");
+
+        store.add(aircraft1);
+        store.add(aircraft2);
+        Assert.assertEquals(0, aircraft1.mSlot);
+        Assert.assertEquals(1, aircraft2.mSlot);
+        Assert.assertEquals(2, store.getCount());
+
+        store.remove(aircraft1);
+        Assert.assertEquals(-1, aircraft1.mSlot);
+        Assert.assertNull(store.mTargets[0]);
+        Assert.assertEquals(1, store.getCount());
+
+        // The freed slot is reused.
+        store.add(receiver);
+        Assert.assertEquals(0, receiver.mSlot);
+        Assert.assertEquals(2, store.getSize());
+
+        // Removing twice does nothing.
+        store.remove(aircraft1);
+        Assert.assertEquals(2, store.getCount());
+
+        // The columns grow.
+        for (int i = 0; i < 100; ++i) {
+            store.add(new Receiver("TEST" + i));
+        }
+        Assert.assertEquals(102, store.getCount());
+        Assert.assertEquals(receiver, store.mTargets[0]);
+        Assert.assertEquals(aircraft2, store.mTargets[1]);
+
+        store.clear();
+        Assert.assertEquals(0, store.getCount());
+        Assert.assertEquals(-1, receiver.mSlot);
+    }
+
+    @Test
+    public void testWriteThrough() {
+        final TargetStore store = new TargetStore();
+        final Aircraft aircraft = new Aircraft("FLR3EE227", 0x063EE227);
+        aircraft.setPosition(49.1, 7.1, 1350, TIME);
+        aircraft.setHeading(90);
+
+        // The current state is copied on add...
+        store.add(aircraft);
+        Assert.assertEquals(49.1, store.mLatitudes[0], 0);
+        Assert.assertEquals(90, store.mHeadings[0], 0);
+
+        // ...and then each change.
+        aircraft.setPosition(49.2, 7.2, 1400, TIME + 1000);
+        aircraft.setGroundSpeed(100);
+        aircraft.setClimbRate(1.5f);
+        aircraft.setTurnRate(3);
+        Assert.assertEquals(49.2, store.mLatitudes[0], 0);
+        Assert.assertEquals(7.2, store.mLongitudes[0], 0);
+        Assert.assertEquals(1400, store.mAltitudes[0], 0);
+        Assert.assertEquals(TIME + 1000, store.mPositionTimes[0]);
+        Assert.assertEquals(100, store.mGroundSpeeds[0], 0);
+        Assert.assertEquals(1.5f, store.mClimbRates[0], 0);
+        Assert.assertEquals(3, store.mTurnRates[0], 0);
+
+        // Old positions are ignored like by the target itself.
+        aircraft.setPosition(0, 0, 0, TIME);
+        Assert.assertEquals(49.2, store.mLatitudes[0], 0);
+
+        // Removed targets don't write anymore.
+        store.remove(aircraft);
+        aircraft.setHeading(180);
+        Assert.assertEquals(90, store.mHeadings[0], 0);
+    }
+
+    @Test
+    public void testComputeCoordinates() {
+        final World world = createWorld(500, new Random(42));
+        final float[] packed = new float[500 * 3];
+        final int[] ids = new int[500];
+        final float[] coordinates = new float[4];
+        Assert.assertEquals(500, world.getTargetCount());
+        for (long time = TIME; time < TIME + 15000; time += 2500) {
+            Assert.assertEquals(500, world.computeCoordinates(time, packed, ids));
+            for (int i = 0; i < 500; ++i) {
+                world.getTargetCoordinates(world.getTarget(ids[i]), time, coordinates);
+                Assert.assertEquals(coordinates[0], packed[i * 3], 0);
+                Assert.assertEquals(coordinates[1], packed[i * 3 + 1], 0);
+                Assert.assertEquals(coordinates[2], packed[i * 3 + 2], 0);
+            }
+        }
+
+        // Too small arrays are not overrun.
+        Assert.assertEquals(10, world.computeCoordinates(TIME, packed, new int[10]));
+
+        Assert.assertNull(world.getTarget(500));
+    }
+
+    @Test
+    public void testComputeCoordinatesInRange() {
+        final World world = createWorld(500, new Random(42));
+        final float[] all = new float[500 * 3];
+        final int[] allIds = new int[500];
+        final float[] inRange = new float[500 * 3];
+        final int[] inRangeIds = new int[500];
+        final long time = TIME + 5000;
+        Assert.assertEquals(500, world.computeCoordinates(time, all, allIds));
+        final int count = world.computeCoordinates(time, 20000, inRange, inRangeIds);
+        Assert.assertTrue(count < 500);
+
+        // Each target within the distance is found, with the same coordinates.
+        int expected = 0;
+        for (int i = 0; i < 500; ++i) {
+            final float x = all[i * 3];
+            final float y = all[i * 3 + 1];
+            if (x * x + y * y > 20000 * 20000) {
+                continue;
+            }
+            ++expected;
+            int j = 0;
+            while (inRangeIds[j] != allIds[i]) {
+                ++j;
+                Assert.assertTrue(j < count);
+            }
+            Assert.assertEquals(x, inRange[j * 3], 0);
+            Assert.assertEquals(y, inRange[j * 3 + 1], 0);
+            Assert.assertEquals(all[i * 3 + 2], inRange[j * 3 + 2], 0);
+        }
+        Assert.assertTrue(expected > 0);
+        Assert.assertTrue(count >= expected);
+
+        // Too small arrays are not overrun.
+        Assert.assertEquals(1, world.computeCoordinates(time, 20000, inRange, new int[1]));
+    }
+
+    @Test
+    public void testComputeCoordinatesParallel() {
+        final World world = createWorld(5000, new Random(42));
+        // Let every 7th target expire to leave some holes.
+        final long now = CalibratedClock.currentTimeMillis();
+        for (int i = 0; i < 5000; ++i) {
+            final Target target = world.getTarget(i);
+            final Sample sample = target.getSample();
+            if (i % 7 == 0) {
+                continue;
+            } else if (target instanceof Aircraft) {
+                world.addAircraft(target.getCallSign(), i, sample.latitude, sample.longitude,
+                        sample.altitude, now);
+            } else {
+                world.addReceiver(target.getCallSign(), sample.latitude, sample.longitude,
+                        sample.altitude, now);
+            }
+        }
+        world.expireTargets(now);
+        final int count = world.getTargetCount();
+        Assert.assertEquals(5000 - 715, count);
+
+        final float[] sequential = new float[5000 * 3];
+        final int[] sequentialIds = new int[5000];
+        world.setParallelThreshold(Integer.MAX_VALUE);
+        Assert.assertEquals(count, world.computeCoordinates(now + 2500, sequential,
+                sequentialIds));
+
+        final float[] parallel = new float[5000 * 3];
+        final int[] parallelIds = new int[5000];
+        world.setParallelThreshold(0);
+        Assert.assertEquals(count, world.computeCoordinates(now + 2500, parallel, parallelIds));
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(sequentialIds[i], parallelIds[i]);
+            Assert.assertEquals(sequential[i * 3], parallel[i * 3], 0);
+            Assert.assertEquals(sequential[i * 3 + 1], parallel[i * 3 + 1], 0);
+            Assert.assertEquals(sequential[i * 3 + 2], parallel[i * 3 + 2], 0);
+        }
+
+        // Too small arrays are not overrun in parallel either.
+        Assert.assertEquals(1500, world.computeCoordinates(TIME, parallel, new int[1500]));
+    }
+
+    private static World createWorld(int count, Random random) {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setPosition(location);
+        world.setGeoidHeight(48.6);
+        world.setLocationPredictionEnabled(true);
+        for (int i = 0; i < count; ++i) {
+            if (i % 10 == 0) {
+                world.addReceiver("TEST" + i, 48.5 + random.nextDouble(),
+                        6.5 + random.nextDouble(), random.nextInt(1000), TIME);
+                continue;
+            }
+            final Aircraft aircraft = world.addAircraft(String.format("FLR%06X", i), i,
+                    48.5 + random.nextDouble(), 6.5 + random.nextDouble(),
+                    random.nextInt(3000), TIME);
+            aircraft.setHeading(random.nextInt(361));
+            aircraft.setGroundSpeed(random.nextInt(200));
+            aircraft.setClimbRate(random.nextFloat() * 10 - 5);
+            aircraft.setTurnRate(random.nextInt(3) == 0 ? 0 : random.nextDouble() * 20 - 10);
+        }
+        return world;
+    }
+}
@@ -36,4 +36,32 @@ public class TargetTest {
         aircraft.setPosition(1, 2, 4, 1235);
         Assert.assertEquals(4, aircraft.getAltitude(), 0.001);
     }
+
+    @Test
+    public void testSample() {
+        final Aircraft aircraft = new Aircraft("NOCALL", 1);
+        aircraft.setPosition(1, 2, 3, 1234);
+        aircraft.setMotion(90, 100, 1.5f, 3);
+
+        // The position keeps the motion and vice versa.
+        final Sample sample = aircraft.getSample();
+        aircraft.setPosition(4, 5, 6, 1235);
+        Assert.assertEquals(90, aircraft.getHeading());
+        Assert.assertEquals(100, aircraft.getGroundSpeed());
+        aircraft.setHeading(180);
+        Assert.assertEquals(4, aircraft.getLatitude(), 0.001);
+        Assert.assertEquals(1235, aircraft.getPositionTime());
+
+        // Old samples are immutable.
+        Assert.assertEquals(1, sample.latitude, 0.001);
+        Assert.assertEquals(90, sample.heading);
+
+        // Both are replaced at once, but only by a newer position.
+        aircraft.setSample(new Sample(7, 8, 9, 1236, 270, 50, -1, 0));
+        Assert.assertEquals(7, aircraft.getLatitude(), 0.001);
+        Assert.assertEquals(270, aircraft.getHeading());
+        aircraft.setSample(new Sample(0, 0, 0, 1236, 0, 0, 0, 0));
+        Assert.assertEquals(7, aircraft.getLatitude(), 0.001);
+        Assert.assertEquals(270, aircraft.getHeading());
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+
+@RunWith(RobolectricTestRunner.class)
+public class TrackHistoryTest {
+    private static final long TIME = 1721460905000L;
+
+    private static final LocalTangentPlane PLANE = new LocalTangentPlane(49, 7, 398.6, 48.6);
+
+    private final float[] mCoordinates = new float[(TrackHistory.BLOCK_SIZE + 1) * 3];
+
+    @Test
+    public void testRing() {
+        final TrackHistory history = new TrackHistory();
+        final Aircraft aircraft = new Aircraft("FLR3EE227", 0x063EE227);
+        for (int i = 0; i < TrackHistory.BLOCK_SIZE + 8; ++i) {
+            aircraft.setPosition(49 + i * 0.001, 7, 350, TIME + i * 1000);
+            history.add(aircraft);
+        }
+        Assert.assertEquals(0, aircraft.mTrackBlock);
+
+        // Only the latest fixes are kept, the oldest first.
+        Assert.assertEquals(TrackHistory.BLOCK_SIZE,
+                history.getCoordinates(0, 0, PLANE, mCoordinates, 0));
+        Assert.assertEquals(8 * 111.2, mCoordinates[1], 0.5);
+        Assert.assertEquals((TrackHistory.BLOCK_SIZE + 7) * 111.2,
+                mCoordinates[(TrackHistory.BLOCK_SIZE - 1) * 3 + 1], 1);
+
+        // The same position is not recorded twice.
+        history.add(aircraft);
+        Assert.assertEquals(TrackHistory.BLOCK_SIZE,
+                history.getCoordinates(0, 0, PLANE, mCoordinates, 0));
+
+        // Old fixes are skipped.
+        Assert.assertEquals(3, history.getCoordinates(0,
+                TIME + (TrackHistory.BLOCK_SIZE + 5) * 1000, PLANE, mCoordinates, 0));
+
+        history.remove(aircraft);
+        Assert.assertEquals(-1, aircraft.mTrackBlock);
+        Assert.assertNull(history.getTarget(0));
+    }
+
+    @Test
+    public void testPool() {
+        final TrackHistory history = new TrackHistory();
+        final Aircraft[] aircraft = new Aircraft[TrackHistory.MAX_BLOCKS];
+        for (int i = 0; i < TrackHistory.MAX_BLOCKS; ++i) {
+            aircraft[i] = new Aircraft(String.format("FLR%06X", i), i);
+            aircraft[i].setPosition(49, 7, 350, i == 7 ? TIME - 60000 : TIME + i);
+            history.add(aircraft[i]);
+        }
+        Assert.assertEquals(TrackHistory.MAX_BLOCKS, history.getSize());
+
+        // Freed blocks are reused...
+        history.remove(aircraft[3]);
+        final Aircraft first = new Aircraft("FLR3EE227", 0x063EE227);
+        first.setPosition(49, 7, 350, TIME);
+        history.add(first);
+        Assert.assertEquals(3, first.mTrackBlock);
+
+        // ...and if there are none, there is no trail, even if some block is stale.
+        final Aircraft second = new Aircraft("FLR3D238E", 0x0A3D238E);
+        second.setPosition(49, 7, 350, TIME);
+        history.add(second);
+        Assert.assertEquals(-1, second.mTrackBlock);
+        Assert.assertEquals(7, aircraft[7].mTrackBlock);
+        Assert.assertEquals(aircraft[7], history.getTarget(7));
+        Assert.assertEquals(TrackHistory.MAX_BLOCKS, history.getSize());
+
+        // Until a block is freed.
+        history.remove(aircraft[7]);
+        second.setPosition(49, 7, 350, TIME + 1000);
+        history.add(second);
+        Assert.assertEquals(7, second.mTrackBlock);
+        Assert.assertEquals(1, history.getCoordinates(7, 0, PLANE, mCoordinates, 0));
+
+        history.clear();
+        Assert.assertEquals(0, history.getSize());
+        Assert.assertEquals(-1, first.mTrackBlock);
+    }
+
+    @Test
+    public void testCrowd() {
+        final TrackHistory history = new TrackHistory();
+        final Aircraft[] aircraft = new Aircraft[TrackHistory.MAX_BLOCKS * 2];
+        for (int i = 0; i < aircraft.length; ++i) {
+            aircraft[i] = new Aircraft(String.format("FLR%06X", i), i);
+        }
+        // All aircraft keep reporting, one after another.
+        final int rounds = TrackHistory.BLOCK_SIZE + 4;
+        for (int round = 0; round < rounds; ++round) {
+            for (int i = 0; i < aircraft.length; ++i) {
+                aircraft[i].setPosition(49 + round * 0.001, 7, 350,
+                        TIME + round * 1000 + i);
+                history.add(aircraft[i]);
+            }
+        }
+
+        // The first ones have full trails, the others have none.
+        for (int i = 0; i < aircraft.length; ++i) {
+            final int block = aircraft[i].mTrackBlock;
+            if (i < TrackHistory.MAX_BLOCKS) {
+                Assert.assertEquals(i, block);
+                Assert.assertEquals(TrackHistory.BLOCK_SIZE,
+                        history.getCoordinates(block, 0, PLANE, mCoordinates, 0));
+            } else {
+                Assert.assertEquals(-1, block);
+            }
+        }
+    }
+}
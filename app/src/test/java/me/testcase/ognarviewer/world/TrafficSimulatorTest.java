@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2024 Ivan Akulinchev <ivan.akulinchev@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.testcase.ognarviewer.world;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TrafficSimulatorTest {
+    private static final long TIME = 1700000000000L;
+
+    @Test
+    public void testDeterminism() {
+        final World world1 = new World();
+        final World world2 = new World();
+        final TrafficSimulator simulator1 = new TrafficSimulator(world1, 49, 7, 350, 100, 42);
+        final TrafficSimulator simulator2 = new TrafficSimulator(world2, 49, 7, 350, 100, 42);
+        for (int i = 0; i < 60; ++i) {
+            simulator1.step(TIME + i * TrafficSimulator.TICK);
+            simulator2.step(TIME + i * TrafficSimulator.TICK);
+        }
+        Assert.assertEquals(100, world1.getTargetCount());
+        final Target[] targets1 = world1.getTargets(new Target[0]);
+        final Target[] targets2 = world2.getTargets(new Target[0]);
+        Assert.assertEquals(targets1.length, targets2.length);
+        for (int i = 0; i < targets1.length; ++i) {
+            Assert.assertEquals(targets1[i].getCallSign(), targets2[i].getCallSign());
+            Assert.assertEquals(targets1[i].getSample().latitude,
+                    targets2[i].getSample().latitude, 0);
+            Assert.assertEquals(targets1[i].getSample().longitude,
+                    targets2[i].getSample().longitude, 0);
+            Assert.assertEquals(targets1[i].getSample().altitude,
+                    targets2[i].getSample().altitude, 0);
+        }
+    }
+
+    @Test
+    public void testTraffic() {
+        final World world = new World();
+        final TrafficSimulator simulator = new TrafficSimulator(world, 49, 7, 350, 200, 0);
+        Assert.assertEquals(200, simulator.getCount());
+        final int[] modes = new int[4];
+        for (int i = 0; i < 3600; ++i) {
+            simulator.step(TIME + i * TrafficSimulator.TICK);
+            for (int j = 0; j < simulator.getCount(); ++j) {
+                ++modes[simulator.getMode(j)];
+            }
+        }
+
+        // All kinds of flight occur.
+        Assert.assertTrue(modes[TrafficSimulator.MODE_THERMALLING] > 0);
+        Assert.assertTrue(modes[TrafficSimulator.MODE_CRUISING] > 0);
+        Assert.assertTrue(modes[TrafficSimulator.MODE_TOWING] > 0);
+        Assert.assertTrue(modes[TrafficSimulator.MODE_DESCENDING] > 0);
+
+        // After an hour, the aircraft are still around the center and in the air.
+        for (Target target : world.getTargets(new Target[0])) {
+            final Sample sample = target.getSample();
+            Assert.assertEquals(TIME + 3599 * TrafficSimulator.TICK, sample.time);
+            Assert.assertEquals(49, sample.latitude, 0.3);
+            Assert.assertEquals(7, sample.longitude, 0.45);
+            Assert.assertTrue(sample.altitude >= 350);
+            Assert.assertTrue(sample.altitude <= 350 + 2500);
+            Assert.assertTrue(sample.heading > 0 && sample.heading <= 360);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooMany() {
+        new TrafficSimulator(new World(), 49, 7, 350, TrafficSimulator.MAX_AIRCRAFT + 1, 0);
+    }
+}
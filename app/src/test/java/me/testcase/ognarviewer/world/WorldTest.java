@@ -24,6 +24,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import me.testcase.ognarviewer.CalibratedClock;
 
 @RunWith(RobolectricTestRunner.class)
@@ -44,7 +48,7 @@ public class WorldTest {
         world.setPosition(location);
 
         final Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, 49, 7, 350, TIME);
+                "ICA000001", 0x01000001, 49, 7, 350, TIME);
         aircraft.setGroundSpeed(360); // 360 km/h = 100 m/s
         aircraft.setClimbRate(1); // 1 m/s
         aircraft.setTurnRate(0);
@@ -67,19 +71,19 @@ public class WorldTest {
         world.setPosition(location);
 
         Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, -16.4, 179.5, 100, TIME);
+                "ICA000001", 0x01000001, -16.4, 179.5, 100, TIME);
         aircraft.setGroundSpeed(360);
         aircraft.setClimbRate(0);
         aircraft.setTurnRate(0);
         aircraft.setHeading(90);
 
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
-        assertCoordinates(mCoordinates, -6591.6713, -726.6664, 153.8);
+        assertCoordinates(mCoordinates, -6593.3677, -723.3997, 150.3518);
 
-        aircraft = world.addAircraft("ICA000002", 0x00000000, -16.3, -180, 100, TIME);
+        aircraft = world.addAircraft("ICA000002", 0x01000002, -16.3, -180, 100, TIME);
 
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
-        assertCoordinates(mCoordinates, 46805.2890, 10405.2822, 153.8);
+        assertCoordinates(mCoordinates, 46840.7148, 10293.5361, -26.5063);
 
         location.setLatitude(0);
         location.setLongitude(-179);
@@ -87,9 +91,9 @@ public class WorldTest {
         world.setPosition(location);
 
         // Try to look from the other side (it's another if-branch in the code).
-        aircraft = world.addAircraft("ICA000003", 0x00000000, 0, 180, 100, TIME);
+        aircraft = world.addAircraft("ICA000003", 0x01000003, 0, 180, 100, TIME);
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
-        assertCoordinates(mCoordinates, -111319.4921, 0.0, 120.2);
+        assertCoordinates(mCoordinates, -111315.9375, 0.0, -851.2394);
 
         location.setLatitude(7);
         location.setLongitude(180);
@@ -97,7 +101,7 @@ public class WorldTest {
         world.setPosition(location);
 
         // -180 should be the same as +180.
-        aircraft = world.addAircraft("ICA000004", 0x00000000, 7, -180, 100, TIME);
+        aircraft = world.addAircraft("ICA000004", 0x01000004, 7, -180, 100, TIME);
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
         assertCoordinates(mCoordinates, 0.0, 0.0, 115.6);
     }
@@ -117,15 +121,15 @@ public class WorldTest {
         Assert.assertTrue(world.isLocationPredictionEnabled());
 
         final Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, 49.1, 7.1, 1400, TIME);
+                "ICA000001", 0x01000001, 49.1, 7.1, 1400, TIME);
         aircraft.setGroundSpeed(360); // 360 km/h = 100 m/s
         aircraft.setClimbRate(1); // 1 m/s
         aircraft.setTurnRate(0);
         aircraft.setHeading(90); // East
 
-        final double x = 7303.2158;
-        final double y = 11131.9492;
-        final double z = 1098.6;
+        final double x = 7304.1709;
+        final double y = 11128.4043;
+        final double z = 1084.7111;
 
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
         assertCoordinates(mCoordinates, x, y, z);
@@ -182,7 +186,7 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x, y, z);
 
         world.getTargetCoordinates(aircraft, TIME + 1000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 70.7105, y + 70.7110, z);
+        assertCoordinates(mCoordinates, x + 70.7104, y + 70.7109, z);
 
         aircraft.setHeading(225); // South-West
 
@@ -190,7 +194,7 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x, y, z);
 
         world.getTargetCoordinates(aircraft, TIME + 1000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 70.7104, y - 70.7109, z);
+        assertCoordinates(mCoordinates, x - 70.7105, y - 70.7109, z);
 
         aircraft.setClimbRate(1);
         aircraft.setHeading(0); // N/A => no prediction possible
@@ -219,49 +223,49 @@ public class WorldTest {
         Assert.assertTrue(world.isLocationPredictionEnabled());
 
         final Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, 49.1, 7.1, 1400, TIME);
+                "ICA000001", 0x01000001, 49.1, 7.1, 1400, TIME);
         aircraft.setGroundSpeed(720); // 720 km/h = 200 m/s
         aircraft.setClimbRate(1); // 1 m/s
         aircraft.setTurnRate(48); // 48 deg/s
         aircraft.setHeading(90); // East
 
-        final double x = 7303.2158;
-        final double y = 11131.9492;
-        final double z = 1098.6;
+        final double x = 7304.1709;
+        final double y = 11128.4043;
+        final double z = 1084.7111;
 
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
         assertCoordinates(mCoordinates, x, y, z);
 
         world.getTargetCoordinates(aircraft, TIME + 1000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 177.4126, y - 78.9892, z + 1.0);
+        assertCoordinates(mCoordinates, x + 177.4126, y - 78.9893, z + 1.0);
 
         world.getTargetCoordinates(aircraft, TIME + 2000, mCoordinates);
         assertCoordinates(mCoordinates, x + 237.4248, y - 263.6865, z + 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 140.3233, y - 431.8711, z + 3.0);
+        assertCoordinates(mCoordinates, x + 140.3232, y - 431.8711, z + 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 49.6352, y - 472.2480, z + 4.0);
+        assertCoordinates(mCoordinates, x - 49.6353, y - 472.2481, z + 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
         assertCoordinates(mCoordinates, x - 206.7485, y - 358.0986, z + 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 227.0478, y - 164.9599, z + 6.0);
+        assertCoordinates(mCoordinates, x - 227.0479, y - 164.9600, z + 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 97.1011, y - 20.6396, z + 7.0);
+        assertCoordinates(mCoordinates, x - 97.1011, y - 20.6397, z + 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 97.1011, y - 20.6396, z + 8.0);
+        assertCoordinates(mCoordinates, x + 97.1011, y - 20.6397, z + 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 227.0478, y - 164.9599, z + 9.0);
+        assertCoordinates(mCoordinates, x + 227.0478, y - 164.9600, z + 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x + 206.7486, y - 358.0986, z + 10.0);
+            assertCoordinates(mCoordinates, x + 206.7485, y - 358.0986, z + 10.0);
         }
 
         aircraft.setHeading(180); // South
@@ -270,7 +274,7 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x, y, z);
 
         world.getTargetCoordinates(aircraft, TIME + 1000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 78.9892, y - 177.4131, z + 1.0);
+        assertCoordinates(mCoordinates, x - 78.9893, y - 177.4131, z + 1.0);
 
         world.getTargetCoordinates(aircraft, TIME + 2000, mCoordinates);
         assertCoordinates(mCoordinates, x - 263.6865, y - 237.4248, z + 2.0);
@@ -279,22 +283,22 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x - 431.8711, y - 140.3232, z + 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 472.2480, y + 49.6358, z + 4.0);
+        assertCoordinates(mCoordinates, x - 472.2480, y + 49.6357, z + 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 358.0986, y + 206.7481, z + 5.0);
+        assertCoordinates(mCoordinates, x - 358.0986, y + 206.7480, z + 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 164.9599, y + 227.0479, z + 6.0);
+        assertCoordinates(mCoordinates, x - 164.9600, y + 227.0478, z + 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 20.6396, y + 97.1016, z + 7.0);
+        assertCoordinates(mCoordinates, x - 20.6397, y + 97.1016, z + 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 20.6396, y - 97.1015, z + 8.0);
+        assertCoordinates(mCoordinates, x - 20.6397, y - 97.1016, z + 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 164.9599, y - 227.0478, z + 9.0);
+        assertCoordinates(mCoordinates, x - 164.9600, y - 227.0479, z + 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
@@ -316,26 +320,26 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x - 140.3232, y + 431.8711, z + 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 49.6353, y + 472.2481, z + 4.0);
+        assertCoordinates(mCoordinates, x + 49.6353, y + 472.2480, z + 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 206.7486, y + 358.0987, z + 5.0);
+        assertCoordinates(mCoordinates, x + 206.7485, y + 358.0986, z + 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 227.0478, y + 164.9599, z + 6.0);
+        assertCoordinates(mCoordinates, x + 227.0478, y + 164.9600, z + 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 97.1011, y + 20.6397, z + 7.0);
+        assertCoordinates(mCoordinates, x + 97.1011, y + 20.6396, z + 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 97.1011, y + 20.6397, z + 8.0);
+        assertCoordinates(mCoordinates, x - 97.1011, y + 20.6396, z + 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 227.0478, y + 164.9600, z + 9.0);
+        assertCoordinates(mCoordinates, x - 227.0479, y + 164.9600, z + 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x - 206.7485, y + 358.0987, z + 10.0);
+            assertCoordinates(mCoordinates, x - 206.7485, y + 358.0986, z + 10.0);
         }
 
         aircraft.setHeading(360); // North
@@ -350,29 +354,29 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x + 263.6865, y + 237.4248, z + 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 431.8711, y + 140.3233, z + 3.0);
+        assertCoordinates(mCoordinates, x + 431.8711, y + 140.3232, z + 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 472.2481, y - 49.6357, z + 4.0);
+        assertCoordinates(mCoordinates, x + 472.2480, y - 49.6357, z + 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 358.0987, y - 206.7480, z + 5.0);
+        assertCoordinates(mCoordinates, x + 358.0986, y - 206.7481, z + 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 164.9600, y - 227.0478, z + 6.0);
+        assertCoordinates(mCoordinates, x + 164.9600, y - 227.0479, z + 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 20.6397, y - 97.1015, z + 7.0);
+        assertCoordinates(mCoordinates, x + 20.6396, y - 97.1016, z + 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 20.6397, y + 97.1016, z + 8.0);
+        assertCoordinates(mCoordinates, x + 20.6396, y + 97.1016, z + 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 164.96, y + 227.0479, z + 9.0);
+        assertCoordinates(mCoordinates, x + 164.96, y + 227.0478, z + 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x + 358.0987, y + 206.7481, z + 10.0);
+            assertCoordinates(mCoordinates, x + 358.0986, y + 206.7480, z + 10.0);
         }
     }
 
@@ -391,15 +395,15 @@ public class WorldTest {
         Assert.assertTrue(world.isLocationPredictionEnabled());
 
         final Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, 49.1, 7.1, 1400, TIME);
+                "ICA000001", 0x01000001, 49.1, 7.1, 1400, TIME);
         aircraft.setGroundSpeed(720); // 720 km/h = 200 m/s
         aircraft.setClimbRate(-1); // -1 m/s
         aircraft.setTurnRate(-48); // -48 deg/s
         aircraft.setHeading(90); // East
 
-        final double x = 7303.2158;
-        final double y = 11131.9492;
-        final double z = 1098.6;
+        final double x = 7304.1709;
+        final double y = 11128.4043;
+        final double z = 1084.7111;
 
         world.getTargetCoordinates(aircraft, TIME, mCoordinates);
         assertCoordinates(mCoordinates, x, y, z);
@@ -411,29 +415,29 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x + 237.4248, y + 263.6865, z - 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 140.3233, y + 431.8711, z - 3.0);
+        assertCoordinates(mCoordinates, x + 140.3232, y + 431.8711, z - 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 49.6352, y + 472.2481, z - 4.0);
+        assertCoordinates(mCoordinates, x - 49.6353, y + 472.2480, z - 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 206.7485, y + 358.0987, z - 5.0);
+        assertCoordinates(mCoordinates, x - 206.7485, y + 358.0986, z - 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 227.0478, y + 164.9600, z - 6.0);
+        assertCoordinates(mCoordinates, x - 227.0479, y + 164.9600, z - 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 97.1011, y + 20.6397, z - 7.0);
+        assertCoordinates(mCoordinates, x - 97.1011, y + 20.6396, z - 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 97.1011, y + 20.6397, z - 8.0);
+        assertCoordinates(mCoordinates, x + 97.1011, y + 20.6396, z - 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 227.0479, y + 164.9600, z - 9.0);
+        assertCoordinates(mCoordinates, x + 227.0478, y + 164.9600, z - 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x + 206.7486, y + 358.0987, z - 10.0);
+            assertCoordinates(mCoordinates, x + 206.7485, y + 358.0986, z - 10.0);
         }
 
         aircraft.setHeading(180); // South
@@ -448,29 +452,29 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x + 263.6865, y - 237.4248, z - 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 431.8711, y - 140.3233, z - 3.0);
+        assertCoordinates(mCoordinates, x + 431.8711, y - 140.3232, z - 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 472.2481, y + 49.6358, z - 4.0);
+        assertCoordinates(mCoordinates, x + 472.2480, y + 49.6357, z - 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 358.0987, y + 206.7481, z - 5.0);
+        assertCoordinates(mCoordinates, x + 358.0986, y + 206.7480, z - 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 164.9600, y + 227.0479, z - 6.0);
+        assertCoordinates(mCoordinates, x + 164.9600, y + 227.0478, z - 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 20.6397, y + 97.1016, z - 7.0);
+        assertCoordinates(mCoordinates, x + 20.6396, y + 97.1016, z - 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 20.6397, y - 97.1015, z - 8.0);
+        assertCoordinates(mCoordinates, x + 20.6396, y - 97.1016, z - 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 164.9600, y - 227.0478, z - 9.0);
+        assertCoordinates(mCoordinates, x + 164.9600, y - 227.0479, z - 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x + 358.0987, y - 206.7480, z - 10.0);
+            assertCoordinates(mCoordinates, x + 358.0986, y - 206.7481, z - 10.0);
         }
 
         aircraft.setHeading(270); // West
@@ -479,31 +483,31 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x, y, z);
 
         world.getTargetCoordinates(aircraft, TIME + 1000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 177.4126, y - 78.9892, z - 1.0);
+        assertCoordinates(mCoordinates, x - 177.4126, y - 78.9893, z - 1.0);
 
         world.getTargetCoordinates(aircraft, TIME + 2000, mCoordinates);
         assertCoordinates(mCoordinates, x - 237.4248, y - 263.6865, z - 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 140.3233, y - 431.8711, z - 3.0);
+        assertCoordinates(mCoordinates, x - 140.3232, y - 431.8711, z - 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 49.6352, y - 472.2480, z - 4.0);
+        assertCoordinates(mCoordinates, x + 49.6353, y - 472.2481, z - 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 206.7486, y - 358.0986, z - 5.0);
+        assertCoordinates(mCoordinates, x + 206.7485, y - 358.0986, z - 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 227.0479, y - 164.9599, z - 6.0);
+        assertCoordinates(mCoordinates, x + 227.0478, y - 164.9600, z - 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x + 97.1011, y - 20.6396, z - 7.0);
+        assertCoordinates(mCoordinates, x + 97.1011, y - 20.6397, z - 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 97.1011, y - 20.6396, z - 8.0);
+        assertCoordinates(mCoordinates, x - 97.1011, y - 20.6397, z - 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 227.0478, y - 164.9599, z - 9.0);
+        assertCoordinates(mCoordinates, x - 227.0479, y - 164.9600, z - 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
@@ -522,29 +526,29 @@ public class WorldTest {
         assertCoordinates(mCoordinates, x - 263.6865, y + 237.4248, z - 2.0);
 
         world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 431.8711, y + 140.3233, z - 3.0);
+        assertCoordinates(mCoordinates, x - 431.8711, y + 140.3232, z - 3.0);
 
         world.getTargetCoordinates(aircraft, TIME + 4000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 472.2481, y - 49.6358, z - 4.0);
+        assertCoordinates(mCoordinates, x - 472.2480, y - 49.6357, z - 4.0);
 
         world.getTargetCoordinates(aircraft, TIME + 5000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 358.0987, y - 206.7481, z - 5.0);
+        assertCoordinates(mCoordinates, x - 358.0986, y - 206.7481, z - 5.0);
 
         world.getTargetCoordinates(aircraft, TIME + 6000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 164.9599, y - 227.0478, z - 6.0);
+        assertCoordinates(mCoordinates, x - 164.9600, y - 227.0479, z - 6.0);
 
         world.getTargetCoordinates(aircraft, TIME + 7000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 20.6396, y - 97.1015, z - 7.0);
+        assertCoordinates(mCoordinates, x - 20.6397, y - 97.1016, z - 7.0);
 
         world.getTargetCoordinates(aircraft, TIME + 8000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 20.6396, y + 97.1016, z - 8.0);
+        assertCoordinates(mCoordinates, x - 20.6397, y + 97.1016, z - 8.0);
 
         world.getTargetCoordinates(aircraft, TIME + 9000, mCoordinates);
-        assertCoordinates(mCoordinates, x - 164.9599, y + 227.0479, z - 9.0);
+        assertCoordinates(mCoordinates, x - 164.9600, y + 227.0478, z - 9.0);
 
         for (int i = 10000; i <= 20000; i += 500) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, x - 358.0987, y + 206.7481, z - 10.0);
+            assertCoordinates(mCoordinates, x - 358.0986, y + 206.7480, z - 10.0);
         }
     }
 
@@ -562,7 +566,7 @@ public class WorldTest {
         Assert.assertFalse(world.isLocationPredictionEnabled());
 
         final Aircraft aircraft = world.addAircraft(
-                "ICA000001", 0x00000000, 49.1, 7.1, 1400, TIME);
+                "ICA000001", 0x01000001, 49.1, 7.1, 1400, TIME);
         aircraft.setGroundSpeed(360); // 360 km/h = 100 m/s
         aircraft.setClimbRate(1); // 1 m/s
         aircraft.setTurnRate(6); // 6 deg/s
@@ -570,7 +574,7 @@ public class WorldTest {
 
         for (int i = 0; i < 6000; i += 100) {
             world.getTargetCoordinates(aircraft, TIME + i, mCoordinates);
-            assertCoordinates(mCoordinates, 7303.2158, 11131.9492, 1098.6);
+            assertCoordinates(mCoordinates, 7304.1709, 11128.4043, 1084.7111);
         }
     }
 
@@ -605,6 +609,356 @@ public class WorldTest {
         // TODO: move the clock and test the targets are removed.
     }
 
+    @Test
+    public void testExpiration() {
+        final World world = new World();
+        final List<Target> expired = new ArrayList<>();
+        world.setOnTargetExpiredListener(expired::add);
+
+        final long now = CalibratedClock.currentTimeMillis();
+        final Aircraft aircraft = world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350, now);
+        final Receiver receiver = world.addReceiver("TEST", 49.1, 7.1, 350, now);
+
+        world.expireTargets(now + 29 * 1000);
+        Assert.assertTrue(expired.isEmpty());
+
+        // A new position re-arms the timer.
+        world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350, now + 20 * 1000);
+        world.expireTargets(now + 31 * 1000);
+        Assert.assertTrue(expired.isEmpty());
+
+        world.expireTargets(now + 51 * 1000);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals(aircraft, expired.get(0));
+
+        Target[] targets = world.getTargets(new Target[1]);
+        Assert.assertEquals(receiver, targets[0]);
+
+        // Receivers live longer.
+        world.expireTargets(now + 331 * 1000);
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals(receiver, expired.get(1));
+
+        targets = world.getTargets(targets);
+        Assert.assertNull(targets[0]);
+
+        // An expired target is a new target next time.
+        final Aircraft aircraft2 = world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350,
+                now + 400 * 1000);
+        Assert.assertNotEquals(aircraft, aircraft2);
+
+        // Nothing expires in the demo mode.
+        world.setDemo(true);
+        world.expireTargets(now + 1000 * 1000);
+        Assert.assertEquals(2, expired.size());
+    }
+
+    @Test
+    public void testCachedCoordinates() {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setGeoidHeight(48.6);
+        world.setPosition(location);
+
+        final Aircraft aircraft = world.addAircraft(
+                "ICA000001", 0x01000001, 49, 8, 398.6, TIME);
+        world.getTargetCoordinates(aircraft, TIME, mCoordinates);
+        // 73 km away, the earth curvature makes the target look 419 meters lower.
+        assertCoordinates(mCoordinates, 73173.1953, 481.9370, -321.7415);
+        world.getTargetCoordinates(aircraft, TIME, mCoordinates);
+        assertCoordinates(mCoordinates, 73173.1953, 481.9370, -321.7415);
+
+        // A new position of the target...
+        world.addAircraft("ICA000001", 0x01000001, 49, 7, 398.6, TIME + 1000);
+        world.getTargetCoordinates(aircraft, TIME, mCoordinates);
+        assertCoordinates(mCoordinates, 0.0, 0.0, 97.2);
+
+        // ...of the viewer...
+        location.setAltitude(300);
+        world.setPosition(location);
+        world.getTargetCoordinates(aircraft, TIME, mCoordinates);
+        assertCoordinates(mCoordinates, 0.0, 0.0, 147.2);
+
+        // ...or of the geoid invalidate the cache.
+        world.setGeoidHeight(0);
+        world.getTargetCoordinates(aircraft, TIME, mCoordinates);
+        assertCoordinates(mCoordinates, 0.0, 0.0, 98.6);
+    }
+
+    @Test
+    public void testFilter() {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setPosition(location);
+        world.setLocationPredictionEnabled(true);
+
+        // Two aircraft fly East at 100 m/s, but the beacons of one of them are noisy.
+        final Random random = new Random(42);
+        final double metersPerDegree = Math.toRadians(1) * World.EARTH_RADIUS
+                * Math.cos(Math.toRadians(49));
+        final float[] expected = new float[4];
+        double rawSquares = 0;
+        double filteredSquares = 0;
+        Aircraft noisy = null;
+        for (int i = 0; i < 30; ++i) {
+            final long time = TIME + i * 1000L;
+            final double lon = 7 + i * 100 / metersPerDegree;
+            final double noise = random.nextGaussian() * 20;
+            final Aircraft exact = world.addAircraft("ICA000001", 0x01000001, 49, lon, 1000, time,
+                    90, 360, 0, 0);
+            noisy = world.addAircraft("ICA000002", 0x01000002, 49,
+                    lon + noise / metersPerDegree, 1000, time, 90, 360, 0, Double.NaN);
+            if (i < 10) {
+                continue; // Let the filter converge.
+            }
+            world.getTargetCoordinates(exact, time + 500, expected);
+            world.getTargetCoordinates(noisy, time + 500, mCoordinates);
+            Assert.assertFalse(Float.isNaN(mCoordinates[0]));
+            rawSquares += noise * noise;
+            filteredSquares += (mCoordinates[0] - expected[0]) * (mCoordinates[0] - expected[0]);
+        }
+        // The filtered positions are closer to the truth than the beacons.
+        Assert.assertTrue(filteredSquares < rawSquares * 0.5);
+        Assert.assertFalse(Double.isNaN(noisy.getPredictionError()));
+
+        Assert.assertEquals(58, world.getPredictionErrorCount());
+        Assert.assertTrue(world.getPredictionErrorRms() < 30);
+        Assert.assertTrue(world.getPredictionErrorMax() >= world.getPredictionErrorRms());
+
+        // A jump is not noise, the filter starts again.
+        world.addAircraft("ICA000002", 0x01000002, 49.1, 7, 1000, TIME + 30000, 90, 360, 0, 0);
+        world.getTargetCoordinates(noisy, TIME + 30000, mCoordinates);
+        Assert.assertEquals(11119.5, mCoordinates[1], 10);
+        Assert.assertTrue(Double.isNaN(noisy.getPredictionError()));
+        Assert.assertEquals(58, world.getPredictionErrorCount());
+
+        world.resetPredictionErrors();
+        Assert.assertEquals(0, world.getPredictionErrorCount());
+        Assert.assertTrue(Double.isNaN(world.getPredictionErrorRms()));
+    }
+
+    @Test
+    public void testFilterBlend() {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setPosition(location);
+        world.setLocationPredictionEnabled(true);
+
+        // The aircraft flies East at 100 m/s, the third beacon is 50 m too far East.
+        final double metersPerDegree = Math.toRadians(1) * World.EARTH_RADIUS
+                * Math.cos(Math.toRadians(49));
+        Aircraft aircraft = null;
+        for (int i = 0; i < 3; ++i) {
+            final double lon = 7 + (i * 100 + (i == 2 ? 50 : 0)) / metersPerDegree;
+            final long time = TIME + i * 1000L;
+            if (i == 2) {
+                world.getTargetCoordinates(aircraft, time, mCoordinates);
+            }
+            aircraft = world.addAircraft("ICA000001", 0x01000001, 49, lon, 1000, time, 90, 360,
+                    0, 0);
+        }
+        final float before = mCoordinates[0];
+
+        // The marker doesn't jump on the beacon (up to the spherical approximation of the
+        // filter)...
+        world.getTargetCoordinates(aircraft, TIME + 2000, mCoordinates);
+        Assert.assertEquals(before, mCoordinates[0], 0.5);
+
+        // ...but reaches the corrected track a second later: half of the residual plus the
+        // corrected velocity (100 + 0.5 * 0.2 * 50 m/s).
+        world.getTargetCoordinates(aircraft, TIME + 3000, mCoordinates);
+        Assert.assertEquals(before + 25 + 105, mCoordinates[0], 1);
+
+        // The columns are blended the same way.
+        final float[] packed = new float[3];
+        Assert.assertEquals(1, world.computeCoordinates(TIME + 2500, packed, new int[1]));
+        world.getTargetCoordinates(aircraft, TIME + 2500, mCoordinates);
+        Assert.assertEquals(mCoordinates[0], packed[0], 0);
+    }
+
+    @Test
+    public void testVersions() {
+        final World world = new World();
+        final long initial = world.getVersion();
+        Target[] changed = world.getTargetsChangedSince(initial, new Target[1]);
+        Assert.assertNull(changed[0]);
+
+        final Aircraft aircraft = world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350,
+                TIME);
+        final Receiver receiver = world.addReceiver("TEST", 49.1, 7.1, 350, TIME);
+        Assert.assertTrue(world.getVersion() > initial);
+        Assert.assertTrue(receiver.getChangeVersion() > aircraft.getChangeVersion());
+
+        changed = world.getTargetsChangedSince(initial, changed);
+        Assert.assertEquals(2, changed.length);
+        Assert.assertEquals(aircraft, changed[0]);
+        Assert.assertEquals(receiver, changed[1]);
+
+        // Only the targets changed since then are returned...
+        final long version = world.getVersion();
+        aircraft.setHeading(90);
+        changed = world.getTargetsChangedSince(version, changed);
+        Assert.assertEquals(aircraft, changed[0]);
+        Assert.assertNull(changed[1]);
+        Assert.assertEquals(world.getVersion(), aircraft.getChangeVersion());
+
+        // ...so an outdated position or the same status don't count.
+        final long version2 = world.getVersion();
+        world.addAircraft("FLR3EE227", 0x063EE227, 49.2, 7.2, 1350, TIME - 1000);
+        receiver.setCpuLoad(0.5);
+        final long version3 = world.getVersion();
+        receiver.setCpuLoad(0.5);
+        changed = world.getTargetsChangedSince(version2, changed);
+        Assert.assertEquals(receiver, changed[0]);
+        Assert.assertNull(changed[1]);
+        Assert.assertEquals(version3, world.getVersion());
+
+        world.clear();
+        Assert.assertTrue(world.getVersion() > version3);
+    }
+
+    @Test
+    public void testSameNames() {
+        final World world = new World();
+
+        // A receiver may be named like an aircraft...
+        final Aircraft aircraft = world.addAircraft("FLR3EE227", 0x063EE227, 49.1, 7.1, 1350,
+                TIME);
+        final Receiver receiver = world.addReceiver("FLR3EE227", 49, 7, 350, TIME);
+        Assert.assertNotSame(aircraft, receiver);
+        Assert.assertEquals(aircraft, world.addAircraft("FLR3EE227", 0x063EE227, 49.2, 7.2, 1350,
+                TIME + 1000));
+        Assert.assertEquals(receiver, world.addReceiver("FLR3EE227", 49, 7, 350, TIME + 1000));
+
+        // ...and an aircraft is identified by its address, not by its call sign.
+        Assert.assertEquals(aircraft, world.addAircraft("ICA3EE227", 0x063EE227, 49.3, 7.3, 1350,
+                TIME + 2000));
+        Assert.assertEquals(49.3, aircraft.getLatitude(), 0);
+        Assert.assertNotSame(aircraft, world.addAircraft("ICA3EE227", 0x053EE227, 49.3, 7.3, 1350,
+                TIME + 2000));
+
+        final Target[] targets = world.getTargets(new Target[3]);
+        Assert.assertEquals(aircraft, targets[0]);
+        Assert.assertEquals(receiver, targets[1]);
+        Assert.assertNotNull(targets[2]);
+    }
+
+    @Test
+    public void testTrails() {
+        final Location location = new Location("test");
+        location.setLatitude(49);
+        location.setLongitude(7);
+        location.setAltitude(350);
+
+        final World world = new World();
+        world.setPosition(location);
+        final float[] vertices = new float[World.MAX_TRAIL_VERTICES * World.TRAIL_VERTEX_SIZE];
+
+        world.addAircraft("ICA000001", 0x01000001, 49, 7.01, 1350, TIME);
+        world.addAircraft("ICA000001", 0x01000001, 49.01, 7.01, 1400, TIME + 1000);
+        world.addAircraft("ICA000001", 0x01000001, 49.02, 7.01, 1450, TIME + 2000);
+        // An outdated position doesn't extend the trail.
+        world.addAircraft("ICA000001", 0x01000001, 49.03, 7.01, 1500, TIME + 1500);
+        world.addReceiver("TEST", 49, 7, 350, TIME);
+
+        // Three fixes and the current position make three segments.
+        Assert.assertEquals(6, world.getTrails(TIME + 2000, 30000, vertices));
+        final int size = World.TRAIL_VERTEX_SIZE;
+        Assert.assertEquals(vertices[size], vertices[2 * size], 0);
+        Assert.assertEquals(0, vertices[1], 1);
+        Assert.assertEquals(2224, vertices[5 * size + 1], 1);
+        // The trail fades out towards the past.
+        Assert.assertTrue(vertices[6] < vertices[5 * size + 6]);
+        Assert.assertEquals(1, vertices[5 * size + 6], 0);
+
+        // Too far away.
+        Assert.assertEquals(0, world.getTrails(TIME + 2000, 1000, vertices));
+
+        // Too old.
+        Assert.assertEquals(2, world.getTrails(TIME + 121500, 30000, vertices));
+
+        world.clear();
+        Assert.assertEquals(0, world.getTrails(TIME + 2000, 30000, vertices));
+    }
+
+    @Test
+    public void testSpatialQueries() {
+        final World world = new World();
+        final long now = CalibratedClock.currentTimeMillis();
+        // About 7.3 km east, 11.1 km north and 100 km south of (49, 7).
+        final Aircraft east = world.addAircraft("FLR3EE227", 0x063EE227, 49, 7.1, 1350, now);
+        final Aircraft north = world.addAircraft("FLR3D238E", 0x0A3D238E, 49.1, 7, 4350, now);
+        final Receiver south = world.addReceiver("TEST", 48.1, 7, 350, now);
+        // Both sides of the antimeridian.
+        final Aircraft fiji = world.addAircraft("FLR3FEF7C", 0x0A3FEF7C, -17, 179.95, 350, now);
+        final Aircraft samoa = world.addAircraft("FLR3FEF7D", 0x0A3FEF7D, -17, -179.95, 350, now);
+
+        Target[] targets = world.queryRadius(49, 7, 10000, new Target[8]);
+        Assert.assertEquals(east, targets[0]);
+        Assert.assertNull(targets[1]);
+
+        targets = world.queryRadius(49, 7, 20000, targets);
+        Assert.assertNotNull(targets[1]);
+        Assert.assertNull(targets[2]);
+
+        targets = world.queryRadius(-17, 180, 10000, targets);
+        Assert.assertNotNull(targets[1]);
+        Assert.assertNull(targets[2]);
+
+        // Big enough to visit every bucket instead of every cell.
+        targets = world.queryRadius(0, 0, 30000000, targets);
+        Assert.assertNotNull(targets[4]);
+        Assert.assertNull(targets[5]);
+
+        targets = world.queryBox(48, 6.5, 49.05, 7.5, targets);
+        Assert.assertNotNull(targets[1]);
+        Assert.assertNull(targets[2]);
+        Assert.assertTrue(targets[0] == east || targets[0] == south);
+
+        targets = world.queryBox(-18, 179.9, -16, 179.99, targets);
+        Assert.assertEquals(fiji, targets[0]);
+        Assert.assertNull(targets[1]);
+
+        targets = world.queryBox(-18, 179.9, -16, -179.9, targets);
+        Assert.assertNotNull(targets[1]);
+        Assert.assertNull(targets[2]);
+
+        targets = world.nearestK(49, 7, 2, targets);
+        Assert.assertEquals(east, targets[0]);
+        Assert.assertEquals(north, targets[1]);
+        Assert.assertNull(targets[2]);
+
+        targets = world.nearestK(-17, -179.9, 1, targets);
+        Assert.assertEquals(samoa, targets[0]);
+        Assert.assertNull(targets[1]);
+
+        // The index follows the new position...
+        world.addAircraft("FLR3EE227", 0x063EE227, 48.1, 7.01, 1350, now + 1000);
+        targets = world.nearestK(48, 7, 2, targets);
+        Assert.assertEquals(south, targets[0]);
+        Assert.assertEquals(east, targets[1]);
+
+        // ...and forgets expired targets.
+        world.expireTargets(now + 60 * 1000);
+        targets = world.queryRadius(49, 7, 20000, targets);
+        Assert.assertNull(targets[0]);
+        targets = world.nearestK(49, 7, 10, targets);
+        Assert.assertEquals(south, targets[0]);
+        Assert.assertNull(targets[1]);
+    }
+
     private void assertCoordinates(float[] coordinates, double x, double y, double z) {
         Assert.assertEquals(4, coordinates.length);
         Assert.assertEquals(x, coordinates[0], 0.0001);